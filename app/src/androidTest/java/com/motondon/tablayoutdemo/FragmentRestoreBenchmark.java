@@ -0,0 +1,63 @@
+package com.motondon.tablayoutdemo;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+/**
+ * Benchmark of the time needed to recreate the fragments of 100+ tabs when restoring them, by using reflection (as we used to do) and by
+ * using the FragmentFactory registry. Timings are printed to logcat (tag "FragmentRestoreBenchmark").
+ */
+public class FragmentRestoreBenchmark extends TestCase {
+    private static final String TAG = FragmentRestoreBenchmark.class.getSimpleName();
+
+    private static final int[] TAB_COUNTS = new int[] {100, 500, 1000};
+    private static final int ITERATIONS = 20;
+
+    private static final String[] CLASS_NAMES = new String[] {
+            ChatFragment.class.getName(),
+            WalkFragment.class.getName(),
+            GenericFragment.class.getName()};
+
+    private static final String[] TYPE_KEYS = new String[] {
+            ChatFragment.TYPE_KEY,
+            WalkFragment.TYPE_KEY,
+            GenericFragment.TYPE_KEY};
+
+    public void testReflectionVsRegistry() throws Exception {
+        // Warm up both paths, so that class loading is not accounted to the first measurement.
+        restoreWithReflection(TAB_COUNTS[0]);
+        restoreWithRegistry(TAB_COUNTS[0]);
+
+        for (int tabCount : TAB_COUNTS) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < ITERATIONS; i++) {
+                restoreWithReflection(tabCount);
+            }
+            long reflectionNanos = (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < ITERATIONS; i++) {
+                restoreWithRegistry(tabCount);
+            }
+            long registryNanos = (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS;
+
+            Log.i(TAG, "tabs: " + tabCount + " - reflection: " + reflectionNanos / 1000 + "us, registry: " + registryNanos / 1000 + "us");
+        }
+    }
+
+    private void restoreWithReflection(int tabCount) throws Exception {
+        for (int i = 0; i < tabCount; i++) {
+            Object fragment = Class.forName(CLASS_NAMES[i % CLASS_NAMES.length]).newInstance();
+            assertTrue(fragment instanceof BaseFragment);
+        }
+    }
+
+    private void restoreWithRegistry(int tabCount) {
+        for (int i = 0; i < tabCount; i++) {
+            BaseFragment fragment = FragmentFactory.newFragment(TYPE_KEYS[i % TYPE_KEYS.length]);
+            assertNotNull(fragment);
+        }
+    }
+}
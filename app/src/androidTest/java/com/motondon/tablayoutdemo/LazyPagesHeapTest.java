@@ -0,0 +1,47 @@
+package com.motondon.tablayoutdemo;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare the heap used to hold 200 tabs as fragment instances (as the adapter used to do) and as tab descriptors. Measurements are
+ * printed to logcat (tag "LazyPagesHeapTest").
+ */
+public class LazyPagesHeapTest extends TestCase {
+    private static final String TAG = LazyPagesHeapTest.class.getSimpleName();
+
+    private static final int TAB_COUNT = 200;
+
+    public void testLazyTabsUseLessHeapThanEagerTabs() {
+        long baseline = usedHeap();
+        Object[] eagerTabs = new Object[TAB_COUNT];
+        for (int i = 0; i < TAB_COUNT; i++) {
+            eagerTabs[i] = FragmentFactory.newFragment(GenericFragment.newTabDescriptor(1 + i % 4));
+        }
+        long eagerBytes = usedHeap() - baseline;
+
+        baseline = usedHeap();
+        Object[] lazyTabs = new Object[TAB_COUNT];
+        for (int i = 0; i < TAB_COUNT; i++) {
+            lazyTabs[i] = GenericFragment.newTabDescriptor(1 + i % 4);
+        }
+        long lazyBytes = usedHeap() - baseline;
+
+        Log.i(TAG, TAB_COUNT + " tabs - eager: " + eagerBytes + " bytes, lazy: " + lazyBytes + " bytes");
+
+        assertTrue(lazyBytes < eagerBytes);
+
+        // Keep both arrays reachable until the measurements are done.
+        assertEquals(eagerTabs.length, lazyTabs.length);
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
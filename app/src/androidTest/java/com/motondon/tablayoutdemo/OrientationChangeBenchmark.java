@@ -0,0 +1,176 @@
+package com.motondon.tablayoutdemo;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.view.ViewPager;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.motondon.tablayoutdemo_part_2.R;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare RETAIN_FRAGMENT, RECREATE_FRAGMENT and ADAPTIVE orientation change methods. For each method and tab count, the activity is rotated several
+ * times and the following is measured:
+ *
+ *   - retained heap: heap in use after all rotations (and a GC), compared to before them;
+ *   - saved state: size of the bundle saved on onSaveInstanceState() before each rotation;
+ *   - rotation latency: time from requesting the rotation until the first frame with tabs of the new activity is about to be drawn;
+ *   - leaked fragments: fragments which were destroyed but are still reachable after a GC, plus activities which were rotated away but are
+ *     still reachable.
+ *
+ * Results are printed to logcat (tag "OrientationChangeBenchmark"), one line per method and tab count. Only leaks are asserted, since the
+ * other figures depend on the device.
+ */
+public class OrientationChangeBenchmark extends InstrumentationTestCase {
+    private static final String TAG = OrientationChangeBenchmark.class.getSimpleName();
+
+    private static final int[] TAB_COUNTS = new int[] {10, 100};
+    private static final int ROTATIONS = 6;
+    private static final long TIMEOUT_MS = 10000;
+
+    private final List<WeakReference<Fragment>> destroyedFragments = new ArrayList<>();
+    private final List<WeakReference<Activity>> rotatedActivities = new ArrayList<>();
+
+    private final FragmentManager.FragmentLifecycleCallbacks fragmentCallbacks = new FragmentManager.FragmentLifecycleCallbacks() {
+        @Override
+        public void onFragmentDestroyed(FragmentManager fm, Fragment f) {
+            destroyedFragments.add(new WeakReference<>(f));
+        }
+    };
+
+    public void testRetainFragment() throws Exception {
+        for (int tabCount : TAB_COUNTS) {
+            measure(MainActivity.OrientationChangeMethod.RETAIN_FRAGMENT, tabCount);
+        }
+    }
+
+    public void testRecreateFragment() throws Exception {
+        for (int tabCount : TAB_COUNTS) {
+            measure(MainActivity.OrientationChangeMethod.RECREATE_FRAGMENT, tabCount);
+        }
+    }
+
+    public void testAdaptive() throws Exception {
+        for (int tabCount : TAB_COUNTS) {
+            measure(MainActivity.OrientationChangeMethod.ADAPTIVE, tabCount);
+        }
+    }
+
+    private void measure(MainActivity.OrientationChangeMethod method, final int tabCount) throws Exception {
+        Instrumentation instrumentation = getInstrumentation();
+        destroyedFragments.clear();
+        rotatedActivities.clear();
+
+        // Start from scratch: no tabs from the last session.
+        instrumentation.getTargetContext().deleteFile(MainActivity.TAB_SESSION_FILE);
+
+        Intent intent = new Intent(instrumentation.getTargetContext(), MainActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        intent.putExtra(MainActivity.EXTRA_ORIENTATION_CHANGE_METHOD, method.name());
+        intent.putExtra(MainActivity.EXTRA_MEASURE_SAVED_STATE, true);
+        MainActivity activity = (MainActivity) instrumentation.startActivitySync(intent);
+        assertEquals(method, activity.getOrientationChangeMethod());
+
+        final ViewPagerAdapter adapter = (ViewPagerAdapter) ((ViewPager) activity.findViewById(R.id.tabanim_viewpager)).getAdapter();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                adapter.beginBatch();
+                for (int i = 1; i <= tabCount; i++) {
+                    adapter.addTabPage(GenericFragment.newTabDescriptor(i));
+                }
+                adapter.commitBatch();
+            }
+        });
+        instrumentation.waitForIdleSync();
+        activity.getSupportFragmentManager().registerFragmentLifecycleCallbacks(fragmentCallbacks, true);
+        int pageCount = adapter.getCount();
+
+        long heapBefore = usedHeap();
+        long savedStateBytes = 0;
+        long latencyNanos = 0;
+
+        for (int i = 0; i < ROTATIONS; i++) {
+            Instrumentation.ActivityMonitor monitor = instrumentation.addMonitor(MainActivity.class.getName(), null, false);
+
+            long start = System.nanoTime();
+            activity.setRequestedOrientation(i % 2 == 0 ? ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE : ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
+            MainActivity newActivity = (MainActivity) instrumentation.waitForMonitorWithTimeout(monitor, TIMEOUT_MS);
+            instrumentation.removeMonitor(monitor);
+            assertNotNull("Activity was not recreated", newActivity);
+
+            latencyNanos += waitForFirstTab(newActivity) - start;
+            savedStateBytes += activity.getLastSavedStateBytes();
+            rotatedActivities.add(new WeakReference<Activity>(activity));
+
+            activity = newActivity;
+            activity.getSupportFragmentManager().registerFragmentLifecycleCallbacks(fragmentCallbacks, true);
+            assertEquals(pageCount, ((ViewPager) activity.findViewById(R.id.tabanim_viewpager)).getAdapter().getCount());
+        }
+
+        long retainedHeap = usedHeap() - heapBefore;
+        int leakedFragments = countReachable(destroyedFragments);
+        int leakedActivities = countReachable(rotatedActivities);
+
+        Log.i(TAG, String.format("method: %s, tabs: %d, rotations: %d - retained heap: %d KB, saved state: %d bytes/rotation, "
+                        + "rotation to first frame: %d ms, leaked fragments: %d, leaked activities: %d",
+                method, tabCount, ROTATIONS, retainedHeap / 1024, savedStateBytes / ROTATIONS, latencyNanos / ROTATIONS / 1000000,
+                leakedFragments, leakedActivities));
+
+        activity.finish();
+        instrumentation.waitForIdleSync();
+
+        assertEquals(0, leakedFragments);
+        assertEquals(0, leakedActivities);
+    }
+
+    /**
+     * Wait until the given activity is about to draw its first frame with tabs, and return when that happened (System.nanoTime()).
+     */
+    private long waitForFirstTab(MainActivity activity) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            getInstrumentation().waitForIdleSync();
+            StartupTracer tracer = activity.getStartupTracer();
+            StartupTracer.Section firstTab = tracer != null ? tracer.getSection(StartupTracer.MARK_FIRST_TAB_RENDERED) : null;
+            if (firstTab != null) {
+                return tracer.getOriginNanos() + firstTab.getStartNanos();
+            }
+            Thread.sleep(10);
+        }
+        fail("First tab was never rendered");
+        return 0;
+    }
+
+    private static <T> int countReachable(List<WeakReference<T>> references) {
+        forceGc();
+        int count = 0;
+        for (WeakReference<T> reference : references) {
+            if (reference.get() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long usedHeap() {
+        forceGc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void forceGc() {
+        for (int i = 0; i < 3; i++) {
+            Runtime.getRuntime().gc();
+            Runtime.getRuntime().runFinalization();
+        }
+    }
+}
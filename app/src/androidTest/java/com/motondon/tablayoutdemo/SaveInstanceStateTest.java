@@ -0,0 +1,65 @@
+package com.motondon.tablayoutdemo;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.design.widget.TabLayout;
+import android.support.v4.view.ViewPager;
+import android.test.ActivityInstrumentationTestCase2;
+
+import com.motondon.tablayoutdemo_part_2.R;
+
+/**
+ * The state is saved whenever the app goes to the background, not only before an orientation change. Check the activity keeps working with
+ * all its tabs afterwards, whatever the orientation change method.
+ */
+public class SaveInstanceStateTest extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    public SaveInstanceStateTest() {
+        super(MainActivity.class);
+    }
+
+    public void testRecreateFragment() {
+        checkAddTabAfterSaveState(MainActivity.OrientationChangeMethod.RECREATE_FRAGMENT);
+    }
+
+    public void testAdaptive() {
+        checkAddTabAfterSaveState(MainActivity.OrientationChangeMethod.ADAPTIVE);
+    }
+
+    private void checkAddTabAfterSaveState(MainActivity.OrientationChangeMethod method) {
+        // Start from scratch: no tabs from the last session.
+        getInstrumentation().getTargetContext().deleteFile(MainActivity.TAB_SESSION_FILE);
+
+        Intent intent = new Intent();
+        intent.putExtra(MainActivity.EXTRA_ORIENTATION_CHANGE_METHOD, method.name());
+        setActivityIntent(intent);
+        final MainActivity activity = getActivity();
+        ViewPagerAdapter adapter = (ViewPagerAdapter) ((ViewPager) activity.findViewById(R.id.tabanim_viewpager)).getAdapter();
+        TabLayout tabLayout = (TabLayout) activity.findViewById(R.id.tabanim_tabs);
+        getInstrumentation().waitForIdleSync();
+        int tabCount = adapter.getCount();
+
+        // As when the user presses Home: the state is saved, but there is no configuration change.
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                getInstrumentation().callActivityOnSaveInstanceState(activity, new Bundle());
+            }
+        });
+        assertEquals(tabCount, adapter.getCount());
+
+        assertTrue(getInstrumentation().invokeMenuActionSync(activity, R.id.menu_add_new_tab, 0));
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MS;
+        while (adapter.getCount() == tabCount && SystemClock.elapsedRealtime() < deadline) {
+            getInstrumentation().waitForIdleSync();
+            SystemClock.sleep(10);
+        }
+        getInstrumentation().waitForIdleSync();
+
+        assertEquals(tabCount + 1, adapter.getCount());
+        assertEquals(tabCount + 1, tabLayout.getTabCount());
+    }
+}
@@ -0,0 +1,119 @@
+package com.motondon.tablayoutdemo;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.v4.app.Fragment;
+
+import junit.framework.TestCase;
+
+/**
+ * Check the SavedStateCache keeps within its budget, compressing and then dropping the least recently used states.
+ */
+public class SavedStateCacheTest extends TestCase {
+
+    private static final int STATE_BYTES = 4 * 1024;
+
+    public void testKeepsEverythingWithinBudget() {
+        SavedStateCache cache = new SavedStateCache(100 * STATE_BYTES, true);
+        for (long pageId = 0; pageId < 10; pageId++) {
+            cache.put(pageId, newState(pageId));
+        }
+
+        assertEquals(10, cache.size());
+        assertEquals(0, cache.getCompressionCount());
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(3L, stateOf(cache.take(3)).getLong("pageId"));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    public void testCompressesOldestStatesFirst() {
+        // Five states do not fit, but they compress well (they are mostly zeros), so none of them should be dropped.
+        SavedStateCache cache = new SavedStateCache(4 * STATE_BYTES, true);
+        for (long pageId = 0; pageId < 5; pageId++) {
+            cache.put(pageId, newState(pageId));
+        }
+
+        assertEquals(5, cache.size());
+        assertTrue(cache.getCompressionCount() > 0);
+        assertEquals(0, cache.getEvictionCount());
+        assertTrue(cache.getSizeBytes() <= cache.getBudgetBytes());
+
+        // A compressed state must come back intact.
+        Fragment.SavedState state = cache.take(0);
+        assertNotNull(state);
+        assertEquals(0L, stateOf(state).getLong("pageId"));
+        assertEquals(STATE_BYTES, stateOf(state).getByteArray("payload").length);
+    }
+
+    public void testDropsOldestStatesWithoutCompression() {
+        SavedStateCache cache = new SavedStateCache(3 * STATE_BYTES + STATE_BYTES / 2, false);
+        for (long pageId = 0; pageId < 5; pageId++) {
+            cache.put(pageId, newState(pageId));
+        }
+
+        assertEquals(3, cache.size());
+        assertEquals(2, cache.getEvictionCount());
+        assertTrue(cache.getSizeBytes() <= cache.getBudgetBytes());
+
+        // Pages 0 and 1 were dropped: instantiating them again is a miss.
+        assertNull(cache.take(0));
+        assertNull(cache.take(1));
+        assertEquals(2, cache.getMissCount());
+        assertNotNull(cache.take(4));
+        assertEquals(1, cache.getHitCount());
+
+        // A page which never had a state is not a miss.
+        assertNull(cache.take(100));
+        assertEquals(2, cache.getMissCount());
+    }
+
+    public void testBundleRoundTrip() {
+        SavedStateCache cache = new SavedStateCache(4 * STATE_BYTES, true);
+        for (long pageId = 0; pageId < 5; pageId++) {
+            cache.put(pageId, newState(pageId));
+        }
+
+        Bundle bundle = new Bundle();
+        cache.writeToBundle(bundle);
+
+        SavedStateCache restored = new SavedStateCache(4 * STATE_BYTES, true);
+        restored.readFromBundle(bundle);
+
+        assertEquals(cache.size(), restored.size());
+        for (long pageId = 0; pageId < 5; pageId++) {
+            assertEquals(pageId, stateOf(restored.take(pageId)).getLong("pageId"));
+        }
+    }
+
+    /**
+     * Fragment.SavedState does not expose its bundle, so read it back from a parcel.
+     */
+    private static Bundle stateOf(Fragment.SavedState state) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            state.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return parcel.readBundle();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Fragment.SavedState can only be created by the FragmentManager or from a parcel, so build one from a parcel holding a bundle.
+     */
+    private static Fragment.SavedState newState(long pageId) {
+        Bundle bundle = new Bundle();
+        bundle.putLong("pageId", pageId);
+        bundle.putByteArray("payload", new byte[STATE_BYTES]);
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(bundle);
+            parcel.setDataPosition(0);
+            return Fragment.SavedState.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.motondon.tablayoutdemo;
+
+import android.database.DataSetObserver;
+import android.os.SystemClock;
+import android.support.v4.view.ViewPager;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.motondon.tablayoutdemo_part_2.R;
+
+/**
+ * Micro-benchmark comparing batched and unbatched mutation of N tabs. Timings are printed to logcat (tag "TabMutationBenchmark"), while
+ * the number of adapter notifications is asserted, since it does not depend on the device.
+ */
+public class TabMutationBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+    private static final String TAG = TabMutationBenchmark.class.getSimpleName();
+
+    private static final int[] TAB_COUNTS = new int[] {10, 30, 100};
+
+    private ViewPagerAdapter adapter;
+    private int notifyCount;
+
+    public TabMutationBenchmark() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // Start from scratch: the tabs (and selected page) of the last session, i.e.: of the previous test, must not be restored.
+        getInstrumentation().getTargetContext().deleteFile(MainActivity.TAB_SESSION_FILE);
+
+        adapter = (ViewPagerAdapter) ((ViewPager) getActivity().findViewById(R.id.tabanim_viewpager)).getAdapter();
+        adapter.registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                notifyCount++;
+            }
+        });
+    }
+
+    public void testBatchedVsUnbatched() {
+        for (int tabCount : TAB_COUNTS) {
+            long unbatched = measure(tabCount, false);
+            int unbatchedNotifyCount = notifyCount;
+
+            long batched = measure(tabCount, true);
+            int batchedNotifyCount = notifyCount;
+
+            Log.i(TAG, "tabs: " + tabCount + " - unbatched: " + unbatched + "ms (" + unbatchedNotifyCount + " notifications), batched: "
+                    + batched + "ms (" + batchedNotifyCount + " notifications)");
+
+            // Adding and then removing N tabs: 2N notifications without batching, one per batch otherwise.
+            assertEquals(tabCount * 2, unbatchedNotifyCount);
+            assertEquals(2, batchedNotifyCount);
+        }
+    }
+
+    /**
+     * Add tabCount tabs and then remove them. Return the elapsed time in milliseconds.
+     *
+     * @param tabCount
+     * @param batched
+     * @return
+     */
+    private long measure(final int tabCount, final boolean batched) {
+        final long[] elapsed = new long[1];
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                int initialCount = adapter.getCount();
+                notifyCount = 0;
+
+                long start = SystemClock.elapsedRealtime();
+
+                if (batched) adapter.beginBatch();
+                for (int i = 0; i < tabCount; i++) {
+                    adapter.addTabPage(TabDescriptor.create(GenericFragment.TYPE_KEY, "Benchmark " + i, 0));
+                }
+                if (batched) adapter.commitBatch();
+
+                if (batched) adapter.beginBatch();
+                for (int i = 0; i < tabCount; i++) {
+                    adapter.removeTabPage(initialCount);
+                }
+                if (batched) adapter.commitBatch();
+
+                elapsed[0] = SystemClock.elapsedRealtime() - start;
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        return elapsed[0];
+    }
+}
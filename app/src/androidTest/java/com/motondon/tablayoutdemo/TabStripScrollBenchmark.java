@@ -0,0 +1,177 @@
+package com.motondon.tablayoutdemo;
+
+import android.content.Intent;
+import android.os.SystemClock;
+import android.support.design.widget.TabLayout;
+import android.support.v4.view.ViewPager;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.motondon.tablayoutdemo_part_2.R;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the TabLayout and the virtual tab strip (see VirtualTabStripBinder) with 500 tabs. For each of them, the following is measured:
+ *
+ *   - time to add the tabs (in a single batch) until the strip is laid out;
+ *   - scroll frames: the strip is scrolled from the first to the last tab, a quarter of its width per frame, counting janky frames (longer
+ *     than 1.5 times the expected frame time) and the longest one;
+ *   - tab views: how many tab views were created.
+ *
+ * Results are printed to logcat (tag "TabStripScrollBenchmark"). Only the tab view counts are asserted, since the other figures depend on the
+ * device: the TabLayout has a view for each tab, while the virtual tab strip only has views for the tabs in sight.
+ */
+public class TabStripScrollBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+    private static final String TAG = TabStripScrollBenchmark.class.getSimpleName();
+
+    private static final int TAB_COUNT = 500;
+    private static final long TIMEOUT_MS = 60000;
+
+    private static final long FRAME_NANOS = 1000000000L / 60;
+    private static final long JANK_NANOS = FRAME_NANOS * 3 / 2;
+
+    // Tab views ever attached to the virtual tab strip.
+    private final Set<View> virtualTabViews = Collections.newSetFromMap(new IdentityHashMap<View, Boolean>());
+
+    private int frameCount;
+    private int jankyFrameCount;
+    private long maxFrameNanos;
+
+    public TabStripScrollBenchmark() {
+        super(MainActivity.class);
+    }
+
+    public void testTabLayout() throws Exception {
+        MainActivity activity = startActivity(false);
+        TabLayout tabLayout = (TabLayout) activity.findViewById(R.id.tabanim_tabs);
+
+        long addMs = addTabs(activity);
+        scrollToEnd(tabLayout);
+        int tabViewCount = ((ViewGroup) tabLayout.getChildAt(0)).getChildCount();
+        log("TabLayout", addMs, tabViewCount);
+
+        assertTrue(tabViewCount >= TAB_COUNT);
+    }
+
+    public void testVirtualTabStrip() throws Exception {
+        MainActivity activity = startActivity(true);
+        final RecyclerView tabStrip = (RecyclerView) activity.findViewById(R.id.tabanim_virtual_tabs);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                tabStrip.addOnChildAttachStateChangeListener(new RecyclerView.OnChildAttachStateChangeListener() {
+                    @Override
+                    public void onChildViewAttachedToWindow(View view) {
+                        virtualTabViews.add(view);
+                    }
+
+                    @Override
+                    public void onChildViewDetachedFromWindow(View view) {
+                    }
+                });
+            }
+        });
+
+        long addMs = addTabs(activity);
+        scrollToEnd(tabStrip);
+        log("virtual tab strip", addMs, virtualTabViews.size());
+
+        // Every tab was shown, but only a few screens worth of tab views were ever created.
+        assertEquals(tabStrip.getAdapter().getItemCount() - 1, tabStrip.getChildAdapterPosition(tabStrip.getChildAt(tabStrip.getChildCount() - 1)));
+        assertTrue("Tab views created: " + virtualTabViews.size(), virtualTabViews.size() < TAB_COUNT / 10);
+    }
+
+    private MainActivity startActivity(boolean virtualTabStrip) {
+        // Start from scratch: no tabs from the last session.
+        getInstrumentation().getTargetContext().deleteFile(MainActivity.TAB_SESSION_FILE);
+
+        Intent intent = new Intent();
+        intent.putExtra(MainActivity.EXTRA_VIRTUAL_TAB_STRIP, virtualTabStrip);
+        setActivityIntent(intent);
+        return getActivity();
+    }
+
+    /**
+     * Add TAB_COUNT tabs in a single batch and wait until they are laid out. Return the elapsed time in milliseconds.
+     *
+     * @param activity
+     * @return
+     */
+    private long addTabs(MainActivity activity) {
+        final ViewPagerAdapter adapter = (ViewPagerAdapter) ((ViewPager) activity.findViewById(R.id.tabanim_viewpager)).getAdapter();
+        long start = SystemClock.elapsedRealtime();
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                adapter.beginBatch();
+                for (int i = 1; i <= TAB_COUNT; i++) {
+                    adapter.addTabPage(GenericFragment.newTabDescriptor(i));
+                }
+                adapter.commitBatch();
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    /**
+     * Scroll the given strip until its end, a quarter of its width on each frame, measuring frame times.
+     *
+     * @param strip
+     * @throws InterruptedException
+     */
+    private void scrollToEnd(final View strip) throws InterruptedException {
+        frameCount = 0;
+        jankyFrameCount = 0;
+        maxFrameNanos = 0;
+
+        final CountDownLatch done = new CountDownLatch(1);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                    private long lastFrameNanos = 0;
+
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        if (lastFrameNanos > 0) {
+                            long frameNanos = frameTimeNanos - lastFrameNanos;
+                            frameCount++;
+                            if (frameNanos > JANK_NANOS) {
+                                jankyFrameCount++;
+                            }
+                            maxFrameNanos = Math.max(maxFrameNanos, frameNanos);
+                        }
+                        lastFrameNanos = frameTimeNanos;
+
+                        if (!strip.canScrollHorizontally(1)) {
+                            done.countDown();
+                            return;
+                        }
+                        strip.scrollBy(strip.getWidth() / 4, 0);
+                        Choreographer.getInstance().postFrameCallback(this);
+                    }
+                });
+            }
+        });
+
+        assertTrue("Strip did not reach its end", done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        getInstrumentation().waitForIdleSync();
+    }
+
+    private void log(String label, long addMs, int tabViewCount) {
+        Log.i(TAG, label + " - tabs: " + TAB_COUNT + ", add: " + addMs + "ms, scroll frames: " + frameCount + ", janky: " + jankyFrameCount
+                + ", longest: " + maxFrameNanos / 1000000 + "ms, tab views: " + tabViewCount);
+    }
+}
@@ -0,0 +1,321 @@
+package com.motondon.tablayoutdemo;
+
+import android.os.Bundle;
+import android.support.design.widget.TabLayout;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.view.ViewPager;
+import android.test.ActivityInstrumentationTestCase2;
+import android.view.View;
+
+import com.motondon.tablayoutdemo_part_2.R;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Check that mutating the adapter only rebuilds the pages that were actually changed. For this we count the onCreateView() calls of all
+ * fragments for each mutation.
+ */
+public class ViewPagerAdapterTest extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    private final List<Fragment> createdViews = new ArrayList<>();
+
+    private MainActivity activity;
+    private ViewPagerAdapter adapter;
+    private TabLayout tabLayout;
+
+    public ViewPagerAdapterTest() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // Start from scratch: the tabs (and selected page) of the last session, i.e.: of the previous test, must not be restored.
+        getInstrumentation().getTargetContext().deleteFile(MainActivity.TAB_SESSION_FILE);
+
+        activity = getActivity();
+        adapter = (ViewPagerAdapter) ((ViewPager) activity.findViewById(R.id.tabanim_viewpager)).getAdapter();
+        tabLayout = (TabLayout) activity.findViewById(R.id.tabanim_tabs);
+
+        activity.getSupportFragmentManager().registerFragmentLifecycleCallbacks(new FragmentManager.FragmentLifecycleCallbacks() {
+            @Override
+            public void onFragmentViewCreated(FragmentManager fm, Fragment f, View v, Bundle savedInstanceState) {
+                createdViews.add(f);
+            }
+        }, false);
+        getInstrumentation().waitForIdleSync();
+    }
+
+    public void testAddTabDoesNotRebuildExistingPages() {
+        // App starts with "Chat" and "Walk" tabs. Both are live, since the first one is selected. A new tab is added out of the offscreen
+        // limit, so no view at all should be created.
+        createdViews.clear();
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.addTabPage(GenericFragment.newTabDescriptor(1));
+            }
+        });
+
+        assertEquals(3, adapter.getCount());
+        assertEquals(0, createdViews.size());
+    }
+
+    public void testRemoveTabOnlyCreatesThePageThatMovedIntoView() {
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.addTabPage(GenericFragment.newTabDescriptor(1));
+            }
+        });
+
+        // Removing "Walk" brings "Generic 1" next to the selected page. It is the only page which should get a view.
+        createdViews.clear();
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.removeTabPage(1);
+            }
+        });
+
+        assertEquals(2, adapter.getCount());
+        assertEquals(1, createdViews.size());
+        assertTrue(createdViews.get(0) instanceof GenericFragment);
+    }
+
+    public void testSwipingBackToHotPagesDoesNotRebuildThem() {
+        final ViewPager viewPager = (ViewPager) activity.findViewById(R.id.tabanim_viewpager);
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.setRetentionPolicy(new PageRetentionPolicy(1, 3));
+                adapter.beginBatch();
+                for (int i = 1; i <= 4; i++) {
+                    adapter.addTabPage(GenericFragment.newTabDescriptor(i));
+                }
+                adapter.commitBatch();
+            }
+        });
+
+        // Moving to "Generic 2" takes "Chat" and "Walk" out of the offscreen limit. They are kept hot, so moving back must not create any view.
+        selectPage(viewPager, 3);
+        assertEquals(2, adapter.getHotPageCount());
+
+        createdViews.clear();
+        selectPage(viewPager, 0);
+        assertEquals(0, createdViews.size());
+        assertEquals(3, adapter.getHotPageCount());
+
+        // After trimming (as on memory pressure), those pages only have their saved state, so their views are created again.
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.trimHotPages(0);
+            }
+        });
+        assertEquals(0, adapter.getHotPageCount());
+
+        createdViews.clear();
+        selectPage(viewPager, 3);
+        assertEquals(3, createdViews.size());
+    }
+
+    public void testPrefetchedPageIsUsedWhenSelected() {
+        final ViewPager viewPager = (ViewPager) activity.findViewById(R.id.tabanim_viewpager);
+        AggregatingMetricsSink metrics = new AggregatingMetricsSink();
+        TabMetrics.setSink(metrics);
+        try {
+            mutate(new Runnable() {
+                @Override
+                public void run() {
+                    adapter.beginBatch();
+                    for (int i = 1; i <= 3; i++) {
+                        adapter.addTabPage(GenericFragment.newTabDescriptor(i));
+                    }
+                    adapter.commitBatch();
+                }
+            });
+
+            // "Generic 2" is out of the offscreen limit, so it can be prefetched. "Walk" is live already.
+            mutate(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(adapter.prefetchPage(activity, 3));
+                    assertFalse(adapter.prefetchPage(activity, 3));
+                    assertFalse(adapter.prefetchPage(activity, 1));
+                }
+            });
+            assertEquals(1, adapter.getPrefetchedPageCount());
+
+            selectPage(viewPager, 3);
+            assertEquals(0, adapter.getPrefetchedPageCount());
+            assertEquals(1, metrics.getCount(TabMetrics.PREFETCH_USED));
+            assertEquals(0, metrics.getCount(TabMetrics.PREFETCH_CANCELLED));
+        } finally {
+            TabMetrics.setSink(null);
+        }
+    }
+
+    public void testPrefetchIsCancelledWhenItsPageIsRemoved() {
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.beginBatch();
+                for (int i = 1; i <= 2; i++) {
+                    adapter.addTabPage(GenericFragment.newTabDescriptor(i));
+                }
+                adapter.commitBatch();
+                adapter.prefetchPage(activity, 2);
+                adapter.prefetchPage(activity, 3);
+            }
+        });
+        assertEquals(2, adapter.getPrefetchedPageCount());
+
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.removeTabPage(3);
+            }
+        });
+        assertEquals(1, adapter.getPrefetchedPageCount());
+
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.cancelPrefetch(2);
+            }
+        });
+        assertEquals(0, adapter.getPrefetchedPageCount());
+    }
+
+    public void testRemovingHotPageDropsIt() {
+        final ViewPager viewPager = (ViewPager) activity.findViewById(R.id.tabanim_viewpager);
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.setRetentionPolicy(new PageRetentionPolicy(1, 3));
+                adapter.beginBatch();
+                for (int i = 1; i <= 2; i++) {
+                    adapter.addTabPage(GenericFragment.newTabDescriptor(i));
+                }
+                adapter.commitBatch();
+            }
+        });
+
+        selectPage(viewPager, 3);
+        assertEquals(2, adapter.getHotPageCount());
+
+        final String chatTag = ViewPagerAdapter.makeFragmentTag(adapter.getTabDescriptor(0).getPageId());
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.removeTabPage(0);
+            }
+        });
+
+        assertEquals(1, adapter.getHotPageCount());
+        assertNull(activity.getSupportFragmentManager().findFragmentByTag(chatTag));
+    }
+
+    public void testTabChangeListenerGetsTheAppliedOps() {
+        final List<TabDescriptor> tabs = new ArrayList<>(adapter.getTabDescriptors());
+        final List<TabListDiff> diffs = new ArrayList<>();
+        final ViewPagerAdapter.TabChangeListener listener = new ViewPagerAdapter.TabChangeListener() {
+            @Override
+            public void onTabsChanged(TabListDiff diff) {
+                diffs.add(diff);
+            }
+        };
+
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                adapter.addTabChangeListener(listener);
+                adapter.beginBatch();
+                for (int i = 1; i <= 3; i++) {
+                    adapter.addTabPage(GenericFragment.newTabDescriptor(i));
+                }
+                adapter.moveTabPage(0, 3);
+                adapter.removeTabPage(1);
+                adapter.commitBatch();
+                adapter.removeTabChangeListener(listener);
+            }
+        });
+
+        // A single notification, whose operations turn the previous tabs into the current ones.
+        assertEquals(1, diffs.size());
+        assertNotNull(diffs.get(0));
+        diffs.get(0).applyTo(tabs);
+        assertEquals(adapter.getTabDescriptors(), tabs);
+        assertConsistent();
+    }
+
+    public void testAddAndRemoveThousandTabs() {
+        final int tabCount = 1000;
+        final int batchSize = 50;
+        final int initialCount = adapter.getCount();
+
+        // Add the tabs in batches, checking the adapter and the TabLayout after each one.
+        for (int added = 0; added < tabCount; added += batchSize) {
+            final int first = added + 1;
+            mutate(new Runnable() {
+                @Override
+                public void run() {
+                    adapter.beginBatch();
+                    for (int i = first; i < first + batchSize; i++) {
+                        adapter.addTabPage(GenericFragment.newTabDescriptor(i));
+                    }
+                    adapter.commitBatch();
+                }
+            });
+            assertConsistent();
+        }
+        assertEquals(initialCount + tabCount, adapter.getCount());
+
+        // Then remove them from random positions.
+        final Random random = new Random(1000);
+        while (adapter.getCount() > initialCount) {
+            mutate(new Runnable() {
+                @Override
+                public void run() {
+                    adapter.beginBatch();
+                    for (int i = 0; i < batchSize && adapter.getCount() > initialCount; i++) {
+                        adapter.removeTabPage(initialCount + random.nextInt(adapter.getCount() - initialCount));
+                    }
+                    adapter.commitBatch();
+                }
+            });
+            assertConsistent();
+        }
+        assertEquals(initialCount, adapter.getCount());
+    }
+
+    /**
+     * Check the TabLayout shows exactly the tabs of the adapter, and that each page id is used only once.
+     */
+    private void assertConsistent() {
+        assertEquals(adapter.getCount(), tabLayout.getTabCount());
+        for (int i = 0; i < adapter.getCount(); i++) {
+            assertEquals(adapter.getPageTitle(i), tabLayout.getTabAt(i).getText());
+            assertEquals(i, adapter.indexOfPage(adapter.getTabDescriptor(i).getPageId()));
+        }
+    }
+
+    private void selectPage(final ViewPager viewPager, final int position) {
+        mutate(new Runnable() {
+            @Override
+            public void run() {
+                viewPager.setCurrentItem(position, false);
+            }
+        });
+    }
+
+    private void mutate(Runnable mutation) {
+        getInstrumentation().runOnMainSync(mutation);
+        getInstrumentation().waitForIdleSync();
+    }
+}
@@ -0,0 +1,121 @@
+package com.motondon.tablayoutdemo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Used by the ADAPTIVE orientation change method to decide, for each live page, whether its fragment is retained (as with RETAIN_FRAGMENT)
+ * or recreated from its descriptor and saved state (as with RECREATE_FRAGMENT).
+ *
+ * The decision is driven by the measured rebuild cost of each kind of fragment (see recordRebuildCost()): only fragments which take at
+ * least the retain threshold to be rebuilt are worth the memory of keeping them. The most expensive ones are retained first, up to a
+ * maximum number of pages, which is reduced (down to none) as the heap fills up.
+ *
+ * Rebuild costs are kept per fragment type key (as an exponential moving average), so the measurements of one page apply to all pages of
+ * the same kind. Kinds which were never measured are recreated, since most pages are cheap to rebuild.
+ *
+ * This class does not depend on Android, so it can be tested on the JVM.
+ */
+public class AdaptiveOrientationStrategy {
+
+    // Heap usage (used / max) above which retained pages are halved, and above which none is retained.
+    static final float MODERATE_HEAP_USAGE = 0.5f;
+    static final float HIGH_HEAP_USAGE = 0.75f;
+
+    // Weight of a new measurement in the moving average.
+    private static final float COST_SMOOTHING = 0.3f;
+
+    private final long mRetainThresholdNanos;
+    private final int mMaxRetainedPages;
+    private final Map<String, Long> mRebuildCostNanos = new HashMap<>();
+
+    /**
+     * @param retainThresholdNanos fragments which take less than this to be rebuilt are always recreated
+     * @param maxRetainedPages maximum number of pages retained on each orientation change
+     */
+    public AdaptiveOrientationStrategy(long retainThresholdNanos, int maxRetainedPages) {
+        mRetainThresholdNanos = retainThresholdNanos;
+        mMaxRetainedPages = maxRetainedPages;
+    }
+
+    /**
+     * Record how long it took to build a fragment of the given kind from scratch.
+     *
+     * @param typeKey
+     * @param nanos
+     */
+    public synchronized void recordRebuildCost(String typeKey, long nanos) {
+        Long average = mRebuildCostNanos.get(typeKey);
+        mRebuildCostNanos.put(typeKey, average == null ? nanos : (long) (average + COST_SMOOTHING * (nanos - average)));
+    }
+
+    /**
+     * Return the average rebuild cost of the given kind of fragment, or -1 if it was never measured.
+     *
+     * @param typeKey
+     * @return
+     */
+    public synchronized long getRebuildCostNanos(String typeKey) {
+        Long average = mRebuildCostNanos.get(typeKey);
+        return average != null ? average : -1;
+    }
+
+    /**
+     * Return how many pages may be retained with the given heap usage (used / max heap).
+     *
+     * @param heapUsage
+     * @return
+     */
+    public int getMaxRetainedPages(float heapUsage) {
+        if (heapUsage >= HIGH_HEAP_USAGE) {
+            return 0;
+        }
+        if (heapUsage >= MODERATE_HEAP_USAGE) {
+            return mMaxRetainedPages / 2;
+        }
+        return mMaxRetainedPages;
+    }
+
+    /**
+     * Choose which of the given live pages are retained on the next orientation change.
+     *
+     * @param livePages
+     * @param heapUsage used / max heap
+     * @return the page ids of the pages to retain
+     */
+    public Set<Long> selectRetainedPages(List<TabDescriptor> livePages, float heapUsage) {
+        int maxRetainedPages = getMaxRetainedPages(heapUsage);
+        Set<Long> retained = new HashSet<>();
+        if (maxRetainedPages == 0) {
+            return retained;
+        }
+
+        List<TabDescriptor> candidates = new ArrayList<>();
+        for (TabDescriptor tab : livePages) {
+            if (getRebuildCostNanos(tab.getTypeKey()) >= mRetainThresholdNanos) {
+                candidates.add(tab);
+            }
+        }
+
+        // Most expensive first.
+        Collections.sort(candidates, new Comparator<TabDescriptor>() {
+            @Override
+            public int compare(TabDescriptor lhs, TabDescriptor rhs) {
+                long lhsCost = getRebuildCostNanos(lhs.getTypeKey());
+                long rhsCost = getRebuildCostNanos(rhs.getTypeKey());
+                return lhsCost < rhsCost ? 1 : (lhsCost == rhsCost ? 0 : -1);
+            }
+        });
+
+        for (int i = 0; i < candidates.size() && i < maxRetainedPages; i++) {
+            retained.add(candidates.get(i).getPageId());
+        }
+        return retained;
+    }
+}
@@ -0,0 +1,135 @@
+package com.motondon.tablayoutdemo;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A TabMetrics sink which keeps the totals of the counters and, for each histogram, the number of values, their min, max and mean, and
+ * approximate percentiles (values are counted in power-of-two buckets). Used by the MetricsOverlay, and can be read by tests.
+ *
+ * It is thread safe, since metrics might be reported from background threads.
+ */
+public class AggregatingMetricsSink implements TabMetrics.Sink {
+
+    public static class Histogram {
+        // Bucket i counts the values in [2^(i-1), 2^i), bucket 0 counts the values below 1.
+        private final long[] mBuckets = new long[64];
+        private long mCount;
+        private long mSum;
+        private long mMin = Long.MAX_VALUE;
+        private long mMax = Long.MIN_VALUE;
+
+        void add(long value) {
+            mBuckets[value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value)]++;
+            mCount++;
+            mSum += value;
+            mMin = Math.min(mMin, value);
+            mMax = Math.max(mMax, value);
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMin() {
+            return mMin;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public long getMean() {
+            return mCount > 0 ? mSum / mCount : 0;
+        }
+
+        /**
+         * Return an upper bound of the given percentile (between 0 and 100): the upper limit of the bucket it falls in, capped by the max value.
+         *
+         * @param percentile
+         * @return
+         */
+        public long getPercentile(int percentile) {
+            long rank = (long) Math.ceil(mCount * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? Math.min(0, mMax) : Math.min((1L << i) - 1, mMax);
+                }
+            }
+            return mMax;
+        }
+
+        Histogram copy() {
+            Histogram copy = new Histogram();
+            System.arraycopy(mBuckets, 0, copy.mBuckets, 0, mBuckets.length);
+            copy.mCount = mCount;
+            copy.mSum = mSum;
+            copy.mMin = mMin;
+            copy.mMax = mMax;
+            return copy;
+        }
+    }
+
+    private final Map<String, Long> mCounters = new TreeMap<>();
+    private final Map<String, Histogram> mHistograms = new TreeMap<>();
+
+    @Override
+    public synchronized void onCount(String name, long delta) {
+        Long total = mCounters.get(name);
+        mCounters.put(name, total != null ? total + delta : delta);
+    }
+
+    @Override
+    public synchronized void onValue(String name, long value) {
+        Histogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            mHistograms.put(name, histogram);
+        }
+        histogram.add(value);
+    }
+
+    public synchronized long getCount(String name) {
+        Long total = mCounters.get(name);
+        return total != null ? total : 0;
+    }
+
+    /**
+     * Return a copy of the given histogram, or null if no value was recorded for it.
+     *
+     * @param name
+     * @return
+     */
+    public synchronized Histogram getHistogram(String name) {
+        Histogram histogram = mHistograms.get(name);
+        return histogram != null ? histogram.copy() : null;
+    }
+
+    public synchronized void reset() {
+        mCounters.clear();
+        mHistograms.clear();
+    }
+
+    /**
+     * Return all counters and histograms, one per line.
+     *
+     * @return
+     */
+    public synchronized String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Long> counter : mCounters.entrySet()) {
+            out.append(counter.getKey()).append(": ").append(counter.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : mHistograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            out.append(entry.getKey()).append(": n=").append(histogram.getCount())
+                    .append(" min=").append(histogram.getMin())
+                    .append(" mean=").append(histogram.getMean())
+                    .append(" p95<=").append(histogram.getPercentile(95))
+                    .append(" max=").append(histogram.getMax()).append('\n');
+        }
+        return out.toString();
+    }
+}
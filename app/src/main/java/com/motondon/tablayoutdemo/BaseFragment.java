@@ -1,26 +1,152 @@
 package com.motondon.tablayoutdemo;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
-
-import java.io.Serializable;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
 
 /**
  * Created by Joca on 12/20/2016.
  */
 
-public abstract class BaseFragment extends Fragment implements Serializable {
+public abstract class BaseFragment extends Fragment {
+
+    // Used by the ViewPagerAdapter to identify a page regardless of its current position. See ViewPagerAdapter class scope comments for details.
+    public static final long NO_PAGE_ID = -1;
+
+    // Fragment arguments set from the TabDescriptor this fragment was created from.
+    private static final String ARG_PAGE_ID = "ARG_PAGE_ID";
+    private static final String ARG_TITLE = "ARG_TITLE";
+    private static final String ARG_ICON_ID = "ARG_ICON_ID";
 
     public abstract String getFragmentName();
 
+    /**
+     * Return the key this fragment class is registered with in the FragmentFactory.
+     *
+     * @return
+     */
+    public abstract String getTypeKey();
+
+    /**
+     * Return the drawable id of the icon shown for this page, or 0 if it does not have one.
+     *
+     * @return
+     */
+    public int getIconId() {
+        Bundle args = getArguments();
+        return args != null ? args.getInt(ARG_ICON_ID, 0) : 0;
+    }
+
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        // In case of using retaining fragment method, we need to set all fragments to setRetainInstance(true). See ViewPagerAdapter class scope comments for details
-        if (((MainActivity)getActivity()).ORIENTATION_CHANGE_METHOD == MainActivity.OrientationChangeMethod.RETAIN_FRAGMENT) {
+        // In case of using retaining fragment method, we need to set all fragments to setRetainInstance(true). See ViewPagerAdapter class scope comments for details.
+        // When using ADAPTIVE method, this is decided for each fragment right before the orientation change (see MainActivity.onSaveInstanceState()).
+        if (((MainActivity)getActivity()).getOrientationChangeMethod() == MainActivity.OrientationChangeMethod.RETAIN_FRAGMENT) {
             setRetainInstance(true);
         }
     }
+
+    /**
+     * Return the view of this page. If the PageViewPreInflater already inflated its layout in the background, take that view instead of
+     * inflating it on the main thread. Subclasses should call this method from onCreateView().
+     *
+     * @param inflater
+     * @param container
+     * @return
+     */
+    protected View inflatePageView(LayoutInflater inflater, ViewGroup container) {
+        int layoutId = FragmentFactory.getLayoutId(getTypeKey());
+
+        PageViewPreInflater preInflater = ((MainActivity) getActivity()).getPageViewPreInflater();
+        if (preInflater != null) {
+            View view = preInflater.take(layoutId);
+            if (view != null) {
+                TabMetrics.count(TabMetrics.VIEW_PRE_INFLATED);
+                return view;
+            }
+        }
+
+        TabMetrics.count(TabMetrics.VIEW_INFLATED);
+        return inflater.inflate(layoutId, container, false);
+    }
+
+    /**
+     * Called by the ViewPagerAdapter when this page is prefetched, i.e.: before the viewPager asks for it (see PagePrefetcher class). Data
+     * heavy pages should start loading their data here (off the main thread), so that it is ready or almost ready when onCreateView() is
+     * called. Note the fragment is not attached yet, so it must not use getActivity() nor touch any view.
+     *
+     * Either the fragment is added afterwards or onPrefetchCancelled() is called. Does nothing by default.
+     *
+     * @param applicationContext
+     */
+    protected void onPrefetch(Context applicationContext) {
+    }
+
+    /**
+     * Called by the ViewPagerAdapter when the user changed their mind and the prefetched page will not be shown. Stop any work started by
+     * onPrefetch(). By default, pending work submitted through runInBackground() is cancelled.
+     */
+    protected void onPrefetchCancelled() {
+        TabWorkScheduler.getDefault().cancelAll(this);
+    }
+
+    /**
+     * Run some work of this page (e.g.: loading or polling data) in the background. Work of the visible page runs first, then the work of the
+     * pages next to it, while the work of offscreen pages is throttled. See TabWorkScheduler class. Pending work is cancelled when this
+     * fragment is destroyed.
+     *
+     * @param work
+     * @return
+     */
+    protected TabWorkScheduler.Task runInBackground(Runnable work) {
+        return TabWorkScheduler.getDefault().submit(getPageId(), this, work);
+    }
+
+    @Override
+    public void onDestroy() {
+        TabWorkScheduler.getDefault().cancelAll(this);
+        super.onDestroy();
+    }
+
+    /**
+     * Return the page id of the tab this fragment was created for, or NO_PAGE_ID if it was not created from a TabDescriptor. Since it is kept
+     * in the fragment arguments, it survives both orientation change methods as well as the fragment state being saved and restored.
+     *
+     * @return
+     */
+    public long getPageId() {
+        Bundle args = getArguments();
+        return args != null ? args.getLong(ARG_PAGE_ID, NO_PAGE_ID) : NO_PAGE_ID;
+    }
+
+    /**
+     * Return the title given by the TabDescriptor this fragment was created from, or null if there is none.
+     *
+     * @return
+     */
+    @Nullable
+    protected String getTitleArgument() {
+        Bundle args = getArguments();
+        return args != null ? args.getString(ARG_TITLE) : null;
+    }
+
+    /**
+     * Used by the FragmentFactory when the fragment is created from its TabDescriptor. Since these are kept as fragment arguments, they
+     * cannot be changed afterwards.
+     *
+     * @param tab
+     */
+    void setTabArguments(TabDescriptor tab) {
+        Bundle args = new Bundle();
+        args.putLong(ARG_PAGE_ID, tab.getPageId());
+        args.putString(ARG_TITLE, tab.getTitle());
+        args.putInt(ARG_ICON_ID, tab.getIconId());
+        setArguments(args);
+    }
 }
@@ -6,13 +6,12 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
-import com.motondon.tablayoutdemo_part_2.R;
-
 /**
  * Created by Joca on 4/6/2016.
  */
 public class ChatFragment extends BaseFragment {
 
+    public static final String TYPE_KEY = "chat";
     public static final String ITEM_TEXT = "Chat";
 
     @Override
@@ -23,7 +22,7 @@ public class ChatFragment extends BaseFragment {
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        View root = inflater.inflate(R.layout.fragment_chat, container, false);
+        View root = inflatePageView(inflater, container);
 
         return root;
     }
@@ -32,4 +31,9 @@ public class ChatFragment extends BaseFragment {
     public String getFragmentName() {
         return ITEM_TEXT;
     }
+
+    @Override
+    public String getTypeKey() {
+        return TYPE_KEY;
+    }
 }
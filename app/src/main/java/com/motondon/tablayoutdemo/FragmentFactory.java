@@ -0,0 +1,111 @@
+package com.motondon.tablayoutdemo;
+
+import android.support.annotation.LayoutRes;
+
+import com.motondon.tablayoutdemo_part_2.R;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry which maps compact type keys (see BaseFragment.getTypeKey()) to the code which creates each kind of fragment.
+ *
+ * It is used when restoring tabs after an orientation change instead of storing the fully qualified class names and then calling
+ * Class.forName().newInstance() for each tab. Besides being faster, this keeps working when the fragment classes are renamed or
+ * obfuscated by ProGuard.
+ *
+ * Every fragment that can be shown as a tab must be registered here.
+ */
+public final class FragmentFactory {
+
+    public interface Creator {
+        BaseFragment newFragment();
+    }
+
+    private static final Map<String, Creator> sCreators = new HashMap<>();
+    private static final Map<String, Integer> sLayoutIds = new HashMap<>();
+
+    static {
+        register(ChatFragment.TYPE_KEY, R.layout.fragment_chat, new Creator() {
+            @Override
+            public BaseFragment newFragment() {
+                return new ChatFragment();
+            }
+        });
+
+        register(WalkFragment.TYPE_KEY, R.layout.fragment_walk, new Creator() {
+            @Override
+            public BaseFragment newFragment() {
+                return new WalkFragment();
+            }
+        });
+
+        register(GenericFragment.TYPE_KEY, R.layout.fragment_generic, new Creator() {
+            @Override
+            public BaseFragment newFragment() {
+                return new GenericFragment();
+            }
+        });
+    }
+
+    private FragmentFactory() {
+    }
+
+    /**
+     * Register the code which creates a kind of fragment as well as the layout of its view. The layout is registered here (instead of only
+     * being known by the fragment) so that the PageViewPreInflater can inflate it before the fragment even exists.
+     *
+     * @param typeKey
+     * @param layoutId
+     * @param creator
+     */
+    public static void register(String typeKey, @LayoutRes int layoutId, Creator creator) {
+        if (sCreators.containsKey(typeKey)) {
+            throw new IllegalArgumentException("A fragment is already registered for type key: " + typeKey);
+        }
+        sCreators.put(typeKey, creator);
+        sLayoutIds.put(typeKey, layoutId);
+    }
+
+    public static boolean isRegistered(String typeKey) {
+        return sCreators.containsKey(typeKey);
+    }
+
+    /**
+     * Return the layout of the view of the fragments registered with the given type key, or 0 if there is none.
+     *
+     * @param typeKey
+     * @return
+     */
+    @LayoutRes
+    public static int getLayoutId(String typeKey) {
+        Integer layoutId = sLayoutIds.get(typeKey);
+        return layoutId != null ? layoutId : 0;
+    }
+
+    /**
+     * Create a new fragment for the given type key.
+     *
+     * @param typeKey
+     * @return
+     */
+    public static BaseFragment newFragment(String typeKey) {
+        Creator creator = sCreators.get(typeKey);
+        if (creator == null) {
+            throw new IllegalArgumentException("No fragment registered for type key: " + typeKey);
+        }
+        return creator.newFragment();
+    }
+
+    /**
+     * Create the fragment of the page described by the given tab descriptor.
+     *
+     * @param tab
+     * @return
+     */
+    public static BaseFragment newFragment(TabDescriptor tab) {
+        BaseFragment fragment = newFragment(tab.getTypeKey());
+        fragment.setTabArguments(tab);
+        return fragment;
+    }
+}
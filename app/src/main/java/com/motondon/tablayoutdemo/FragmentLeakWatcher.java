@@ -0,0 +1,161 @@
+package com.motondon.tablayoutdemo;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches fragments which were removed (see ViewPagerAdapter) and reports the ones that are still reachable some time later, even after
+ * forcing a GC. Installed by MainActivity in debug builds only: when not installed, watch() does nothing.
+ *
+ * Each removed fragment is kept through a weak reference. After the check delay, if it was not collected, GC is forced (on a background
+ * thread) and it is checked again. If it is still there, the RetentionInspector given to watch() (e.g.: the adapter) is asked on the main
+ * thread which of the references it knows about still point to it, and the leak is handed to the Reporter along with those hints. For the
+ * full retention path, the reporter can dump the heap (see MainActivity).
+ *
+ * This class does not depend on Android, so it can be tested on the JVM.
+ */
+public class FragmentLeakWatcher {
+
+    public interface RetentionInspector {
+        /**
+         * Return a description of each known reference which still points to the given object (e.g.: "ViewPagerAdapter.mActivePages").
+         *
+         * @param object
+         * @return
+         */
+        List<String> findReferencesTo(Object object);
+    }
+
+    public interface Reporter {
+        /**
+         * Called on the main thread for each watched object which survived removal.
+         *
+         * @param description
+         * @param retentionHints
+         * @param watchedForMs
+         */
+        void onLeak(String description, List<String> retentionHints, long watchedForMs);
+    }
+
+    private static volatile FragmentLeakWatcher sInstance;
+
+    private final long mCheckDelayMs;
+    private final Executor mMainExecutor;
+    private final Reporter mReporter;
+    private final ScheduledExecutorService mScheduler;
+
+    private int mWatchedCount = 0;
+    private int mLeakCount = 0;
+
+    /**
+     * @param checkDelayMs how long after removal the object is expected to be collected
+     * @param mainExecutor where inspectors and the reporter are called
+     * @param reporter
+     */
+    public FragmentLeakWatcher(long checkDelayMs, Executor mainExecutor, Reporter reporter) {
+        mCheckDelayMs = checkDelayMs;
+        mMainExecutor = mainExecutor;
+        mReporter = reporter;
+
+        mScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "FragmentLeakWatcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static void install(FragmentLeakWatcher watcher) {
+        sInstance = watcher;
+    }
+
+    public static boolean isInstalled() {
+        return sInstance != null;
+    }
+
+    /**
+     * Watch an object which was just removed and is expected to be collected soon. Does nothing unless a watcher was installed.
+     *
+     * @param object
+     * @param description
+     * @param inspector asked for retention hints if the object leaks. Only weakly referenced.
+     */
+    public static void watch(Object object, String description, RetentionInspector inspector) {
+        FragmentLeakWatcher watcher = sInstance;
+        if (watcher != null) {
+            watcher.watchObject(object, description, inspector);
+        }
+    }
+
+    public synchronized int getWatchedCount() {
+        return mWatchedCount;
+    }
+
+    public synchronized int getLeakCount() {
+        return mLeakCount;
+    }
+
+    public void watchObject(Object object, final String description, RetentionInspector inspector) {
+        final WeakReference<Object> reference = new WeakReference<>(object);
+        final WeakReference<RetentionInspector> inspectorReference = new WeakReference<>(inspector);
+        final long watchStart = System.currentTimeMillis();
+        synchronized (this) {
+            mWatchedCount++;
+        }
+
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (reference.get() == null) {
+                    return;
+                }
+                forceGc();
+                if (reference.get() == null) {
+                    return;
+                }
+
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Object leaked = reference.get();
+                        if (leaked == null) {
+                            return;
+                        }
+
+                        RetentionInspector inspector = inspectorReference.get();
+                        List<String> hints = inspector != null ? inspector.findReferencesTo(leaked) : new ArrayList<String>();
+                        leaked = null;
+
+                        synchronized (FragmentLeakWatcher.this) {
+                            mLeakCount++;
+                        }
+                        mReporter.onLeak(description, Collections.unmodifiableList(hints), System.currentTimeMillis() - watchStart);
+                    }
+                });
+            }
+        }, mCheckDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void forceGc() {
+        // System.gc() is only a hint (on Android and elsewhere), so ask a few times and give finalizers and reference processing a chance to run.
+        for (int i = 0; i < 3; i++) {
+            Runtime.getRuntime().gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            System.runFinalization();
+        }
+    }
+}
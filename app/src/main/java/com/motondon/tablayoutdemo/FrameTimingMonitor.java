@@ -0,0 +1,86 @@
+package com.motondon.tablayoutdemo;
+
+import android.support.v4.view.ViewPager;
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Measures frame times during each swipe (i.e.: from the moment the viewPager starts being dragged until it settles) and prints a summary
+ * to logcat (tag "FrameTimingMonitor"): number of frames, number of janky frames (longer than 1.5 times the expected frame time) and the
+ * longest frame. Used to compare swipes with and without page pre-inflation (see MainActivity.PRE_INFLATE_PAGES).
+ */
+public class FrameTimingMonitor extends ViewPager.SimpleOnPageChangeListener implements Choreographer.FrameCallback {
+    private static final String TAG = FrameTimingMonitor.class.getSimpleName();
+
+    private static final long FRAME_NANOS = 1000000000L / 60;
+    private static final long JANK_NANOS = FRAME_NANOS * 3 / 2;
+
+    private final String mLabel;
+
+    private boolean mMonitoring = false;
+    private long mLastFrameNanos;
+    private int mFrameCount;
+    private int mJankyFrameCount;
+    private long mMaxFrameNanos;
+
+    // When the user lifted the finger, so that the time the viewPager takes to settle can be reported to TabMetrics.
+    private long mSettleStartNanos;
+
+    /**
+     * @param label printed with each summary, so that different configurations can be told apart in the log
+     */
+    public FrameTimingMonitor(String label) {
+        mLabel = label;
+    }
+
+    @Override
+    public void onPageScrollStateChanged(int state) {
+        if (state == ViewPager.SCROLL_STATE_DRAGGING && !mMonitoring) {
+            start();
+        } else if (state == ViewPager.SCROLL_STATE_SETTLING) {
+            mSettleStartNanos = System.nanoTime();
+        } else if (state == ViewPager.SCROLL_STATE_IDLE && mMonitoring) {
+            stop();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mMonitoring) {
+            return;
+        }
+
+        if (mLastFrameNanos > 0) {
+            long frameNanos = frameTimeNanos - mLastFrameNanos;
+            mFrameCount++;
+            if (frameNanos > JANK_NANOS) {
+                mJankyFrameCount++;
+            }
+            mMaxFrameNanos = Math.max(mMaxFrameNanos, frameNanos);
+        }
+        mLastFrameNanos = frameTimeNanos;
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void start() {
+        mMonitoring = true;
+        mLastFrameNanos = 0;
+        mFrameCount = 0;
+        mJankyFrameCount = 0;
+        mMaxFrameNanos = 0;
+        mSettleStartNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void stop() {
+        mMonitoring = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+
+        if (mSettleStartNanos > 0) {
+            TabMetrics.record(TabMetrics.SWIPE_SETTLE_MS, (System.nanoTime() - mSettleStartNanos) / 1000000);
+        }
+
+        Log.i(TAG, mLabel + " - swipe frames: " + mFrameCount + ", janky: " + mJankyFrameCount + ", longest: " + mMaxFrameNanos / 1000000 + "ms");
+    }
+}
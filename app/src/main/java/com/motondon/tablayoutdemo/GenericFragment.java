@@ -14,49 +14,58 @@ import com.motondon.tablayoutdemo_part_2.R;
  */
 public class GenericFragment extends BaseFragment {
 
-    // Create an array of pre-defined icons in order to set it at real-time by using the appropriated icon.
-    private static int[] ICON_ID_LIST = new int[] {
+    // Create an array of pre-defined icons in order to set it at real-time by using the appropriated icon. Since there is no limit on the
+    // number of generic tabs, these icons are recycled (i.e.: "Generic 5" gets the same icon as "Generic 1").
+    private static final int[] ICON_ID_LIST = new int[] {
             R.drawable.ic_filter_1_white_24dp,
             R.drawable.ic_filter_2_white_24dp,
             R.drawable.ic_filter_3_white_24dp,
             R.drawable.ic_filter_4_white_24dp};
 
-    public int ICON_ID = ICON_ID_LIST[0];
-    public String ITEM_TEXT = "Generic ";
+    public static final String TYPE_KEY = "generic";
+    public static final String ITEM_TEXT = "Generic ";
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
     }
-    
-    public void mountFragmentName(int genericFragmentCount) {
-    	ITEM_TEXT = ITEM_TEXT + genericFragmentCount;
-        ICON_ID = ICON_ID_LIST[genericFragmentCount -1];
-    }
 
     /**
-     * Used when ORIENTATION_CHANGE_METHOD flag is RECREATE_FRAGMENT. See ViewPagerAdapter class scope comments for details.
+     * Create the descriptor of a new generic tab. Its title will be something like "Generic 1", "Generic 2", etc.
      *
-     * @param fragmentName
+     * @param genericFragmentCount
+     * @return
      */
-    public void setFragmentName(String fragmentName) {
-        ITEM_TEXT = fragmentName;
+    public static TabDescriptor newTabDescriptor(int genericFragmentCount) {
+        return TabDescriptor.create(TYPE_KEY, ITEM_TEXT + genericFragmentCount, ICON_ID_LIST[(genericFragmentCount - 1) % ICON_ID_LIST.length]);
     }
 
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        View root = inflater.inflate(R.layout.fragment_generic, container, false);
+        View root = inflatePageView(inflater, container);
 
         // Set frag name to the textView so that we can visualize the name of the frag easily
         TextView textView = (TextView) root.findViewById(R.id.tv_frag_name);
-        textView.setText(ITEM_TEXT);
+        textView.setText(getFragmentName());
 
         return root;
     }
 
+    /**
+     * The title is given by the TabDescriptor this fragment was created from and kept in the fragment arguments (see BaseFragment), so it
+     * survives both orientation change methods.
+     *
+     * @return
+     */
     @Override
     public String getFragmentName() {
-        return ITEM_TEXT;
+        String title = getTitleArgument();
+        return title != null ? title : ITEM_TEXT;
+    }
+
+    @Override
+    public String getTypeKey() {
+        return TYPE_KEY;
     }
 }
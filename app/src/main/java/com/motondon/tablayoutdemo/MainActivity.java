@@ -1,26 +1,46 @@
 package com.motondon.tablayoutdemo;
 
+import android.content.Context;
 import android.content.DialogInterface;
 import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcel;
+import android.support.annotation.Nullable;
 import android.support.design.widget.TabLayout;
 import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
 import android.support.v4.view.ViewPager;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.PopupMenu;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.LinearLayout;
 import android.widget.Toast;
 
+import com.motondon.tablayoutdemo_part_2.BuildConfig;
 import com.motondon.tablayoutdemo_part_2.R;
 
-import java.io.Serializable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
@@ -37,12 +57,15 @@ import butterknife.ButterKnife;
  *   1) Hold a reference for all existent fragment on onSaveInstanceState method and add them back to the adapter on
  *      onCreate() method.
  *
- *   2) store a list of the current fragments classes names and then destroy all of them.  Note that we need to store the
- *      fully qualified fragment’s names since we will use reflection when reconstructing them. Then, recreate them in the
+ *   2) store a list of the current fragments type keys and then destroy all of them.  Note that we need to store the
+ *      fragment’s type keys since we will use the FragmentFactory when reconstructing them. Then, recreate them in the
  *      Activity’s onCreate.
  *
+ * A third option (ADAPTIVE) mixes both of them: for each page, it retains the fragment if it is expensive to rebuild and recreates it
+ * otherwise. See AdaptiveOrientationStrategy class.
+ *
  * For both approaches, all the hard work are done on onSaveInstanceState() and onCreate() methods. Also there are a couple
- * of helper methods in the ViewPagerAdapter class.
+ * of helper methods in the ViewPagerAdapter class. In both cases, the list of tabs is saved as a TabStateSnapshot.
  *
  * See ViewPagerAdapter class scope comments for details.
  *
@@ -50,146 +73,753 @@ import butterknife.ButterKnife;
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = MainActivity.class.getSimpleName();
 
-    // Used when ORIENTATION_CHANGE_METHOD flag is RETAIN_FRAGMENT. See ViewPagerAdapter class scope comments for details.
-    private static final String CURRENT_PAGES = "CURRENT_PAGES";
+    // Used for both orientation change methods. See TabStateSnapshot and ViewPagerAdapter class scope comments for details.
+    private static final String TAB_STATE_SNAPSHOT = "TAB_STATE_SNAPSHOT";
+    private static final String GENERIC_FRAGMENT_COUNT = "GENERIC_FRAGMENT_COUNT";
+    private static final String ORIENTATION_CHANGE_METHOD = "ORIENTATION_CHANGE_METHOD";
+    private static final String TAB_CONFIG_LOADING = "TAB_CONFIG_LOADING";
+
+    // Start the activity with this extra (holding an OrientationChangeMethod name) in order to choose the orientation change method at runtime.
+    public static final String EXTRA_ORIENTATION_CHANGE_METHOD = "EXTRA_ORIENTATION_CHANGE_METHOD";
+
+    // When true, the size of the bundle saved on onSaveInstanceState() is measured (see getLastSavedStateBytes()). Used by OrientationChangeBenchmark.
+    public static final String EXTRA_MEASURE_SAVED_STATE = "EXTRA_MEASURE_SAVED_STATE";
+
+    // Start the activity with this extra (a boolean) in order to choose between the TabLayout and the virtual tab strip at runtime. See VIRTUAL_TAB_STRIP.
+    public static final String EXTRA_VIRTUAL_TAB_STRIP = "EXTRA_VIRTUAL_TAB_STRIP";
 
-    // Used when ORIENTATION_CHANGE_METHOD flag is RECREATE_FRAGMENT. See ViewPagerAdapter class scope comments for details.
-    private static final String CURRENT_PAGES_CLASS_NAMES = "CURRENT_PAGES_CLASS_NAMES";
-    private static final String CURRENT_PAGES_TITLES = "CURRENT_PAGES_TITLES";
+    // Start the activity with this extra (a URL) in order to load the initial tabs from another config at runtime. See TAB_CONFIG_URL.
+    public static final String EXTRA_TAB_CONFIG_URL = "EXTRA_TAB_CONFIG_URL";
+
+    // Tab config loads of all the activity instances run one after the other, so that a load restarted after an orientation change only starts
+    // once the interrupted one (see onDestroy()) has recorded the entries it delivered. See TabConfigLoader.cancel().
+    private static final ExecutorService TAB_CONFIG_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    // Keeps the tabs across process death and cold starts. See TabSessionStore class.
+    static final String TAB_SESSION_FILE = "tab_session";
+
+    // Keeps the last tab config read and its ETag (in the cache dir). See TabConfigLoader class.
+    static final String TAB_CONFIG_CACHE_DIR = "tab_config";
 
     // This enum is used to decide what orientation method we will use.
     public enum OrientationChangeMethod {
         RECREATE_FRAGMENT,
         RETAIN_FRAGMENT,
+
+        // Decide for each page: fragments which are expensive to rebuild are retained, all the others are recreated. See AdaptiveOrientationStrategy.
+        ADAPTIVE,
     }
 
+    // Used by the ADAPTIVE orientation change method: fragments which take at least a frame to be rebuilt are worth retaining, up to three of them.
+    private static final long ADAPTIVE_RETAIN_THRESHOLD_NANOS = 16 * 1000000L;
+    private static final int ADAPTIVE_MAX_RETAINED_PAGES = 3;
+
     ///////////////////////////////////////////////////////////////////////////
     //
-    // Change this attribute in order to test both orientation change methods.
+    // Change this attribute in order to test both orientation change methods. It is only the default: the method can also be chosen at runtime by
+    // starting the activity with EXTRA_ORIENTATION_CHANGE_METHOD. Once chosen, it is kept across orientation changes.
     //
     ///////////////////////////////////////////////////////////////////////////
-    public static final OrientationChangeMethod ORIENTATION_CHANGE_METHOD = OrientationChangeMethod.RETAIN_FRAGMENT;
-
-    // This app limits to create up to four new tabs. These attributes are used to control it.
-    private static final int MAX_NUMBER_OF_NEW_TABS = 4;
-    private static int genericFragmentCount = 0;
+    public static final OrientationChangeMethod DEFAULT_ORIENTATION_CHANGE_METHOD = OrientationChangeMethod.RETAIN_FRAGMENT;
+
+    private OrientationChangeMethod orientationChangeMethod = DEFAULT_ORIENTATION_CHANGE_METHOD;
+    private boolean measureSavedState = false;
+    private int lastSavedStateBytes = -1;
+
+    // When true, the views of the pages next to the live ones are inflated in the background while the user sits idle on a tab. Set it to false
+    // and compare the FrameTimingMonitor output in logcat in order to see the difference it makes while swiping. See PageViewPreInflater class.
+    public static final boolean PRE_INFLATE_PAGES = true;
+
+    // Pages next to the current one are live, and the three most recently used pages out of them keep their views (hidden). Increase the hot
+    // page count in order to make swiping back to heavy pages cheaper, or set it to zero on low-RAM devices. See PageRetentionPolicy class.
+    public static final PageRetentionPolicy PAGE_RETENTION_POLICY = new PageRetentionPolicy(1, 3);
+
+    // When true, a page starts being built (fragment created, view inflated, data loaded) as soon as the user starts swiping towards it or touches
+    // its tab, instead of when the selection commits. See PagePrefetcher class.
+    public static final boolean PREFETCH_PAGES = true;
+
+    // When true, pager metrics (fragments created, views inflated, adapter notifications, swipe latency, page state sizes) are collected and
+    // shown on top of the screen. When false, metrics cost nothing. See TabMetrics and MetricsOverlay classes.
+    public static final boolean SHOW_METRICS_OVERLAY = false;
+
+    // When true, tabs are shown by a RecyclerView which only creates the tab views close to the visible part of the strip, instead of by the
+    // TabLayout, which creates a view for each tab. Use it when there might be hundreds of tabs. Note tabs cannot be dragged in this mode (a
+    // long-click shows the tab menu). It is only the default: it can also be chosen at runtime with EXTRA_VIRTUAL_TAB_STRIP. See
+    // VirtualTabStripBinder class.
+    public static final boolean VIRTUAL_TAB_STRIP = false;
+
+    // When there are no tabs from a previous session, the initial tabs are loaded from the JSON config at this URL: either an http(s) URL or a
+    // file: URL (e.g.: in order to try a config without a server). When null, the built-in tabs are used (see newDefaultTabs()). When the tabs
+    // of a previous session are restored, tabs added to the config since then are appended to them. The config is read off the main thread
+    // and tabs are added as soon as they are parsed, so startup never waits for it. It is only the default: it can also be chosen at runtime
+    // with EXTRA_TAB_CONFIG_URL. See TabConfigLoader class.
+    public static final String TAB_CONFIG_URL = null;
+
+    // In debug builds, every fragment removed by the adapter is expected to be garbage collected within a few seconds. The ones which are not
+    // are logged (tag "FragmentLeakWatcher") along with the references the adapter knows about. Set DUMP_HEAP_ON_LEAK to true in order to also
+    // get a heap dump (in the app files dir), which can be opened in Android Studio to see the full path from the GC roots to the fragment.
+    public static final boolean WATCH_FRAGMENT_LEAKS = BuildConfig.DEBUG;
+    public static final boolean DUMP_HEAP_ON_LEAK = false;
+    private static final long LEAK_CHECK_DELAY_MS = 5000;
+
+    // Used to number the tabs created dynamically ("Generic 1", "Generic 2", etc).
+    private int genericFragmentCount = 0;
 
     @BindView(R.id.tabanim_toolbar) Toolbar toolbar;
     @BindView(R.id.tabanim_tabs) TabLayout tabLayout;
+    @BindView(R.id.tabanim_virtual_tabs) RecyclerView virtualTabStrip;
     @BindView(R.id.tabanim_viewpager) ViewPager viewPager;
     
     private ViewPagerAdapter viewPagerAdapter;
+    private TabStripBinder tabStripBinder;
+    private VirtualTabStripBinder virtualTabStripBinder;
+    private TabListModel tabListModel;
+
+    // Page ids of the tabs added by the user whose diff was not applied yet. The user is told the tab was added once it is. See addTab().
+    private final Set<Long> pendingAddedPageIds = new HashSet<>();
+    private PageViewPreInflater pageViewPreInflater;
+    private PagePrefetcher pagePrefetcher;
+    private TabDragController tabDragController;
+    private TabSessionStore tabSessionStore;
+    private TabConfigLoader tabConfigLoader;
+
+    // Set (on the loader thread) once the tab config was read to the end or failed. If the activity is recreated before that, the new one
+    // loads the rest of it. See onSaveInstanceState().
+    private volatile boolean tabConfigLoadDone = false;
+    private StartupTracer startupTracer;
+    private MetricsOverlay metricsOverlay;
+
+    // Kept across orientation changes (see onRetainCustomNonConfigurationInstance()), so that rebuild costs measured before are not lost.
+    private AdaptiveOrientationStrategy adaptiveOrientationStrategy;
+
+    // Measures how long each fragment takes to be built from scratch (from being attached until its activity was created), for the
+    // ADAPTIVE orientation change method. Retained fragments are not measured, since onCreate() is not called for them.
+    private final Map<Fragment, Long> fragmentAttachTimes = new WeakHashMap<>();
+    private final Map<Fragment, Long> fragmentBuildStartTimes = new WeakHashMap<>();
+    private final FragmentManager.FragmentLifecycleCallbacks rebuildCostCallbacks = new FragmentManager.FragmentLifecycleCallbacks() {
+        @Override
+        public void onFragmentPreAttached(FragmentManager fm, Fragment f, Context context) {
+            fragmentAttachTimes.put(f, System.nanoTime());
+        }
+
+        @Override
+        public void onFragmentCreated(FragmentManager fm, Fragment f, Bundle savedInstanceState) {
+            Long start = fragmentAttachTimes.remove(f);
+            if (start != null) {
+                fragmentBuildStartTimes.put(f, start);
+            }
+        }
+
+        @Override
+        public void onFragmentActivityCreated(FragmentManager fm, Fragment f, Bundle savedInstanceState) {
+            fragmentAttachTimes.remove(f);
+            Long start = fragmentBuildStartTimes.remove(f);
+            if (start != null && f instanceof BaseFragment) {
+                adaptiveOrientationStrategy.recordRebuildCost(((BaseFragment) f).getTypeKey(), System.nanoTime() - start);
+            }
+        }
+    };
+
+    // Used by the tabListModel to build new tab lists off the main thread and to post the results back to it.
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private final Executor mainThreadExecutor = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+
+    // A single long-click listener shared by all tabs. Instead of capturing the tab index when it is created (which becomes stale as soon as
+    // a tab before it is removed), it works out the tab position when the click happens.
+    //
+    // A long-click starts dragging the tab, so that it can be moved to another position. If the user drops it where it was, the tab menu is
+    // shown instead. See TabDragController class.
+    private final View.OnLongClickListener tabLongClickListener = new View.OnLongClickListener() {
+        @Override
+        public boolean onLongClick(View v) {
+            int tabIndex = VirtualTabStripBinder.getTabPosition(v);
+            if (tabIndex < 0 || tabIndex >= viewPagerAdapter.getCount()) {
+                return false;
+            }
+
+            // Keep the page id instead of the index, since tabs might still change while the tab is dragged or the menu and the dialog are shown.
+            long pageId = viewPagerAdapter.getPageId(tabIndex);
+
+            if (tabDragController == null || !tabDragController.startDrag(v, pageId)) {
+                showTabMenu(v, pageId);
+            }
+            return true;
+        }
+    };
+
+    private final TabDragController.Callback tabDragCallback = new TabDragController.Callback() {
+        @Override
+        public void onTabMoved(long pageId, int toPosition) {
+            moveTab(pageId, toPosition);
+        }
+
+        @Override
+        public void onTabDroppedInPlace(View tabView, long pageId) {
+            showTabMenu(tabView, pageId);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         Log.d(TAG, "onCreate()");
 
+        // Each step of the startup is traced. See StartupTracer class.
+        startupTracer = new StartupTracer();
+        startupTracer.begin("MainActivity.onCreate");
+
+        // This must be known before super.onCreate(), since fragments restored there check it on their onCreate() (see BaseFragment).
+        orientationChangeMethod = resolveOrientationChangeMethod(savedInstanceState);
+        measureSavedState = getIntent().getBooleanExtra(EXTRA_MEASURE_SAVED_STATE, false);
+
+        if (orientationChangeMethod == OrientationChangeMethod.ADAPTIVE) {
+            adaptiveOrientationStrategy = (AdaptiveOrientationStrategy) getLastCustomNonConfigurationInstance();
+            if (adaptiveOrientationStrategy == null) {
+                adaptiveOrientationStrategy = new AdaptiveOrientationStrategy(ADAPTIVE_RETAIN_THRESHOLD_NANOS, ADAPTIVE_MAX_RETAINED_PAGES);
+            }
+            getSupportFragmentManager().registerFragmentLifecycleCallbacks(rebuildCostCallbacks, false);
+        }
+
+        if (WATCH_FRAGMENT_LEAKS && !FragmentLeakWatcher.isInstalled()) {
+            installFragmentLeakWatcher(getApplicationContext());
+        }
+
+        // Note this is where the FragmentManager restores the retained fragments (if any).
+        startupTracer.begin("super.onCreate");
         super.onCreate(savedInstanceState);
+        startupTracer.end();
+
+        startupTracer.begin("setContentView");
         setContentView(R.layout.activity_main);
+        startupTracer.end();
+
+        startupTracer.begin("ButterKnife.bind");
         ButterKnife.bind(this);
+        startupTracer.end();
 
         setSupportActionBar(toolbar);
 
+        startupTracer.begin("createAdapter");
         viewPagerAdapter = new ViewPagerAdapter(getSupportFragmentManager());
+        viewPagerAdapter.setRetentionPolicy(PAGE_RETENTION_POLICY);
+        viewPager.setOffscreenPageLimit(PAGE_RETENTION_POLICY.getOffscreenPageLimit());
         viewPager.setAdapter(viewPagerAdapter);
-        tabLayout.setupWithViewPager(viewPager);
 
-        if (savedInstanceState == null) {
+        // Instead of tabLayout.setupWithViewPager(), which recreates all tabs on every adapter change, use a binder which only updates the tabs
+        // that changed and recycles their views. See TabStripBinder class for details. With many tabs, use the virtual tab strip instead, which
+        // only has views for the tabs in sight. See VirtualTabStripBinder class.
+        if (getIntent().getBooleanExtra(EXTRA_VIRTUAL_TAB_STRIP, VIRTUAL_TAB_STRIP)) {
+            tabLayout.setVisibility(View.GONE);
+            virtualTabStrip.setVisibility(View.VISIBLE);
+            virtualTabStripBinder = new VirtualTabStripBinder(virtualTabStrip, viewPager, viewPagerAdapter);
+        } else {
+            tabStripBinder = new TabStripBinder(tabLayout, viewPager, viewPagerAdapter);
+        }
 
-            // For this example we will just add two fragments on it.
-            viewPagerAdapter.addTabPage(new ChatFragment());
-            viewPagerAdapter.addTabPage(new WalkFragment());
+        if (PRE_INFLATE_PAGES) {
+            pageViewPreInflater = new PageViewPreInflater(viewPager, viewPagerAdapter);
+            viewPager.addOnPageChangeListener(pageViewPreInflater);
+        }
+        if (PREFETCH_PAGES) {
+            pagePrefetcher = new PagePrefetcher(viewPager, viewPagerAdapter, pageViewPreInflater);
+            viewPager.addOnPageChangeListener(pagePrefetcher);
+        }
+        viewPager.addOnPageChangeListener(new FrameTimingMonitor(PRE_INFLATE_PAGES ? "pre-inflation on" : "pre-inflation off"));
+        startupTracer.end();
 
-            // And set the first one as selected.
-            TabLayout.Tab tab = tabLayout.getTabAt(0);
-            tab.select();
+        startupTracer.begin("createTabListModel");
+
+        // Tab mutations are computed by the model on a background thread. Here we only apply the resulting diff to the adapter (which in turn
+        // updates the viewPager and the TabLayout).
+        tabListModel = new TabListModel(backgroundExecutor, mainThreadExecutor);
+        tabListModel.setListener(new TabListModel.Listener() {
+            @Override
+            public void onTabsChanged(List<TabDescriptor> tabs, TabListDiff diff) {
+                if (isDestroyed()) {
+                    return;
+                }
+                viewPagerAdapter.applyDiff(diff);
+                tabSessionStore.appendDiff(diff);
+
+                if (!pendingAddedPageIds.isEmpty()) {
+                    for (TabListDiff.Op op : diff.getOps()) {
+                        if (op.type == TabListDiff.INSERT && pendingAddedPageIds.remove(op.tab.getPageId())) {
+                            Log.d(TAG, "addTab() - Tab: " + op.tab.getTitle() + " was added successfully");
+                            Toast.makeText(getApplicationContext(), "Tab: " + op.tab.getTitle() + " was added successfully", Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                }
+            }
+        });
+
+        // Session writes share the background executor with the tabListModel, so they are done in order and never on the main thread.
+        tabSessionStore = new TabSessionStore(new File(getFilesDir(), TAB_SESSION_FILE), BuildConfig.VERSION_CODE, backgroundExecutor);
+        viewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                tabSessionStore.appendSelection(position);
+                updateWorkPriorities();
+            }
+        });
+
+        // Background work of the visible page runs first, then that of the pages next to it. Offscreen pages are throttled. Keep the priorities
+        // in line with the selected page and the list of pages, and drop the work of removed pages. See TabWorkScheduler class.
+        viewPagerAdapter.addTabChangeListener(new ViewPagerAdapter.TabChangeListener() {
+            @Override
+            public void onTabsChanged(TabListDiff diff) {
+                if (diff == null) {
+                    TabWorkScheduler.getDefault().updatePriorities(viewPagerAdapter.getTabDescriptors(), viewPager.getCurrentItem(),
+                            viewPager.getOffscreenPageLimit());
+                    return;
+                }
+
+                List<Long> removedPageIds = new ArrayList<>();
+                for (TabListDiff.Op op : diff.getOps()) {
+                    if (op.type == TabListDiff.REMOVE) {
+                        removedPageIds.add(op.tab.getPageId());
+                    }
+                }
+                if (!removedPageIds.isEmpty()) {
+                    TabWorkScheduler.getDefault().removePages(removedPageIds);
+                }
+                updateWorkPriorities();
+            }
+        });
+        startupTracer.end();
+
+        startupTracer.begin("wireTabStrip");
+
+        // The TabLayout adds a view to its tab strip for each tab. Attach the shared long-click listener (and the prefetcher, which starts building
+        // the page on touch-down) to each of them as they are added, so that we never need to walk through all tabs after adding or removing one.
+        // The virtual tab strip attaches them to each tab view it creates.
+        if (virtualTabStripBinder != null) {
+            virtualTabStripBinder.setTabListeners(tabLongClickListener, pagePrefetcher);
+
+        } else if (tabLayout.getChildCount() > 0) {
+            tabDragController = new TabDragController(tabLayout, tabDragCallback);
+
+            LinearLayout tabStrip = (LinearLayout) tabLayout.getChildAt(0);
+            tabStrip.setOnHierarchyChangeListener(new ViewGroup.OnHierarchyChangeListener() {
+                @Override
+                public void onChildViewAdded(View parent, View child) {
+                    child.setOnLongClickListener(tabLongClickListener);
+                    child.setOnTouchListener(pagePrefetcher);
+                }
+
+                @Override
+                public void onChildViewRemoved(View parent, View child) {
+                    // Tab views might be recycled by the TabLayout, so do not leave the listener behind.
+                    child.setOnLongClickListener(null);
+                    child.setOnTouchListener(null);
+                }
+            });
+        }
+        startupTracer.end();
+
+        startupTracer.begin("restoreTabs");
+        if (savedInstanceState == null) {
+
+            // On a cold start, bring back the tabs of the last session, if any. This is a single small file read. Tabs added to the tab config
+            // since the last start are appended to them. Otherwise, load the tabs from the tab config, if there is one. Note this does not wait
+            // for the config: its tabs are added as they arrive.
+            String tabConfigUrl = getIntent().hasExtra(EXTRA_TAB_CONFIG_URL) ? getIntent().getStringExtra(EXTRA_TAB_CONFIG_URL) : TAB_CONFIG_URL;
+            TabSessionStore.Session session = tabSessionStore.read();
+            if (session != null && !session.getTabs().isEmpty()) {
+                genericFragmentCount = session.getTabCounter();
+                restorePages(session.getTabs(), session.getSelectedIndex());
+                loadTabConfig(tabConfigUrl, true);
+
+            } else if (!loadTabConfig(tabConfigUrl, false)) {
+
+                // No tab config, so just add the built-in tabs.
+                List<TabDescriptor> tabs = newDefaultTabs();
+                tabListModel.reset(tabs);
+                viewPagerAdapter.setPages(tabs);
+
+                // And set the first one as selected. The virtual tab strip already selects the viewPager current item.
+                if (tabStripBinder != null) {
+                    TabLayout.Tab tab = tabLayout.getTabAt(0);
+                    tab.select();
+                }
+            }
 
         } else {
 
-            // After a screen rotate, we check which orientation change method is configured. Depends on the method, we will retrieve specifics attributes
-            // from the bundle.
-            if (ORIENTATION_CHANGE_METHOD == OrientationChangeMethod.RETAIN_FRAGMENT) {
+            genericFragmentCount = savedInstanceState.getInt(GENERIC_FRAGMENT_COUNT);
+
+            // After a screen rotate, rebuild the tabs from the snapshot saved on onSaveInstanceState().
+            TabStateSnapshot snapshot = savedInstanceState.getParcelable(TAB_STATE_SNAPSHOT);
+            if (snapshot != null && snapshot.getPageCount() > 0) {
+                restorePages(snapshot.toTabDescriptors(), snapshot.getSelectedIndex());
+            }
+
+            // The previous activity was still loading the tab config when it was destroyed. Load the entries it did not deliver.
+            if (savedInstanceState.getBoolean(TAB_CONFIG_LOADING)) {
+                loadTabConfig(getIntent().hasExtra(EXTRA_TAB_CONFIG_URL) ? getIntent().getStringExtra(EXTRA_TAB_CONFIG_URL) : TAB_CONFIG_URL, true);
+            }
+        }
 
-                // If using RETAIN_FRAGMENT, as the name implies, all current fragments is retained in the onSaveInstanceState method. So, all we need to
-                // do is to add them back to the adapter.
-                List<Fragment> currentPages = (List<Fragment>) savedInstanceState.getSerializable(CURRENT_PAGES);
-                if (currentPages.size() > 0) {
-                    viewPagerAdapter.setPages(currentPages);
+        // Start a fresh session file with the current tabs. From now on, only changes are appended to it.
+        tabSessionStore.writeSnapshot(viewPagerAdapter.getTabDescriptors(), viewPager.getCurrentItem(), genericFragmentCount);
+        startupTracer.end();
+
+        // Once the first pages are on the screen, prepare the views of the ones the next swipe will need.
+        if (pageViewPreInflater != null) {
+            viewPager.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isDestroyed()) {
+                        pageViewPreInflater.preInflateAround(viewPager.getCurrentItem());
+                    }
                 }
-            } else {
-
-                // When using RECREATE_FRAGMENT, since all fragments were before the orientation change, we need now to reconstruct them. Note that for the
-                // fragments that were created dynamically we need also an extra step in oder to set their titles which is something like "Generic 1", "Generic 2".
-                List<String> currentPagesClassNames = (List<String>) savedInstanceState.getSerializable(CURRENT_PAGES_CLASS_NAMES);
-                List<String> currentPagesTitles = (List<String>) savedInstanceState.getSerializable(CURRENT_PAGES_TITLES);
-
-                if (currentPagesClassNames.size() > 0) {
-
-                    List<Fragment> fragmentList = new ArrayList<>();
-
-                    // For each existent fragment, prior the orientation change, we will create a new instance of it by using reflection. This is why we stored the
-                    // fully qualified class name. Note that if something wrong happens during the class creation, we are just printing the stack. In a real application we should
-                    // account for that in a better way.
-                    for (int x = 0; x < currentPagesClassNames.size(); x++) {
-
-                        try {
-                            String className = currentPagesClassNames.get(x);
-                            String title = currentPagesTitles.get(x);
-
-                            Class cls = Class.forName(className);
-                            Object obj = cls.newInstance();
-                            if (obj instanceof GenericFragment) {
-                                ((GenericFragment) obj).setFragmentName(title);
-                            }
-                            fragmentList.add((Fragment) obj);
-
-                        } catch (ClassNotFoundException e) {
-                            e.printStackTrace();
-                        } catch (InstantiationException e) {
-                            e.printStackTrace();
-                        } catch (IllegalAccessException e) {
-                            e.printStackTrace();
-                        }
+            });
+        }
+
+        if (SHOW_METRICS_OVERLAY) {
+            AggregatingMetricsSink metricsSink = new AggregatingMetricsSink();
+            TabMetrics.setSink(metricsSink);
+            metricsOverlay = new MetricsOverlay(metricsSink);
+            metricsOverlay.attach(this);
+        }
+
+        // Record when the first frame with tabs is about to be drawn, i.e.: the time to first tab rendered.
+        viewPager.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                int tabCount = virtualTabStripBinder != null ? virtualTabStrip.getChildCount() : tabLayout.getTabCount();
+                if (tabCount > 0) {
+                    viewPager.getViewTreeObserver().removeOnPreDrawListener(this);
+                    startupTracer.mark(StartupTracer.MARK_FIRST_TAB_RENDERED);
+                    startupTracer.dump();
+                }
+                return true;
+            }
+        });
+
+        startupTracer.end();
+    }
+
+    /**
+     * The orientation change method is taken from the saved state after an orientation change (so that it never changes while fragments
+     * are retained), otherwise from EXTRA_ORIENTATION_CHANGE_METHOD, otherwise it is DEFAULT_ORIENTATION_CHANGE_METHOD.
+     *
+     * @param savedInstanceState
+     * @return
+     */
+    private OrientationChangeMethod resolveOrientationChangeMethod(Bundle savedInstanceState) {
+        String name = savedInstanceState != null
+                ? savedInstanceState.getString(ORIENTATION_CHANGE_METHOD)
+                : getIntent().getStringExtra(EXTRA_ORIENTATION_CHANGE_METHOD);
+        if (name != null) {
+            try {
+                return OrientationChangeMethod.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "resolveOrientationChangeMethod() - Unknown orientation change method: " + name);
+            }
+        }
+        return DEFAULT_ORIENTATION_CHANGE_METHOD;
+    }
+
+    public OrientationChangeMethod getOrientationChangeMethod() {
+        return orientationChangeMethod;
+    }
+
+    /**
+     * For this example we will just add two fragments on it.
+     *
+     * @return
+     */
+    private static List<TabDescriptor> newDefaultTabs() {
+        List<TabDescriptor> tabs = new ArrayList<>();
+        tabs.add(TabDescriptor.create(ChatFragment.TYPE_KEY, ChatFragment.ITEM_TEXT, 0));
+        tabs.add(TabDescriptor.create(WalkFragment.TYPE_KEY, WalkFragment.ITEM_TEXT, 0));
+        return tabs;
+    }
+
+    /**
+     * Start loading the tabs from the tab config at the given URL. Tabs are added to the tabListModel as they are parsed (see TabConfigLoader
+     * class), so this returns right away, before any tab is added.
+     *
+     * @param url
+     * @param newTabsOnly true when the tabs of a session were restored: only the tabs added to the config since they were seeded are appended,
+     *                    so tabs removed by the user do not come back. Otherwise all tabs are added and, if the config cannot be loaded at
+     *                    all, the built-in tabs are added instead.
+     * @return false if there is no config to load (url is null or invalid)
+     */
+    private boolean loadTabConfig(@Nullable final String url, final boolean newTabsOnly) {
+        if (url == null) {
+            return false;
+        }
+
+        TabConfigLoader.Source source;
+        try {
+            source = TabConfigLoader.sourceFor(url);
+        } catch (IOException e) {
+            Log.w(TAG, "loadTabConfig() - " + e.getMessage());
+            return false;
+        }
+
+        tabConfigLoader = new TabConfigLoader(source, new File(getCacheDir(), TAB_CONFIG_CACHE_DIR), TAB_CONFIG_EXECUTOR);
+        TabConfigLoader.Callback callback = new TabConfigLoader.Callback() {
+            @Override
+            public void onEntries(List<TabConfigLoader.Entry> entries) {
+                // Entries are turned into tab descriptors here, on the loader thread, and only the resulting mutation reaches the main thread.
+                List<TabDescriptor> tabs = new ArrayList<>();
+                for (TabConfigLoader.Entry entry : entries) {
+                    if (!FragmentFactory.isRegistered(entry.typeKey)) {
+                        Log.w(TAG, "loadTabConfig() - Skipping tab " + entry.title + " with unknown type: " + entry.typeKey);
+                        continue;
                     }
+                    int iconId = entry.iconName != null ? getResources().getIdentifier(entry.iconName, "drawable", getPackageName()) : 0;
+                    tabs.add(TabDescriptor.create(entry.typeKey, entry.title, iconId));
+                }
+                if (!tabs.isEmpty()) {
+                    submitOnMainThread(TabListModel.addAll(tabs));
+                }
+            }
 
-                    // Finally add all just created fragments to the adapter.
-                    viewPagerAdapter.setPages(fragmentList);
+            @Override
+            public void onFinished(int entryCount, boolean fromCache) {
+                tabConfigLoadDone = true;
+                Log.d(TAG, "loadTabConfig() - " + entryCount + " tab(s) loaded from " + (fromCache ? "the cache" : url));
+            }
+
+            @Override
+            public void onFailed(IOException e, int deliveredCount) {
+                tabConfigLoadDone = true;
+                Log.w(TAG, "loadTabConfig() - Could not load the tab config from " + url, e);
+                if (deliveredCount == 0 && !newTabsOnly) {
+                    submitOnMainThread(TabListModel.addAll(newDefaultTabs()));
                 }
             }
+        };
+        if (newTabsOnly) {
+            tabConfigLoader.loadNewEntries(callback);
+        } else {
+            tabConfigLoader.load(callback);
         }
+        return true;
+    }
 
-        // If there is at least one tab, re-create long-click listener to it
-        if (tabLayout.getChildCount() > 0) {
-            LinearLayout tabStrip = (LinearLayout) tabLayout.getChildAt(0);
+    private void submitOnMainThread(final TabListModel.Mutation mutation) {
+        mainThreadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!isDestroyed()) {
+                    tabListModel.submit(mutation);
+                }
+            }
+        });
+    }
 
-            for (int i = 0; i < tabStrip.getChildCount(); i++) {
-                // re-create the long-click listener
-                addMenuLongClickListener(i);
+    /**
+     * Only the pages within the offscreen page limit of the selected one get a priority, so only those are looked up, however many pages
+     * there are.
+     */
+    private void updateWorkPriorities() {
+        int count = viewPagerAdapter.getCount();
+        int selected = viewPager.getCurrentItem();
+        if (selected >= count) {
+            TabWorkScheduler.getDefault().updatePriorities(BaseFragment.NO_PAGE_ID, Collections.<Long>emptyList());
+            return;
+        }
+
+        int limit = viewPager.getOffscreenPageLimit();
+        List<Long> adjacentPageIds = new ArrayList<>(2 * limit);
+        for (int i = Math.max(0, selected - limit); i <= Math.min(count - 1, selected + limit); i++) {
+            if (i != selected) {
+                adjacentPageIds.add(viewPagerAdapter.getPageId(i));
             }
         }
+        TabWorkScheduler.getDefault().updatePriorities(viewPagerAdapter.getPageId(selected), adjacentPageIds);
+    }
+
+    /**
+     * The watcher lives as long as the process (fragments removed right before an orientation change are checked after it), so this method
+     * is static: neither the executor nor the reporter may hold a reference to the activity.
+     *
+     * @param applicationContext
+     */
+    private static void installFragmentLeakWatcher(final Context applicationContext) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        Executor mainExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        };
+
+        FragmentLeakWatcher.install(new FragmentLeakWatcher(LEAK_CHECK_DELAY_MS, mainExecutor, new FragmentLeakWatcher.Reporter() {
+            @Override
+            public void onLeak(String description, List<String> retentionHints, long watchedForMs) {
+                TabMetrics.count(TabMetrics.FRAGMENT_LEAKED);
+
+                StringBuilder message = new StringBuilder(description).append(" still reachable ").append(watchedForMs).append("ms after removal");
+                if (retentionHints.isEmpty()) {
+                    message.append(". Not referenced by the adapter nor by the FragmentManager.");
+                }
+                for (String hint : retentionHints) {
+                    message.append("\n  retained by: ").append(hint);
+                }
+
+                if (DUMP_HEAP_ON_LEAK) {
+                    File heapDump = new File(applicationContext.getFilesDir(), "leak-" + System.currentTimeMillis() + ".hprof");
+                    try {
+                        Debug.dumpHprofData(heapDump.getAbsolutePath());
+                        message.append("\n  heap dump: ").append(heapDump.getAbsolutePath());
+                    } catch (IOException e) {
+                        Log.e("FragmentLeakWatcher", "Could not dump the heap", e);
+                    }
+                }
+
+                Log.w("FragmentLeakWatcher", message.toString());
+            }
+        }));
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return adaptiveOrientationStrategy;
+    }
+
+    /**
+     * Return the size in bytes of the bundle saved on the last onSaveInstanceState() call, or -1 if it was not measured (see
+     * EXTRA_MEASURE_SAVED_STATE).
+     *
+     * @return
+     */
+    public int getLastSavedStateBytes() {
+        return lastSavedStateBytes;
+    }
+
+    /**
+     * Return the tracer holding the timings of the last onCreate() call.
+     *
+     * @return
+     */
+    public StartupTracer getStartupTracer() {
+        return startupTracer;
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (tabConfigLoader != null) {
+            tabConfigLoader.cancel();
+        }
+
+        tabListModel.setListener(null);
+        tabSessionStore.close();
+        backgroundExecutor.shutdown();
+
+        if (pagePrefetcher != null) {
+            pagePrefetcher.release();
+        }
+
+        if (pageViewPreInflater != null) {
+            pageViewPreInflater.release();
+        }
+
+        if (metricsOverlay != null) {
+            metricsOverlay.detach();
+            TabMetrics.setSink(null);
+        }
+
+        super.onDestroy();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        // Hot pages can always be rebuilt from their saved state, so they are the first thing to give back.
+        viewPagerAdapter.trimHotPages(PAGE_RETENTION_POLICY.getHotPageCount(level));
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+
+        viewPagerAdapter.trimHotPages(0);
     }
 
     @Override
     protected void onSaveInstanceState(Bundle savedInstanceState) {
-        if (ORIENTATION_CHANGE_METHOD == OrientationChangeMethod.RETAIN_FRAGMENT) {
+        // For both methods we store a snapshot of the current tabs: their page ids, fragment type keys (since we might use the FragmentFactory
+        // on onCreate() method), titles (if user created a new fragment dynamically its title will be something like "Generic 1", "Generic 2") and icons.
+        savedInstanceState.putParcelable(TAB_STATE_SNAPSHOT, viewPagerAdapter.getSnapshot(viewPager.getCurrentItem()));
+        savedInstanceState.putInt(GENERIC_FRAGMENT_COUNT, genericFragmentCount);
+        savedInstanceState.putString(ORIENTATION_CHANGE_METHOD, orientationChangeMethod.name());
+        savedInstanceState.putBoolean(TAB_CONFIG_LOADING, tabConfigLoader != null && !tabConfigLoadDone);
 
-            // When using RETAIN_FRAGMENT method, just store a list of all current fragments in order to be able to add them back to the adapter after
-            // the orientation change.
-            savedInstanceState.putSerializable(CURRENT_PAGES, (Serializable) viewPagerAdapter.getPages());
+        Log.d(TAG, "onSaveInstanceState() - " + viewPagerAdapter.getSavedStateCache());
 
-        } else {
+        if (orientationChangeMethod == OrientationChangeMethod.RECREATE_FRAGMENT && isChangingConfigurations()) {
 
-            // When using RECREATE_FRAGMENT method, which will recreate all the current fragments instead of retain them, we need to store the fully qualified fragment classes names
-            // since we will use reflection on onCreate() method.
-            savedInstanceState.putSerializable(CURRENT_PAGES_CLASS_NAMES, (Serializable) viewPagerAdapter.getPagesClassName());
-            // Note that if user created a new fragment dynamically its title will be something like "Generic 1", "Generic 2", so we need to also keep a list of all
-            // fragments title in order to be able to reconstruct them accordingly.
-            savedInstanceState.putSerializable(CURRENT_PAGES_TITLES, (Serializable) viewPagerAdapter.getPageTitles());
-            // Now, after save all information we need, remove all fragments from the adapter. In this approach, they will be recreated later on onCreate() method.
+            // When using RECREATE_FRAGMENT method, which will recreate all the current fragments instead of retain them, remove all fragments from the adapter
+            // after saving the snapshot. In this approach, they will be recreated later on onCreate() method. As with ADAPTIVE, this is only done when
+            // the activity is about to be recreated: the state is also saved when the app just goes to the background, and the activity (and its
+            // tabListModel) keeps running with its tabs then.
             viewPagerAdapter.removeAllFragments(getSupportFragmentManager());
+
+        } else if (orientationChangeMethod == OrientationChangeMethod.ADAPTIVE && isChangingConfigurations()) {
+
+            // When using ADAPTIVE method, retain only the fragments which are expensive to rebuild, as long as there is room for them in the heap.
+            // All the others are removed (keeping their state) and recreated later, as with RECREATE_FRAGMENT. Note this is only done when the
+            // activity is about to be recreated, since otherwise it would keep running without those fragments.
+            Runtime runtime = Runtime.getRuntime();
+            float heapUsage = (float) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+            Set<Long> retainedPageIds = adaptiveOrientationStrategy.selectRetainedPages(viewPagerAdapter.getInstantiatedPages(), heapUsage);
+            Log.d(TAG, "onSaveInstanceState() - Retaining " + retainedPageIds.size() + " page(s), heap usage: " + heapUsage);
+            viewPagerAdapter.retainPagesForOrientationChange(getSupportFragmentManager(), retainedPageIds);
         }
 
         super.onSaveInstanceState(savedInstanceState);
+
+        if (measureSavedState) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.writeBundle(savedInstanceState);
+                lastSavedStateBytes = parcel.dataSize();
+            } finally {
+                parcel.recycle();
+            }
+        }
+    }
+
+    /**
+     * Add back to the adapter all the tabs that were available before the orientation change (or, after a cold start, in the last session).
+     *
+     * Note the adapter only needs their descriptors. When using RETAIN_FRAGMENT, the fragments which were live were retained by the FragmentManager
+     * (since they are marked with setRetainInstance(true)) and the adapter gets them back by their page ids. Any other page (and all of them when
+     * using RECREATE_FRAGMENT, since all fragments were removed before the orientation change) is reconstructed by the FragmentFactory when the
+     * viewPager asks for it.
+     *
+     * @param tabs
+     * @param selectedIndex
+     */
+    private void restorePages(List<TabDescriptor> tabs, int selectedIndex) {
+        // Add all tabs to the adapter and select the tab which was selected before the orientation change. This is not done through the tabListModel
+        // since the viewPager must have its pages before it restores its own state. Note that, since fragments are created lazily, this only means
+        // creating the tab descriptors.
+        tabListModel.reset(tabs);
+        viewPagerAdapter.setPages(tabs);
+        viewPager.setCurrentItem(selectedIndex, false);
+    }
+
+    /**
+     * Used by the fragments to take the views inflated in advance. Returns null when PRE_INFLATE_PAGES is false.
+     *
+     * @return
+     */
+    @Nullable
+    public PageViewPreInflater getPageViewPreInflater() {
+        return pageViewPreInflater;
     }
 
     @Override
@@ -215,56 +845,42 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * As the name implies, this method creates a long-click listener for the given tabIndex
+     * Show the menu of the given tab.
      *
-     * @param tabIndex
+     * @param tabView
+     * @param pageId
      */
-    private void addMenuLongClickListener(final int tabIndex) {
-        if (tabLayout.getChildCount() == 0) return;
-
-        LinearLayout tabStrip = (LinearLayout) tabLayout.getChildAt(0);
-
-        View child = tabStrip.getChildAt(tabIndex);
-        // First clean up any listener that might be setup previously
-        child.setOnLongClickListener(null);
-
-        child.setOnLongClickListener(new View.OnLongClickListener() {
+    private void showTabMenu(View tabView, final long pageId) {
+        PopupMenu popupMenu = new PopupMenu(MainActivity.this, tabView);
+        popupMenu.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
             @Override
-            public boolean onLongClick(View v) {
-                PopupMenu popupMenu = new PopupMenu(MainActivity.this, v);
-                popupMenu.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
-                    @Override
-                    public boolean onMenuItemClick(MenuItem item) {
-                        switch (item.getItemId()) {
-                            case R.id.menu_remove_tab:
-                                showDeleteDialog(tabIndex);
-                                return true;
-                            default:
-                                return true;
-                        }
-                    }
-                });
-                popupMenu.getMenu().add(1, R.id.menu_remove_tab, 1, "Remove");
-                popupMenu.show();
-
-                return true;
+            public boolean onMenuItemClick(MenuItem item) {
+                switch (item.getItemId()) {
+                    case R.id.menu_remove_tab:
+                        showDeleteDialog(pageId);
+                        return true;
+                    default:
+                        return true;
+                }
             }
         });
+        popupMenu.getMenu().add(1, R.id.menu_remove_tab, 1, "Remove");
+        popupMenu.show();
     }
 
     /**
      * If user chooses to remove a tab, shows a confirm dialog. If user confirms to remove it, delegates it to the deleteTab() method.
      *
-     * @param tabIndex
+     * @param pageId
      */
-    private void showDeleteDialog(final int tabIndex) {
+    private void showDeleteDialog(final long pageId) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setMessage("Are you sure you want to delete this tab?");
         builder.setPositiveButton("Yes", new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
-                Log.d(TAG, "showDeleteDialog::setPositiveButton() - Deleting tab index: " + tabIndex + "...");
-                deleteTab(tabIndex);
+                Log.d(TAG, "showDeleteDialog::setPositiveButton() - Deleting tab page id: " + pageId + "...");
+                deleteTab(pageId);
             }
         });
 
@@ -281,66 +897,51 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * This method will add a tab dynamically. Note it will take care of create instances of the GenericFragment class as well as
+     * This method will add a tab dynamically. Note it will take care of create descriptors of GenericFragment tabs as well as
      * mount the fragment title in order to show the number of the fragment. This makes easy to confirm that fragments are being
      * retained/recreated after a screen rotate accordingly.
      *
-     * Note we are limiting in 4 new tabs. If you want more, just change MAX_NUMBER_OF_NEW_TABS attribute.
+     * There is no limit on the number of new tabs.
      *
      */
     private void addTab() {
         Log.d(TAG, "addTab()");
 
-        // Lets add some boundaries here. Not really complex, but just to avoid flood of tabs.
-        if (genericFragmentCount >= MAX_NUMBER_OF_NEW_TABS) {
-            Toast.makeText(getApplicationContext(), "Max number of fragments reached.", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
         genericFragmentCount++;
-
-        // When adding a new tab, we will use a special fragment class called GenericFragment.
-        // Right after creating an instance of it, call its mountFragmentName() method which will change its
-        // name to something like "Generic Fragment 1", "Generic Fragment 2", etc. Then, add it to the viewPagerAdapter
-        GenericFragment genericFragment = new GenericFragment();
-        genericFragment.mountFragmentName(genericFragmentCount);
-        viewPagerAdapter.addTabPage(genericFragment);
-
-        // Also re-create the long-click listener for all tabs, including the just created one.
-        // TODO: Here we could improve a little, by instead of re-create long-click listener for all tabs, just create for the new one.
-        if (tabLayout.getChildCount() > 0) {
-            LinearLayout tabStrip = (LinearLayout) tabLayout.getChildAt(0);
-
-            for (int i = 0; i < tabStrip.getChildCount(); i++) {
-                // re-create the long-click listener
-                addMenuLongClickListener(i);
-            }
-        }
-
-        Log.d(TAG, "addTab() - Tab: " + genericFragment.getFragmentName() + " was added successfully");
-        Toast.makeText(getApplicationContext(), "Tab: " + genericFragment.getFragmentName() + " was added successfully", Toast.LENGTH_SHORT).show();
+        tabSessionStore.appendTabCounter(genericFragmentCount);
+
+        // When adding a new tab, we will use a special fragment class called GenericFragment. Its descriptor
+        // has a name like "Generic 1", "Generic 2", etc. Then, add it to the tabListModel, which will add it to
+        // the viewPagerAdapter. Note the fragment itself will only be created when the viewPager needs it. The
+        // user is told the tab was added once its diff is applied (see the tabListModel listener).
+        TabDescriptor tab = GenericFragment.newTabDescriptor(genericFragmentCount);
+        pendingAddedPageIds.add(tab.getPageId());
+        tabListModel.submit(TabListModel.add(tab));
     }
 
     /**
-     * Remove a tab from the adapter and recreate all long-click listeners.
+     * Remove a tab. Note there is no need to touch the long-click listeners, since the shared one works out the tab position when the click
+     * happens.
      *
-     * @param tabIndex
+     * @param pageId
      */
-    private void deleteTab(int tabIndex) {
-        Log.d(TAG, "deleteTab() - tabIndex: " + tabIndex);
+    private void deleteTab(long pageId) {
+        Log.d(TAG, "deleteTab() - pageId: " + pageId);
 
-        // Delete a tab from the adapter based on its index
-        viewPagerAdapter.removeTabPage(tabIndex);
+        // Remove the tab by its page id, since its index might have changed after the menu was shown.
+        tabListModel.submit(TabListModel.remove(pageId));
+    }
 
-        // After delete a tab, we need to re-create long-click listener for all tabs.
-        // TODO: Here we could improve a little, by instead of re-create long-click listener for all tabs, just create for the new one.
-        if (tabLayout.getChildCount() > 0) {
-            LinearLayout tabStrip = (LinearLayout) tabLayout.getChildAt(0);
+    /**
+     * Move a tab to another position, as dropped by the user. Only the dragged tab moves: every page keeps its fragment, so nothing is
+     * rebuilt (see TabListModel.move()).
+     *
+     * @param pageId
+     * @param toPosition
+     */
+    private void moveTab(long pageId, int toPosition) {
+        Log.d(TAG, "moveTab() - pageId: " + pageId + " to position: " + toPosition);
 
-            for (int i = 0; i < tabStrip.getChildCount(); i++) {
-                // re-create the long-click listener
-                addMenuLongClickListener(i);
-            }
-        }
+        tabListModel.submit(TabListModel.move(pageId, toPosition));
     }
 }
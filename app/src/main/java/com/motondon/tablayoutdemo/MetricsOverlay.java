@@ -0,0 +1,60 @@
+package com.motondon.tablayoutdemo;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+/**
+ * A small debug panel shown on top of the activity content with the metrics collected by an AggregatingMetricsSink, refreshed twice a
+ * second. It does not take touches, so the app can be used normally while it is shown. See MainActivity.SHOW_METRICS_OVERLAY.
+ */
+public class MetricsOverlay {
+
+    private static final long REFRESH_INTERVAL_MS = 500;
+
+    private final AggregatingMetricsSink mSink;
+    private TextView mTextView;
+
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            mTextView.setText(mSink.dump());
+            mTextView.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    public MetricsOverlay(AggregatingMetricsSink sink) {
+        mSink = sink;
+    }
+
+    public void attach(Activity activity) {
+        mTextView = new TextView(activity);
+        mTextView.setTypeface(Typeface.MONOSPACE);
+        mTextView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        mTextView.setTextColor(Color.WHITE);
+        mTextView.setBackgroundColor(0xAA000000);
+        int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 4, activity.getResources().getDisplayMetrics());
+        mTextView.setPadding(padding, padding, padding, padding);
+        mTextView.setClickable(false);
+        mTextView.setFocusable(false);
+
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT,
+                Gravity.BOTTOM | Gravity.END);
+        ((FrameLayout) activity.findViewById(android.R.id.content)).addView(mTextView, params);
+
+        mTextView.post(mRefresh);
+    }
+
+    public void detach() {
+        if (mTextView != null) {
+            mTextView.removeCallbacks(mRefresh);
+            ((ViewGroup) mTextView.getParent()).removeView(mTextView);
+            mTextView = null;
+        }
+    }
+}
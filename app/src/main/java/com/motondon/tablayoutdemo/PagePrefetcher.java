@@ -0,0 +1,140 @@
+package com.motondon.tablayoutdemo;
+
+import android.support.annotation.Nullable;
+import android.support.v4.view.ViewPager;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Starts building a page as soon as we can tell the user is heading to it, instead of waiting for the viewPager to ask for it once the
+ * selection commits. It prefetches the page (see ViewPagerAdapter.prefetchPage()) and, when there is a PageViewPreInflater, starts
+ * inflating its view as well.
+ *
+ * There are two triggers:
+ *
+ *   1) Swipe start: the pages next to the current one are already instantiated, so the page the viewPager will need is the one after them in
+ *      the swipe direction (i.e.: current position +/- offscreen page limit + 1). If the user changes direction, the other one is cancelled.
+ *
+ *   2) Touch-down on a tab in the tab strip (this class is set as the OnTouchListener of each tab view by MainActivity, either in the
+ *      TabLayout or in the virtual tab strip). The touched tab is prefetched. If the touch is cancelled (e.g.: the user scrolls the tab strip
+ *      instead) so is the prefetch.
+ *
+ * Any prefetched page still unused once the viewPager goes idle is cancelled, as well as those of a tab press which did not select the tab
+ * (e.g.: a long-press) after UNUSED_PREFETCH_TIMEOUT_MS.
+ */
+public class PagePrefetcher extends ViewPager.SimpleOnPageChangeListener implements View.OnTouchListener {
+
+    private static final long UNUSED_PREFETCH_TIMEOUT_MS = 500;
+
+    private final ViewPager mViewPager;
+    private final ViewPagerAdapter mAdapter;
+    private final PageViewPreInflater mPreInflater;
+
+    private boolean mDragging = false;
+    private int mDragStartPosition;
+    private int mSwipeTarget = -1;
+
+    private final Runnable mCancelUnusedPrefetches = new Runnable() {
+        @Override
+        public void run() {
+            if (mViewPager.getScrollState() == ViewPager.SCROLL_STATE_IDLE) {
+                mAdapter.cancelPrefetches();
+            }
+        }
+    };
+
+    /**
+     * @param viewPager
+     * @param adapter
+     * @param preInflater might be null, in which case only the fragments are prefetched
+     */
+    public PagePrefetcher(ViewPager viewPager, ViewPagerAdapter adapter, @Nullable PageViewPreInflater preInflater) {
+        mViewPager = viewPager;
+        mAdapter = adapter;
+        mPreInflater = preInflater;
+    }
+
+    @Override
+    public void onPageScrollStateChanged(int state) {
+        mViewPager.removeCallbacks(mCancelUnusedPrefetches);
+
+        if (state == ViewPager.SCROLL_STATE_DRAGGING) {
+            mDragging = true;
+            mDragStartPosition = mViewPager.getCurrentItem();
+            mSwipeTarget = -1;
+        } else if (state == ViewPager.SCROLL_STATE_SETTLING) {
+            mDragging = false;
+        } else if (state == ViewPager.SCROLL_STATE_IDLE) {
+            mDragging = false;
+            mSwipeTarget = -1;
+
+            // The viewPager already instantiated the pages it needs, so whatever is left will not be used.
+            mAdapter.cancelPrefetches();
+        }
+    }
+
+    @Override
+    public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+        if (!mDragging || positionOffset == 0) {
+            return;
+        }
+
+        // While dragging towards the next page, position is the current one. Towards the previous page, it is the previous one.
+        int direction = position >= mDragStartPosition ? 1 : -1;
+        int target = mDragStartPosition + direction * (mViewPager.getOffscreenPageLimit() + 1);
+        if (target == mSwipeTarget) {
+            return;
+        }
+
+        // The user changed their mind.
+        if (mSwipeTarget >= 0) {
+            mAdapter.cancelPrefetch(mSwipeTarget);
+        }
+        mSwipeTarget = target;
+        prefetch(target);
+    }
+
+    @Override
+    public boolean onTouch(View v, MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mViewPager.removeCallbacks(mCancelUnusedPrefetches);
+                int position = VirtualTabStripBinder.getTabPosition(v);
+                prefetch(position);
+                break;
+
+            case MotionEvent.ACTION_CANCEL:
+                mAdapter.cancelPrefetches();
+                break;
+
+            case MotionEvent.ACTION_UP:
+                // If this was a click, the tab is selected and the viewPager will go idle after scrolling to it. Otherwise nothing will use
+                // the prefetched page.
+                mViewPager.postDelayed(mCancelUnusedPrefetches, UNUSED_PREFETCH_TIMEOUT_MS);
+                break;
+        }
+
+        // Never consume the event, so the tab still handles clicks and long clicks.
+        return false;
+    }
+
+    private void prefetch(int position) {
+        if (!mAdapter.prefetchPage(mViewPager.getContext(), position)) {
+            return;
+        }
+
+        // The page is about to be shown, so its work should not be throttled as offscreen work is. See TabWorkScheduler class.
+        TabWorkScheduler.getDefault().setPriority(mAdapter.getPageId(position), TabWorkScheduler.PRIORITY_ADJACENT);
+        if (mPreInflater != null) {
+            mPreInflater.preInflate(position);
+        }
+    }
+
+    /**
+     * Cancel pending work. Call it when the activity is destroyed.
+     */
+    public void release() {
+        mViewPager.removeCallbacks(mCancelUnusedPrefetches);
+        mAdapter.cancelPrefetches();
+    }
+}
@@ -0,0 +1,65 @@
+package com.motondon.tablayoutdemo;
+
+import android.content.ComponentCallbacks2;
+
+/**
+ * Decides how many pages keep their views alive. Used by the ViewPagerAdapter.
+ *
+ * Pages within the offscreen page limit of the current one are always live (this is the regular ViewPager behavior). On top of that, up
+ * to "hot page count" pages which went offscreen are kept with their views hidden instead of being removed, most recently used first.
+ * Swiping back to one of them only means showing its view again, instead of recreating the fragment from its saved state and inflating
+ * its view. All the others only keep their saved state.
+ *
+ * So, this is a trade-off between memory and swipe latency: heavy pages which take long to rebuild benefit from a bigger hot page count,
+ * while low-RAM devices should use a small one. Hot pages are also dropped when the system is running low on memory (see
+ * getHotPageCount(int)).
+ */
+public class PageRetentionPolicy {
+
+    // Same behavior as FragmentStatePagerAdapter: only the pages next to the current one are live.
+    public static final PageRetentionPolicy DEFAULT = new PageRetentionPolicy(1, 0);
+
+    private final int mOffscreenPageLimit;
+    private final int mHotPageCount;
+
+    /**
+     * @param offscreenPageLimit number of pages on each side of the current one which are kept live by the viewPager
+     * @param hotPageCount number of most recently used pages out of the offscreen limit which keep their views
+     */
+    public PageRetentionPolicy(int offscreenPageLimit, int hotPageCount) {
+        if (offscreenPageLimit < 1) {
+            throw new IllegalArgumentException("Offscreen page limit must be at least 1: " + offscreenPageLimit);
+        }
+        if (hotPageCount < 0) {
+            throw new IllegalArgumentException("Hot page count must not be negative: " + hotPageCount);
+        }
+        mOffscreenPageLimit = offscreenPageLimit;
+        mHotPageCount = hotPageCount;
+    }
+
+    public int getOffscreenPageLimit() {
+        return mOffscreenPageLimit;
+    }
+
+    public int getHotPageCount() {
+        return mHotPageCount;
+    }
+
+    /**
+     * Return how many hot pages should be kept after the system reported the given memory trim level (see ComponentCallbacks2). While
+     * the app is in foreground and memory is getting low, keep half of them. In any other case, drop all of them, since they can be
+     * rebuilt from their saved state.
+     *
+     * @param trimLevel
+     * @return
+     */
+    public int getHotPageCount(int trimLevel) {
+        if (trimLevel < ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return mHotPageCount;
+        }
+        if (trimLevel == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return mHotPageCount / 2;
+        }
+        return 0;
+    }
+}
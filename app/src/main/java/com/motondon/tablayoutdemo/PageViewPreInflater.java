@@ -0,0 +1,122 @@
+package com.motondon.tablayoutdemo;
+
+import android.support.annotation.LayoutRes;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.support.v4.view.ViewPager;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.motondon.tablayoutdemo_part_2.BuildConfig;
+
+import java.util.ArrayDeque;
+
+/**
+ * Inflates on a background thread the views of the pages the viewPager will need on the next swipe, while the user sits idle on a tab.
+ *
+ * With the default offscreen page limit, the pages next to the current one are already instantiated, so a swipe to one of them makes the
+ * viewPager instantiate the page after it. This class inflates the layouts of those pages (i.e.: current position +/- offscreen page limit
+ * + 1) in advance by using an AsyncLayoutInflater, so that BaseFragment.onCreateView() can take a ready view (see take()) instead of
+ * inflating it on the main thread in the middle of the swipe.
+ */
+public class PageViewPreInflater extends ViewPager.SimpleOnPageChangeListener {
+    private static final String TAG = PageViewPreInflater.class.getSimpleName();
+
+    // One view for the page on each side of the current one.
+    private static final int MAX_READY_VIEWS_PER_LAYOUT = 2;
+
+    private final ViewPager mViewPager;
+    private final ViewPagerAdapter mAdapter;
+    private final AsyncLayoutInflater mAsyncInflater;
+
+    private final SparseArray<ArrayDeque<View>> mReadyViews = new SparseArray<>();
+    private final SparseIntArray mPendingCount = new SparseIntArray();
+
+    private boolean mReleased = false;
+
+    public PageViewPreInflater(ViewPager viewPager, ViewPagerAdapter adapter) {
+        mViewPager = viewPager;
+        mAdapter = adapter;
+        mAsyncInflater = new AsyncLayoutInflater(viewPager.getContext());
+    }
+
+    @Override
+    public void onPageScrollStateChanged(int state) {
+        if (state == ViewPager.SCROLL_STATE_IDLE) {
+            preInflateAround(mViewPager.getCurrentItem());
+        }
+    }
+
+    /**
+     * Start inflating the views of the pages the viewPager would instantiate if the user swiped away from the given position.
+     *
+     * @param position
+     */
+    public void preInflateAround(int position) {
+        int distance = mViewPager.getOffscreenPageLimit() + 1;
+        preInflate(position - distance);
+        preInflate(position + distance);
+    }
+
+    /**
+     * Return a view inflated in advance for the given layout, or null if there is none. Note it was inflated with the viewPager as its
+     * parent, so it should only be used as a page view.
+     *
+     * @param layoutId
+     * @return
+     */
+    @Nullable
+    public View take(@LayoutRes int layoutId) {
+        ArrayDeque<View> views = mReadyViews.get(layoutId);
+        return views != null && !views.isEmpty() ? views.pop() : null;
+    }
+
+    /**
+     * Drop all the views inflated in advance. Views still being inflated will be dropped as soon as they are ready.
+     */
+    public void release() {
+        mReleased = true;
+        mReadyViews.clear();
+    }
+
+    /**
+     * Start inflating the view of the page at the given position, unless enough views of its layout are ready or being inflated already.
+     *
+     * @param position
+     */
+    public void preInflate(int position) {
+        if (mReleased || position < 0 || position >= mAdapter.getCount()) {
+            return;
+        }
+
+        final int layoutId = FragmentFactory.getLayoutId(mAdapter.getPageTypeKey(position));
+        ArrayDeque<View> views = mReadyViews.get(layoutId);
+        int available = (views != null ? views.size() : 0) + mPendingCount.get(layoutId);
+        if (layoutId == 0 || available >= MAX_READY_VIEWS_PER_LAYOUT) {
+            return;
+        }
+
+        mPendingCount.put(layoutId, mPendingCount.get(layoutId) + 1);
+        mAsyncInflater.inflate(layoutId, mViewPager, new AsyncLayoutInflater.OnInflateFinishedListener() {
+            @Override
+            public void onInflateFinished(@NonNull View view, int resid, @Nullable ViewGroup parent) {
+                mPendingCount.put(resid, mPendingCount.get(resid) - 1);
+                if (mReleased) {
+                    return;
+                }
+
+                ArrayDeque<View> views = mReadyViews.get(resid);
+                if (views == null) {
+                    views = new ArrayDeque<>();
+                    mReadyViews.put(resid, views);
+                }
+                views.push(view);
+                if (BuildConfig.DEBUG) Log.d(TAG, "onInflateFinished() - Ready views for layout " + resid + ": " + views.size());
+            }
+        });
+    }
+}
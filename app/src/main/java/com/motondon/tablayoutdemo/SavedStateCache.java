@@ -0,0 +1,342 @@
+package com.motondon.tablayoutdemo;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.v4.app.Fragment;
+import android.util.Log;
+
+import com.motondon.tablayoutdemo_part_2.BuildConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the saved state of the pages which are not instantiated, keyed by page id, within a byte budget. Used by the ViewPagerAdapter.
+ *
+ * FragmentStatePagerAdapter keeps the state of every page ever destroyed, so in long sessions with many tabs it grows without limit (and so
+ * does the Bundle saved on onSaveInstanceState()). Here, the size of each state is measured by parceling it. When the total goes over the
+ * budget, the states of the least recently used pages are compressed first (if compression is enabled) and dropped after that. A page
+ * whose state was dropped is simply recreated from scratch.
+ *
+ * Hits, misses (i.e.: a page whose state was dropped is instantiated again) and evictions are counted, so that the budget can be tuned.
+ */
+public class SavedStateCache {
+    private static final String TAG = SavedStateCache.class.getSimpleName();
+
+    // Keys used by writeToBundle()/readFromBundle()
+    private static final String STATE_PAGE_IDS = "STATE_PAGE_IDS";
+    private static final String STATE_PAGE_STATES = "STATE_PAGE_STATES";
+    private static final String STATE_COMPRESSED_PAGE_IDS = "STATE_COMPRESSED_PAGE_IDS";
+    private static final String STATE_COMPRESSED_PREFIX = "compressed:";
+
+    // Either the state itself or, once it was compressed, its parceled bytes.
+    private static class Entry {
+        Fragment.SavedState state;
+        byte[] compressed;
+        int uncompressedSize;
+        int size;
+    }
+
+    private final int mBudgetBytes;
+    private final boolean mCompress;
+
+    // Least recently used first.
+    private final LinkedHashMap<Long, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Long> mEvictedPageIds = new HashSet<>();
+    private int mSizeBytes = 0;
+
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+    private int mEvictionCount = 0;
+    private int mCompressionCount = 0;
+
+    /**
+     * @param budgetBytes maximum number of bytes taken by all the saved states
+     * @param compress whether to compress the oldest states before dropping them
+     */
+    public SavedStateCache(int budgetBytes, boolean compress) {
+        mBudgetBytes = budgetBytes;
+        mCompress = compress;
+    }
+
+    /**
+     * Keep the state of a page which is no longer instantiated.
+     *
+     * @param pageId
+     * @param state
+     */
+    public void put(long pageId, Fragment.SavedState state) {
+        remove(pageId);
+        if (state == null) {
+            return;
+        }
+
+        Entry entry = new Entry();
+        entry.state = state;
+        entry.uncompressedSize = entry.size = measure(state);
+        mEntries.put(pageId, entry);
+        mSizeBytes += entry.size;
+        TabMetrics.record(TabMetrics.PAGE_STATE_BYTES, entry.size);
+
+        trimToBudget();
+    }
+
+    /**
+     * Return and forget the state of a page, or null if there is none (either because it was never destroyed or because its state was
+     * dropped).
+     *
+     * @param pageId
+     * @return
+     */
+    public Fragment.SavedState take(long pageId) {
+        Entry entry = mEntries.remove(pageId);
+        if (entry == null) {
+            if (mEvictedPageIds.remove(pageId)) {
+                mMissCount++;
+            }
+            return null;
+        }
+
+        mHitCount++;
+        mSizeBytes -= entry.size;
+        return entry.state != null ? entry.state : decompress(entry);
+    }
+
+    /**
+     * Forget the state of a page (e.g.: when it was removed from the adapter).
+     *
+     * @param pageId
+     */
+    public void remove(long pageId) {
+        Entry entry = mEntries.remove(pageId);
+        if (entry != null) {
+            mSizeBytes -= entry.size;
+        }
+        mEvictedPageIds.remove(pageId);
+    }
+
+    public void clear() {
+        mEntries.clear();
+        mEvictedPageIds.clear();
+        mSizeBytes = 0;
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public int getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    public int getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public int getCompressionCount() {
+        return mCompressionCount;
+    }
+
+    /**
+     * Save all states into the given bundle. States which were compressed are saved as they are, so the bundle does not grow beyond the budget.
+     *
+     * @param bundle
+     */
+    public void writeToBundle(Bundle bundle) {
+        int stateCount = 0;
+        int compressedCount = 0;
+        for (Entry entry : mEntries.values()) {
+            if (entry.state != null) {
+                stateCount++;
+            } else {
+                compressedCount++;
+            }
+        }
+
+        long[] pageIds = new long[stateCount];
+        Fragment.SavedState[] states = new Fragment.SavedState[stateCount];
+        long[] compressedPageIds = new long[compressedCount];
+        int s = 0;
+        int c = 0;
+        for (Map.Entry<Long, Entry> mapEntry : mEntries.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            if (entry.state != null) {
+                pageIds[s] = mapEntry.getKey();
+                states[s++] = entry.state;
+            } else {
+                compressedPageIds[c++] = mapEntry.getKey();
+                bundle.putByteArray(STATE_COMPRESSED_PREFIX + mapEntry.getKey(), entry.compressed);
+                bundle.putInt(STATE_COMPRESSED_PREFIX + mapEntry.getKey() + ":size", entry.uncompressedSize);
+            }
+        }
+
+        bundle.putLongArray(STATE_PAGE_IDS, pageIds);
+        bundle.putParcelableArray(STATE_PAGE_STATES, states);
+        bundle.putLongArray(STATE_COMPRESSED_PAGE_IDS, compressedPageIds);
+    }
+
+    /**
+     * Restore the states saved by writeToBundle(). The bundle class loader must have been set already.
+     *
+     * @param bundle
+     */
+    public void readFromBundle(Bundle bundle) {
+        clear();
+
+        long[] pageIds = bundle.getLongArray(STATE_PAGE_IDS);
+        Parcelable[] states = bundle.getParcelableArray(STATE_PAGE_STATES);
+        if (pageIds != null && states != null) {
+            for (int i = 0; i < pageIds.length; i++) {
+                put(pageIds[i], (Fragment.SavedState) states[i]);
+            }
+        }
+
+        long[] compressedPageIds = bundle.getLongArray(STATE_COMPRESSED_PAGE_IDS);
+        if (compressedPageIds != null) {
+            for (long pageId : compressedPageIds) {
+                byte[] compressed = bundle.getByteArray(STATE_COMPRESSED_PREFIX + pageId);
+                if (compressed != null) {
+                    Entry entry = new Entry();
+                    entry.compressed = compressed;
+                    entry.uncompressedSize = bundle.getInt(STATE_COMPRESSED_PREFIX + pageId + ":size");
+                    entry.size = compressed.length;
+                    mEntries.put(pageId, entry);
+                    mSizeBytes += entry.size;
+                }
+            }
+            trimToBudget();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SavedStateCache{pages=" + mEntries.size() + ", bytes=" + mSizeBytes + "/" + mBudgetBytes + ", hits=" + mHitCount
+                + ", misses=" + mMissCount + ", evictions=" + mEvictionCount + ", compressions=" + mCompressionCount + "}";
+    }
+
+    private void trimToBudget() {
+        if (mSizeBytes <= mBudgetBytes) {
+            return;
+        }
+
+        // First compress the oldest states. The most recently used one is left alone, since it is the most likely to be needed soon.
+        if (mCompress) {
+            Iterator<Entry> iterator = mEntries.values().iterator();
+            for (int i = 0; i < mEntries.size() - 1 && mSizeBytes > mBudgetBytes; i++) {
+                Entry entry = iterator.next();
+                if (entry.state != null) {
+                    compress(entry);
+                }
+            }
+        }
+
+        // Then drop them, oldest first.
+        Iterator<Map.Entry<Long, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSizeBytes > mBudgetBytes && iterator.hasNext()) {
+            Map.Entry<Long, Entry> mapEntry = iterator.next();
+            iterator.remove();
+            mSizeBytes -= mapEntry.getValue().size;
+            mEvictedPageIds.add(mapEntry.getKey());
+            mEvictionCount++;
+        }
+
+        if (BuildConfig.DEBUG) Log.d(TAG, "trimToBudget() - " + this);
+    }
+
+    private void compress(Entry entry) {
+        byte[] bytes = marshall(entry.state);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 16);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            out.write(buffer, 0, count);
+        }
+        deflater.end();
+        byte[] compressed = out.toByteArray();
+
+        // Some states (e.g.: tiny ones) do not get any smaller, so do not bother.
+        if (compressed.length >= entry.size) {
+            return;
+        }
+
+        mSizeBytes -= entry.size - compressed.length;
+        entry.uncompressedSize = bytes.length;
+        entry.compressed = compressed;
+        entry.size = compressed.length;
+        entry.state = null;
+        mCompressionCount++;
+    }
+
+    private static Fragment.SavedState decompress(Entry entry) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(entry.compressed);
+        byte[] bytes = new byte[entry.uncompressedSize];
+        try {
+            int offset = 0;
+            while (offset < bytes.length && !inflater.finished()) {
+                offset += inflater.inflate(bytes, offset, bytes.length - offset);
+            }
+        } catch (DataFormatException e) {
+            Log.w(TAG, "decompress() - Dropping corrupted state", e);
+            return null;
+        } finally {
+            inflater.end();
+        }
+        return unmarshall(bytes);
+    }
+
+    private static int measure(Fragment.SavedState state) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(state, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static byte[] marshall(Fragment.SavedState state) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(state, 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static Fragment.SavedState unmarshall(byte[] bytes) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return parcel.readParcelable(Fragment.SavedState.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
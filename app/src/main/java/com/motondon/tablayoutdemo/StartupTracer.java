@@ -0,0 +1,130 @@
+package com.motondon.tablayoutdemo;
+
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records named sections of the activity startup. Each section is both emitted as an android.os.Trace section (so it shows up in systrace
+ * and in the Android Studio profiler) and timed in-app, so that timings can also be checked from logcat (tag "StartupTracer") or from tests
+ * (see StartupBenchmark).
+ *
+ * Sections can be nested, and must be ended in the reverse order they were begun (as Trace requires). Marks are points in time, such as the
+ * first frame with tabs being drawn. All times are relative to the moment the tracer was created.
+ */
+public class StartupTracer {
+    private static final String TAG = StartupTracer.class.getSimpleName();
+
+    // Name of the mark recorded when the first tab is about to be drawn.
+    public static final String MARK_FIRST_TAB_RENDERED = "firstTabRendered";
+
+    public static class Section {
+        private final String mName;
+        private final int mDepth;
+        private final long mStartNanos;
+        private long mDurationNanos = -1;
+
+        Section(String name, int depth, long startNanos) {
+            mName = name;
+            mDepth = depth;
+            mStartNanos = startNanos;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getStartNanos() {
+            return mStartNanos;
+        }
+
+        /**
+         * Return how long this section took, 0 for marks, or -1 if it was not ended yet.
+         *
+         * @return
+         */
+        public long getDurationNanos() {
+            return mDurationNanos;
+        }
+    }
+
+    private final long mOriginNanos = System.nanoTime();
+    private final List<Section> mSections = new ArrayList<>();
+    private final ArrayDeque<Section> mOpenSections = new ArrayDeque<>();
+
+    /**
+     * Return the System.nanoTime() value all section times are relative to.
+     *
+     * @return
+     */
+    public long getOriginNanos() {
+        return mOriginNanos;
+    }
+
+    public void begin(String name) {
+        Trace.beginSection(name);
+        Section section = new Section(name, mOpenSections.size(), System.nanoTime() - mOriginNanos);
+        mSections.add(section);
+        mOpenSections.push(section);
+    }
+
+    public void end() {
+        if (mOpenSections.isEmpty()) {
+            throw new IllegalStateException("end() called without a matching begin()");
+        }
+        Section section = mOpenSections.pop();
+        section.mDurationNanos = System.nanoTime() - mOriginNanos - section.mStartNanos;
+        Trace.endSection();
+    }
+
+    public void mark(String name) {
+        Section section = new Section(name, mOpenSections.size(), System.nanoTime() - mOriginNanos);
+        section.mDurationNanos = 0;
+        mSections.add(section);
+    }
+
+    /**
+     * Return the first section or mark with the given name, or null if there is none.
+     *
+     * @param name
+     * @return
+     */
+    public Section getSection(String name) {
+        for (Section section : mSections) {
+            if (section.mName.equals(name)) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return all the sections and marks, in the order they were begun.
+     *
+     * @return
+     */
+    public List<Section> getSections() {
+        return Collections.unmodifiableList(mSections);
+    }
+
+    /**
+     * Print all sections to logcat, indented by their nesting depth.
+     */
+    public void dump() {
+        for (Section section : mSections) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < section.mDepth; i++) {
+                line.append("  ");
+            }
+            line.append(section.mName).append(" @").append(section.mStartNanos / 1000000).append("ms");
+            if (section.mDurationNanos > 0) {
+                line.append(" took ").append(section.mDurationNanos / 1000).append("us");
+            }
+            Log.i(TAG, line.toString());
+        }
+    }
+}
@@ -0,0 +1,690 @@
+package com.motondon.tablayoutdemo;
+
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the initial tabs from a JSON config, e.g.:
+ *
+ *     {
+ *         "tabs": [
+ *             { "type": "chat", "title": "Chat" },
+ *             { "type": "generic", "title": "News", "icon": "ic_filter_1_white_24dp" }
+ *         ]
+ *     }
+ *
+ * where "type" is a FragmentFactory type key and "icon" (optional) a drawable name. Unknown names are ignored, so that new fields can be
+ * added to the config without breaking older app versions.
+ *
+ * The config comes from a Source: an HTTP(S) URL (see HttpSource) or a local file (see FileSource), which is what tests and local builds use
+ * instead of a server. It is parsed as a stream (with a JsonReader), so entries are handed to the Callback as soon as they are read: the
+ * first tab can be shown before the rest of the config arrives. Entries are delivered in chunks (the first one alone, then at most one chunk
+ * per FLUSH_INTERVAL_NANOS), so that a large config does not turn into one adapter change per tab.
+ *
+ * Every config read from the source is also written to a disk cache, together with its ETag. When there is a cached config, load() uses it
+ * right away (no network round trip before the first tab) and then revalidates it with the source (If-None-Match). A newer config replaces
+ * the cached one and is used by the next load, i.e.: the cache is served stale while it is revalidated. A config which cannot be parsed to
+ * the end never replaces the cached one.
+ *
+ * The config seeds the tabs of the first launch (load()). On later launches, the tabs are those of the user session, which must not get
+ * back the tabs the user removed, so loadNewEntries() only delivers the entries which were never delivered before (matched by type and
+ * title): entries added to the config since are appended to the session, while those removed from it are left to the user. The keys of the
+ * delivered entries are kept next to the cache, also when a load is cancelled: loadNewEntries() then delivers the entries it did not get to.
+ * When they are missing (e.g.: the cache was cleared), loadNewEntries() delivers nothing and only records the current entries, which then
+ * become the base for the next config.
+ *
+ * Everything is done on the given executor, never on the caller thread. The callback is called on that executor too.
+ */
+public class TabConfigLoader {
+
+    private static final int CACHE_FORMAT_VERSION = 2;
+
+    // After the first entry, entries are delivered at most once per frame.
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    /**
+     * A tab as described by the config.
+     */
+    public static final class Entry {
+        public final String typeKey;
+        public final String title;
+        @Nullable public final String iconName;
+
+        public Entry(String typeKey, String title, @Nullable String iconName) {
+            this.typeKey = typeKey;
+            this.title = title;
+            this.iconName = iconName;
+        }
+
+        /**
+         * Return what identifies this entry from one version of the config to the next. See loadNewEntries().
+         *
+         * @return
+         */
+        public String getKey() {
+            return typeKey + "/" + title;
+        }
+    }
+
+    public interface Callback {
+        /**
+         * Some more entries were parsed, in the order they appear in the config.
+         *
+         * @param entries
+         */
+        void onEntries(List<Entry> entries);
+
+        /**
+         * The whole config was read.
+         *
+         * @param entryCount number of entries delivered
+         * @param fromCache true if the config came from the disk cache (the source is then checked for a newer one, for the next load)
+         */
+        void onFinished(int entryCount, boolean fromCache);
+
+        /**
+         * The config could not be read (nor was there a cached one).
+         *
+         * @param e
+         * @param deliveredCount number of entries delivered before the error, which might be zero
+         */
+        void onFailed(IOException e, int deliveredCount);
+    }
+
+    /**
+     * Where the config comes from.
+     */
+    public interface Source {
+        /**
+         * Open the config. If it has not changed since the one with the given ETag, return null.
+         *
+         * @param etag ETag of the cached config, or null if there is none (or it had no ETag): the config must then be returned
+         * @return
+         * @throws IOException
+         */
+        @Nullable
+        Response open(@Nullable String etag) throws IOException;
+    }
+
+    public static final class Response {
+        final InputStream body;
+        @Nullable final String etag;
+
+        public Response(InputStream body, @Nullable String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+    }
+
+    /**
+     * Fetch the config from an HTTP(S) URL, using a conditional request when there is a cached config.
+     */
+    public static class HttpSource implements Source {
+        private static final int TIMEOUT_MS = 10000;
+
+        private final URL mUrl;
+
+        public HttpSource(URL url) {
+            mUrl = url;
+        }
+
+        @Override
+        public Response open(String etag) throws IOException {
+            final HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                connection.disconnect();
+                return null;
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                throw new IOException("Unexpected response from " + mUrl + ": " + responseCode);
+            }
+
+            InputStream body = new FilterInputStream(connection.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        connection.disconnect();
+                    }
+                }
+            };
+            return new Response(body, connection.getHeaderField("ETag"));
+        }
+    }
+
+    /**
+     * Read the config from a local file. Its ETag is made of its modification time and length.
+     */
+    public static class FileSource implements Source {
+        private final File mFile;
+
+        public FileSource(File file) {
+            mFile = file;
+        }
+
+        @Override
+        public Response open(String etag) throws IOException {
+            String fileEtag = "\"" + mFile.lastModified() + "-" + mFile.length() + "\"";
+            if (fileEtag.equals(etag)) {
+                return null;
+            }
+            return new Response(new FileInputStream(mFile), fileEtag);
+        }
+    }
+
+    /**
+     * Return the source for the given URL: a FileSource for file: URLs, an HttpSource otherwise.
+     *
+     * @param url
+     * @return
+     * @throws IOException if the URL is malformed
+     */
+    public static Source sourceFor(String url) throws IOException {
+        try {
+            URI uri = new URI(url);
+            if ("file".equals(uri.getScheme())) {
+                return new FileSource(new File(uri));
+            }
+            return new HttpSource(uri.toURL());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Invalid tab config URL: " + url, e);
+        }
+    }
+
+    private final Source mSource;
+    private final File mCacheFile;
+    private final File mCacheEtagFile;
+    private final File mDeliveredKeysFile;
+    private final Executor mExecutor;
+
+    private volatile boolean mCancelled = false;
+
+    /**
+     * @param source
+     * @param cacheDir where the cached config is kept
+     * @param executor where the config is read and parsed
+     */
+    public TabConfigLoader(Source source, File cacheDir, Executor executor) {
+        mSource = source;
+        mCacheFile = new File(cacheDir, "tab_config.json");
+        mCacheEtagFile = new File(cacheDir, "tab_config.etag");
+        mDeliveredKeysFile = new File(cacheDir, "tab_config.delivered");
+        mExecutor = executor;
+    }
+
+    /**
+     * Load the config and deliver all of its entries (see class comments). Call it, or loadNewEntries(), only once.
+     *
+     * @param callback
+     */
+    public void load(Callback callback) {
+        start(callback, false);
+    }
+
+    /**
+     * Load the config and only deliver the entries which were not delivered by a previous load (see class comments). Call it, or load(), only
+     * once.
+     *
+     * @param callback
+     */
+    public void loadNewEntries(Callback callback) {
+        start(callback, true);
+    }
+
+    private void start(final Callback callback, final boolean newEntriesOnly) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Set<String> deliveredKeys = newEntriesOnly ? readDeliveredKeys() : null;
+                EntryFilter filter = new EntryFilter(newEntriesOnly, deliveredKeys);
+                loadInBackground(callback, filter);
+
+                // Even when the load was cancelled (e.g.: on an orientation change), so that the next loadNewEntries() delivers the rest. Only a
+                // base which was not read to the end is not worth keeping.
+                if (!mCancelled || !filter.isBaseOnly()) {
+                    writeDeliveredKeys(filter.getKeys());
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop loading. The callback is not called anymore, although a call in progress might still finish. The entries delivered so far are
+     * recorded, so a later loadNewEntries() delivers the others.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    private void loadInBackground(Callback callback, EntryFilter filter) {
+        CachedConfig cached = readCachedConfig();
+        boolean servedFromCache = false;
+
+        if (cached != null) {
+            EntryDispatcher dispatcher = new EntryDispatcher(callback, filter);
+            try {
+                InputStream in = new FileInputStream(mCacheFile);
+                try {
+                    parse(in, dispatcher);
+                } finally {
+                    in.close();
+                }
+                dispatcher.flush();
+                if (mCancelled) {
+                    return;
+                }
+                callback.onFinished(dispatcher.getDeliveredCount(), true);
+                servedFromCache = true;
+
+            } catch (IOException e) {
+                if (mCancelled) {
+                    return;
+                }
+                // A broken cache is as good as none. If some of its entries were delivered already, do not deliver them twice.
+                clearCache();
+                cached = null;
+                if (dispatcher.getDeliveredCount() > 0) {
+                    callback.onFailed(e, dispatcher.getDeliveredCount());
+                    return;
+                }
+            }
+        }
+
+        // Either fetch the config or check whether the cached one is still current. When the cache was served, the new config is only parsed
+        // (to validate it) and cached, for the next load. A cached config without an ETag cannot be checked, so it is fetched again.
+        EntryDispatcher dispatcher = servedFromCache ? new EntryDispatcher(null, null) : new EntryDispatcher(callback, filter);
+        File tmpFile = new File(mCacheFile.getPath() + ".tmp");
+        try {
+            Response response = mSource.open(cached != null ? cached.etag : null);
+            if (response == null) {
+                return;
+            }
+            if (mCancelled) {
+                response.body.close();
+                return;
+            }
+
+            String etag = response.etag;
+            mCacheFile.getParentFile().mkdirs();
+            OutputStream cacheOut = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            try {
+                InputStream in = new TeeInputStream(response.body, cacheOut);
+                try {
+                    parse(in, dispatcher);
+
+                    // Anything after the JSON value (e.g.: white space) is part of the response too.
+                    byte[] buffer = new byte[1024];
+                    while (in.read(buffer) >= 0) {
+                        // Nothing to do here. TeeInputStream writes it to the cache.
+                    }
+                } finally {
+                    in.close();
+                }
+            } finally {
+                cacheOut.close();
+            }
+            dispatcher.flush();
+            if (mCancelled) {
+                return;
+            }
+
+            commitCache(tmpFile, etag);
+            if (!servedFromCache) {
+                callback.onFinished(dispatcher.getDeliveredCount(), false);
+            }
+
+        } catch (IOException e) {
+            tmpFile.delete();
+            if (!servedFromCache && !mCancelled) {
+                callback.onFailed(e, dispatcher.getDeliveredCount());
+            }
+        }
+    }
+
+    private void parse(InputStream in, EntryDispatcher dispatcher) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("tabs".equals(reader.nextName())) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    checkNotCancelled();
+                    Entry entry = parseEntry(reader);
+                    if (entry != null) {
+                        dispatcher.add(entry);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Return the entry at the current position of the reader, or null if it has no type or title.
+     */
+    @Nullable
+    private static Entry parseEntry(JsonReader reader) throws IOException {
+        String typeKey = null;
+        String title = null;
+        String iconName = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if ("type".equals(name)) {
+                typeKey = reader.nextString();
+            } else if ("title".equals(name)) {
+                title = reader.nextString();
+            } else if ("icon".equals(name)) {
+                iconName = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return typeKey != null && title != null ? new Entry(typeKey, title, iconName) : null;
+    }
+
+    private void checkNotCancelled() throws IOException {
+        if (mCancelled) {
+            throw new IOException("Cancelled");
+        }
+    }
+
+    /**
+     * A config in the disk cache.
+     */
+    private static final class CachedConfig {
+        // Null if the config came without an ETag, which is not the same as an empty one.
+        @Nullable final String etag;
+
+        CachedConfig(@Nullable String etag) {
+            this.etag = etag;
+        }
+    }
+
+    /**
+     * Return the cached config, or null if there is none.
+     */
+    @Nullable
+    private CachedConfig readCachedConfig() {
+        if (!mCacheFile.exists() || !mCacheEtagFile.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(mCacheEtagFile));
+            try {
+                if (in.readInt() != CACHE_FORMAT_VERSION) {
+                    return null;
+                }
+                return new CachedConfig(in.readBoolean() ? in.readUTF() : null);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replace the cached config with the one in tmpFile. The ETag file is removed first and written last, so that a crash in between leaves
+     * no cache rather than a config with the wrong ETag.
+     */
+    private void commitCache(File tmpFile, @Nullable String etag) throws IOException {
+        mCacheEtagFile.delete();
+        if (!tmpFile.renameTo(mCacheFile)) {
+            throw new IOException("Could not rename " + tmpFile + " to " + mCacheFile);
+        }
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mCacheEtagFile));
+        try {
+            out.writeInt(CACHE_FORMAT_VERSION);
+            out.writeBoolean(etag != null);
+            if (etag != null) {
+                out.writeUTF(etag);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Return the keys of the entries delivered so far (see Entry.getKey()), or null if they are unknown.
+     */
+    @Nullable
+    private Set<String> readDeliveredKeys() {
+        if (!mDeliveredKeysFile.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(mDeliveredKeysFile));
+            try {
+                if (in.readInt() != CACHE_FORMAT_VERSION) {
+                    return null;
+                }
+                Set<String> keys = new HashSet<>();
+                for (int count = in.readInt(); count > 0; count--) {
+                    keys.add(in.readUTF());
+                }
+                return keys;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeDeliveredKeys(Set<String> keys) {
+        File tmpFile = new File(mDeliveredKeysFile.getPath() + ".tmp");
+        try {
+            mDeliveredKeysFile.getParentFile().mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(CACHE_FORMAT_VERSION);
+                out.writeInt(keys.size());
+                for (String key : keys) {
+                    out.writeUTF(key);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(mDeliveredKeysFile)) {
+                throw new IOException("Could not rename " + tmpFile + " to " + mDeliveredKeysFile);
+            }
+        } catch (IOException e) {
+            // The next loadNewEntries() will only take the config as its base.
+            tmpFile.delete();
+            mDeliveredKeysFile.delete();
+        }
+    }
+
+    private void clearCache() {
+        mCacheEtagFile.delete();
+        mCacheFile.delete();
+    }
+
+    /**
+     * Decides which entries are delivered, and keeps the keys of the delivered ones (see loadNewEntries()).
+     */
+    private static class EntryFilter {
+        private final boolean mNewEntriesOnly;
+        private final boolean mBaseOnly;
+
+        // Keys recorded as delivered (see getKeys()), and keys of the entries accepted by this load, which might not be delivered yet.
+        private final Set<String> mKeys = new HashSet<>();
+        private final Set<String> mAcceptedKeys = new HashSet<>();
+
+        /**
+         * @param newEntriesOnly false if all entries must be delivered
+         * @param previousKeys keys of the entries delivered by previous loads, or null if they are unknown
+         */
+        EntryFilter(boolean newEntriesOnly, @Nullable Set<String> previousKeys) {
+            mNewEntriesOnly = newEntriesOnly;
+            mBaseOnly = newEntriesOnly && previousKeys == null;
+            if (previousKeys != null) {
+                mKeys.addAll(previousKeys);
+            }
+        }
+
+        /**
+         * Return true if the entry must be delivered. Entries which only become the base are recorded right away, the others once they are
+         * delivered (see onDelivered()).
+         */
+        boolean accept(Entry entry) {
+            String key = entry.getKey();
+            if (mBaseOnly) {
+                mKeys.add(key);
+                return false;
+            }
+            if (!mNewEntriesOnly) {
+                return true;
+            }
+            return !mKeys.contains(key) && mAcceptedKeys.add(key);
+        }
+
+        void onDelivered(List<Entry> entries) {
+            for (Entry entry : entries) {
+                mKeys.add(entry.getKey());
+            }
+        }
+
+        boolean isBaseOnly() {
+            return mBaseOnly;
+        }
+
+        Set<String> getKeys() {
+            return mKeys;
+        }
+    }
+
+    /**
+     * Hands the parsed entries to the callback in chunks: the first entry alone (so that the first tab is shown as soon as possible), then
+     * whatever was parsed during the last FLUSH_INTERVAL_NANOS. Entries not accepted by the filter are skipped. When the callback is null,
+     * entries are only counted.
+     */
+    private class EntryDispatcher {
+        private final Callback mCallback;
+        private final EntryFilter mFilter;
+        private List<Entry> mPending = new ArrayList<>();
+        private int mDeliveredCount = 0;
+        private long mLastFlushNanos = 0;
+
+        EntryDispatcher(@Nullable Callback callback, @Nullable EntryFilter filter) {
+            mCallback = callback;
+            mFilter = filter;
+        }
+
+        void add(Entry entry) {
+            if (mFilter != null && !mFilter.accept(entry)) {
+                return;
+            }
+            mPending.add(entry);
+            if (mDeliveredCount == 0 || System.nanoTime() - mLastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (mPending.isEmpty() || mCancelled) {
+                return;
+            }
+            List<Entry> entries = Collections.unmodifiableList(mPending);
+            mDeliveredCount += entries.size();
+            mPending = new ArrayList<>();
+            mLastFlushNanos = System.nanoTime();
+            if (mFilter != null) {
+                mFilter.onDelivered(entries);
+            }
+            if (mCallback != null) {
+                mCallback.onEntries(entries);
+            }
+        }
+
+        int getDeliveredCount() {
+            return mDeliveredCount;
+        }
+    }
+
+    /**
+     * Copies everything read from the stream to an output stream (the cache), so that the config is parsed and cached in a single pass.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+        private final OutputStream mOut;
+
+        TeeInputStream(InputStream in, OutputStream out) {
+            super(in);
+            mOut = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                mOut.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mOut.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must reach the cache too.
+            byte[] buffer = new byte[(int) Math.min(n, 1024)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.motondon.tablayoutdemo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight and immutable description of a tab: its page id, the FragmentFactory type key of its fragment, its title and icon.
+ *
+ * The ViewPagerAdapter holds one of these for every tab and only creates the fragment when the viewPager asks for the page, so tabs the
+ * user never opens do not cost a fragment instance.
+ */
+public final class TabDescriptor {
+
+    // Page ids are unique for the whole process, so that pages restored after an orientation change never clash with new ones.
+    private static final AtomicLong sNextPageId = new AtomicLong(0);
+
+    private final long mPageId;
+    private final String mTypeKey;
+    private final String mTitle;
+    private final int mIconId;
+
+    /**
+     * Create a descriptor for a new tab, with a new page id.
+     *
+     * @param typeKey
+     * @param title
+     * @param iconId
+     * @return
+     */
+    public static TabDescriptor create(String typeKey, String title, int iconId) {
+        return new TabDescriptor(sNextPageId.getAndIncrement(), typeKey, title, iconId);
+    }
+
+    /**
+     * Used when restoring a tab which already has a page id.
+     *
+     * @param pageId
+     * @param typeKey
+     * @param title
+     * @param iconId
+     */
+    public TabDescriptor(long pageId, String typeKey, String title, int iconId) {
+        mPageId = pageId;
+        mTypeKey = typeKey;
+        mTitle = title;
+        mIconId = iconId;
+
+        reservePageId(pageId);
+    }
+
+    public long getPageId() {
+        return mPageId;
+    }
+
+    public String getTypeKey() {
+        return mTypeKey;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public int getIconId() {
+        return mIconId;
+    }
+
+    /**
+     * Make sure new page ids will be greater than the given one.
+     *
+     * @param pageId
+     */
+    private static void reservePageId(long pageId) {
+        long next = sNextPageId.get();
+        while (next <= pageId && !sNextPageId.compareAndSet(next, pageId + 1)) {
+            next = sNextPageId.get();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TabDescriptor)) {
+            return false;
+        }
+
+        TabDescriptor other = (TabDescriptor) o;
+        return mPageId == other.mPageId
+                && mIconId == other.mIconId
+                && mTypeKey.equals(other.mTypeKey)
+                && (mTitle != null ? mTitle.equals(other.mTitle) : other.mTitle == null);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mPageId ^ (mPageId >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "TabDescriptor{" + mPageId + ", " + mTypeKey + ", " + mTitle + "}";
+    }
+}
@@ -0,0 +1,168 @@
+package com.motondon.tablayoutdemo;
+
+import android.content.ClipData;
+import android.support.design.widget.TabLayout;
+import android.support.v4.view.ViewCompat;
+import android.view.DragEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Lets the user reorder tabs by dragging them along the tab strip. A drag is started by startDrag() (MainActivity calls it on a tab
+ * long-click), and the tab strip receives the drag events: while dragging, the tab under the finger is highlighted and the strip scrolls
+ * when the finger gets close to one of its edges. On drop, the Callback is told where the tab should go.
+ *
+ * Note this class does not move anything itself: the callback submits a TabListModel.move() mutation, whose diff is a single MOVE whether the
+ * tab is dragged backward or forward (the tabs it passes are left in place, see TabListDiff.calculate()). Since pages are tracked by their
+ * page ids, the ViewPagerAdapter keeps the fragment (and its view or saved state) of every page, and the TabStripBinder only moves the
+ * dragged tab view.
+ */
+public class TabDragController implements View.OnDragListener {
+
+    public interface Callback {
+        /**
+         * The tab with the given page id was dropped over the tab at toPosition.
+         *
+         * @param pageId
+         * @param toPosition
+         */
+        void onTabMoved(long pageId, int toPosition);
+
+        /**
+         * The tab was dropped where it was, i.e.: the user only long-pressed it.
+         *
+         * @param tabView
+         * @param pageId
+         */
+        void onTabDroppedInPlace(View tabView, long pageId);
+    }
+
+    private static final float DRAGGED_TAB_ALPHA = 0.3f;
+    private static final float TARGET_TAB_ALPHA = 0.6f;
+
+    // The strip scrolls when the finger is this close to one of its edges (as a fraction of the TabLayout width).
+    private static final float AUTO_SCROLL_EDGE = 0.15f;
+    private static final float AUTO_SCROLL_STEP = 0.05f;
+
+    // Kept as the drag local state, so that we can tell our drags from any other.
+    private static final class DragState {
+        final View tabView;
+        final long pageId;
+        final int fromPosition;
+
+        DragState(View tabView, long pageId, int fromPosition) {
+            this.tabView = tabView;
+            this.pageId = pageId;
+            this.fromPosition = fromPosition;
+        }
+    }
+
+    private final TabLayout mTabLayout;
+    private final ViewGroup mTabStrip;
+    private final Callback mCallback;
+
+    private View mTargetTabView;
+
+    public TabDragController(TabLayout tabLayout, Callback callback) {
+        mTabLayout = tabLayout;
+        mTabStrip = (ViewGroup) tabLayout.getChildAt(0);
+        mCallback = callback;
+
+        mTabStrip.setOnDragListener(this);
+    }
+
+    /**
+     * Start dragging the given tab view, which must be a child of the tab strip.
+     *
+     * @param tabView
+     * @param pageId
+     * @return false if the drag could not be started
+     */
+    public boolean startDrag(View tabView, long pageId) {
+        int position = mTabStrip.indexOfChild(tabView);
+        if (position < 0) {
+            return false;
+        }
+
+        ClipData data = ClipData.newPlainText("pageId", String.valueOf(pageId));
+        return ViewCompat.startDragAndDrop(tabView, data, new View.DragShadowBuilder(tabView), new DragState(tabView, pageId, position), 0);
+    }
+
+    @Override
+    public boolean onDrag(View v, DragEvent event) {
+        if (!(event.getLocalState() instanceof DragState)) {
+            return false;
+        }
+        DragState state = (DragState) event.getLocalState();
+
+        switch (event.getAction()) {
+            case DragEvent.ACTION_DRAG_STARTED:
+                state.tabView.setAlpha(DRAGGED_TAB_ALPHA);
+                return true;
+
+            case DragEvent.ACTION_DRAG_LOCATION:
+                highlightTarget(state, positionAt(event.getX()));
+                autoScroll(event.getX());
+                return true;
+
+            case DragEvent.ACTION_DROP:
+                int toPosition = positionAt(event.getX());
+                if (toPosition < 0 || toPosition == state.fromPosition) {
+                    mCallback.onTabDroppedInPlace(state.tabView, state.pageId);
+                } else {
+                    mCallback.onTabMoved(state.pageId, toPosition);
+                }
+                return true;
+
+            case DragEvent.ACTION_DRAG_ENDED:
+                state.tabView.setAlpha(1f);
+                highlightTarget(state, -1);
+                return true;
+
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Return the position of the tab under the given x coordinate (relative to the tab strip), the first or last one when it is out of the
+     * strip, or -1 if there are no tabs.
+     */
+    private int positionAt(float x) {
+        int count = mTabStrip.getChildCount();
+        for (int i = 0; i < count; i++) {
+            if (x < mTabStrip.getChildAt(i).getRight()) {
+                return i;
+            }
+        }
+        return count - 1;
+    }
+
+    private void highlightTarget(DragState state, int position) {
+        View target = position >= 0 ? mTabStrip.getChildAt(position) : null;
+        if (target == state.tabView) {
+            target = null;
+        }
+        if (target == mTargetTabView) {
+            return;
+        }
+
+        if (mTargetTabView != null) {
+            mTargetTabView.setAlpha(1f);
+        }
+        mTargetTabView = target;
+        if (mTargetTabView != null) {
+            mTargetTabView.setAlpha(TARGET_TAB_ALPHA);
+        }
+    }
+
+    private void autoScroll(float x) {
+        int width = mTabLayout.getWidth();
+        float visibleX = x - mTabLayout.getScrollX();
+        if (visibleX < width * AUTO_SCROLL_EDGE) {
+            mTabLayout.scrollBy((int) (-width * AUTO_SCROLL_STEP), 0);
+        } else if (visibleX > width * (1 - AUTO_SCROLL_EDGE)) {
+            mTabLayout.scrollBy((int) (width * AUTO_SCROLL_STEP), 0);
+        }
+    }
+}
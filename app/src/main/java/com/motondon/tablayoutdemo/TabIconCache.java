@@ -0,0 +1,48 @@
+package com.motondon.tablayoutdemo;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.DrawableRes;
+import android.support.v4.content.ContextCompat;
+import android.util.SparseArray;
+
+/**
+ * Cache of the tab icons. Each icon is decoded only once, and every tab showing it gets a new drawable sharing the same constant state
+ * (i.e.: the same bitmap), so tabs do not affect each other's bounds or state.
+ */
+public class TabIconCache {
+
+    private final Context mContext;
+    private final SparseArray<Drawable.ConstantState> mCache = new SparseArray<>();
+
+    public TabIconCache(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Return a drawable for the given icon id, or null if the id is 0 (i.e.: the tab has no icon).
+     *
+     * @param iconId
+     * @return
+     */
+    public Drawable get(@DrawableRes int iconId) {
+        if (iconId == 0) {
+            return null;
+        }
+
+        Drawable.ConstantState state = mCache.get(iconId);
+        if (state != null) {
+            return state.newDrawable(mContext.getResources());
+        }
+
+        Drawable drawable = ContextCompat.getDrawable(mContext, iconId);
+        if (drawable != null && drawable.getConstantState() != null) {
+            mCache.put(iconId, drawable.getConstantState());
+        }
+        return drawable;
+    }
+
+    public void clear() {
+        mCache.clear();
+    }
+}
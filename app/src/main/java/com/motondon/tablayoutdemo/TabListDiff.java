@@ -0,0 +1,212 @@
+package com.motondon.tablayoutdemo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The operations (removes, moves, inserts and changes) needed to turn one list of tabs into another, matching tabs by their page ids.
+ *
+ * Operations must be applied in order, and each position refers to the list as it is after applying all the previous operations. Removes
+ * come first (from the last position to the first one), followed by moves, and then by inserts and changes in ascending target position.
+ *
+ * This class does not depend on Android, so diffs can be calculated on a background thread (see TabListModel).
+ */
+public final class TabListDiff {
+
+    public static final int INSERT = 0;
+    public static final int REMOVE = 1;
+    public static final int MOVE = 2;
+    public static final int CHANGE = 3;
+
+    public static final class Op {
+        public final int type;
+        public final int fromPosition;
+        public final int toPosition;
+        public final TabDescriptor tab;
+
+        Op(int type, int fromPosition, int toPosition, TabDescriptor tab) {
+            this.type = type;
+            this.fromPosition = fromPosition;
+            this.toPosition = toPosition;
+            this.tab = tab;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case INSERT: return "INSERT " + toPosition + " " + tab;
+                case REMOVE: return "REMOVE " + fromPosition + " " + tab;
+                case MOVE: return "MOVE " + fromPosition + " -> " + toPosition + " " + tab;
+                default: return "CHANGE " + toPosition + " " + tab;
+            }
+        }
+    }
+
+    private final List<Op> mOps;
+
+    // Also used by ViewPagerAdapter, to hand the operations it applied to its TabChangeListeners.
+    TabListDiff(List<Op> ops) {
+        mOps = Collections.unmodifiableList(ops);
+    }
+
+    public List<Op> getOps() {
+        return mOps;
+    }
+
+    public boolean isEmpty() {
+        return mOps.isEmpty();
+    }
+
+    /**
+     * Calculate the operations needed to turn oldTabs into newTabs. Page ids must be unique within each list.
+     *
+     * Tabs are only moved when they have to: the longest run of kept tabs which are already in the right order (their longest increasing
+     * subsequence) stays where it is, and every other kept tab is moved once, right after the tab which precedes it in newTabs. So, moving a
+     * single tab (backward or forward, see TabListModel.move()) is a single MOVE, whatever the number of tabs it passes.
+     *
+     * @param oldTabs
+     * @param newTabs
+     * @return
+     */
+    public static TabListDiff calculate(List<TabDescriptor> oldTabs, List<TabDescriptor> newTabs) {
+        List<Op> ops = new ArrayList<>();
+        List<TabDescriptor> current = new ArrayList<>(oldTabs);
+
+        Set<Long> newPageIds = new HashSet<>();
+        for (TabDescriptor tab : newTabs) {
+            newPageIds.add(tab.getPageId());
+        }
+
+        // First remove the tabs which are not in the new list, from the last one to the first one.
+        for (int i = current.size() - 1; i >= 0; i--) {
+            if (!newPageIds.contains(current.get(i).getPageId())) {
+                ops.add(new Op(REMOVE, i, i, current.remove(i)));
+            }
+        }
+
+        // The kept tabs, in the order they have in the new list, together with their positions in the current one.
+        Map<Long, Integer> currentPositions = new HashMap<>();
+        for (int i = 0; i < current.size(); i++) {
+            currentPositions.put(current.get(i).getPageId(), i);
+        }
+        List<TabDescriptor> keptTabs = new ArrayList<>(current.size());
+        int[] keptPositions = new int[current.size()];
+        for (TabDescriptor tab : newTabs) {
+            Integer position = currentPositions.get(tab.getPageId());
+            if (position != null) {
+                keptPositions[keptTabs.size()] = position;
+                keptTabs.add(tab);
+            }
+        }
+
+        // Then move the kept tabs which are out of order, each one right after the tab which precedes it in the new list (which is either in
+        // order or already moved). Afterwards, the kept tabs are in the same order as in the new list.
+        boolean[] inOrder = longestIncreasingSubsequence(keptPositions, keptTabs.size());
+        for (int k = 0; k < keptTabs.size(); k++) {
+            if (inOrder[k]) {
+                continue;
+            }
+            long pageId = keptTabs.get(k).getPageId();
+            int fromPosition = indexOfPage(current, pageId);
+            TabDescriptor moved = current.remove(fromPosition);
+            int toPosition = k == 0 ? 0 : indexOfPage(current, keptTabs.get(k - 1).getPageId()) + 1;
+            current.add(toPosition, moved);
+            if (fromPosition != toPosition) {
+                ops.add(new Op(MOVE, fromPosition, toPosition, moved));
+            }
+        }
+
+        // Finally, in ascending position, insert the new tabs and update the ones which changed.
+        for (int i = 0; i < newTabs.size(); i++) {
+            TabDescriptor tab = newTabs.get(i);
+
+            if (i < current.size() && current.get(i).getPageId() == tab.getPageId()) {
+                if (!current.get(i).equals(tab)) {
+                    current.set(i, tab);
+                    ops.add(new Op(CHANGE, i, i, tab));
+                }
+            } else {
+                current.add(i, tab);
+                ops.add(new Op(INSERT, i, i, tab));
+            }
+        }
+
+        return new TabListDiff(ops);
+    }
+
+    /**
+     * Apply the operations to the given list, which must be equal to the oldTabs this diff was calculated from.
+     *
+     * @param tabs
+     */
+    public void applyTo(List<TabDescriptor> tabs) {
+        for (Op op : mOps) {
+            switch (op.type) {
+                case INSERT:
+                    tabs.add(op.toPosition, op.tab);
+                    break;
+                case REMOVE:
+                    tabs.remove(op.fromPosition);
+                    break;
+                case MOVE:
+                    tabs.add(op.toPosition, tabs.remove(op.fromPosition));
+                    break;
+                case CHANGE:
+                    tabs.set(op.toPosition, op.tab);
+                    break;
+            }
+        }
+    }
+
+    private static int indexOfPage(List<TabDescriptor> tabs, long pageId) {
+        for (int i = 0; i < tabs.size(); i++) {
+            if (tabs.get(i).getPageId() == pageId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return which of the first count values belong to one of their longest strictly increasing subsequences, in O(n log n).
+     *
+     * @param values
+     * @param count
+     * @return
+     */
+    private static boolean[] longestIncreasingSubsequence(int[] values, int count) {
+        // tails[l] is the index of the smallest value ending an increasing subsequence of length l + 1, previous[i] is the index of the value
+        // before values[i] in the longest subsequence ending with it.
+        int[] tails = new int[count];
+        int[] previous = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] inSubsequence = new boolean[count];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            inSubsequence[i] = true;
+        }
+        return inSubsequence;
+    }
+}
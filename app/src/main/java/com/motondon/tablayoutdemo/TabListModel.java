@@ -0,0 +1,193 @@
+package com.motondon.tablayoutdemo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Holds the list of tabs and builds each new version of it, together with its TabListDiff, on a background executor. Only applying the
+ * diff (see ViewPagerAdapter.applyDiff()) is left to the main thread, which is what matters when the tabs come from a server payload with
+ * hundreds of entries.
+ *
+ * Mutations are run one at a time, in the same order they were submitted, and listeners are called on the main executor in that same
+ * order. So, each diff always applies on top of the previous one.
+ *
+ * This class does not depend on Android, so it can be tested on the JVM with direct executors.
+ */
+public class TabListModel {
+
+    /**
+     * Build the next list of tabs from the current one. It is called on the background executor and must not change the given list.
+     */
+    public interface Mutation {
+        List<TabDescriptor> apply(List<TabDescriptor> tabs);
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main executor.
+         *
+         * @param tabs the new list of tabs
+         * @param diff the operations needed to turn the previous list into the new one
+         */
+        void onTabsChanged(List<TabDescriptor> tabs, TabListDiff diff);
+    }
+
+    private final Executor mBackgroundExecutor;
+    private final Executor mMainExecutor;
+    private volatile Listener mListener;
+
+    // Only changed on the background executor, except by reset().
+    private volatile List<TabDescriptor> mTabs = Collections.emptyList();
+
+    public TabListModel(Executor backgroundExecutor, Executor mainExecutor) {
+        mBackgroundExecutor = backgroundExecutor;
+        mMainExecutor = mainExecutor;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Return the latest list of tabs. Note it might not have been applied on the main thread yet.
+     *
+     * @return
+     */
+    public List<TabDescriptor> getTabs() {
+        return mTabs;
+    }
+
+    /**
+     * Replace the list of tabs without calculating nor dispatching a diff. Used when the caller fills the adapter itself (e.g.: at startup),
+     * and must only be called before any mutation is submitted.
+     *
+     * @param tabs
+     */
+    public void reset(List<TabDescriptor> tabs) {
+        mTabs = Collections.unmodifiableList(new ArrayList<>(tabs));
+    }
+
+    public void submit(final Mutation mutation) {
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<TabDescriptor> previous = mTabs;
+                final List<TabDescriptor> next = Collections.unmodifiableList(new ArrayList<>(mutation.apply(previous)));
+                final TabListDiff diff = TabListDiff.calculate(previous, next);
+                mTabs = next;
+
+                if (diff.isEmpty()) {
+                    return;
+                }
+
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Listener listener = mListener;
+                        if (listener != null) {
+                            listener.onTabsChanged(next, diff);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Append a tab.
+     *
+     * @param tab
+     * @return
+     */
+    public static Mutation add(final TabDescriptor tab) {
+        return new Mutation() {
+            @Override
+            public List<TabDescriptor> apply(List<TabDescriptor> tabs) {
+                List<TabDescriptor> next = new ArrayList<>(tabs);
+                next.add(tab);
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Append several tabs at once, with a single diff (e.g.: a chunk of entries of a tab config, see TabConfigLoader).
+     *
+     * @param newTabs
+     * @return
+     */
+    public static Mutation addAll(final List<TabDescriptor> newTabs) {
+        return new Mutation() {
+            @Override
+            public List<TabDescriptor> apply(List<TabDescriptor> tabs) {
+                List<TabDescriptor> next = new ArrayList<>(tabs);
+                next.addAll(newTabs);
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Remove the tab with the given page id, if it still exists.
+     *
+     * @param pageId
+     * @return
+     */
+    public static Mutation remove(final long pageId) {
+        return new Mutation() {
+            @Override
+            public List<TabDescriptor> apply(List<TabDescriptor> tabs) {
+                List<TabDescriptor> next = new ArrayList<>(tabs);
+                for (int i = 0; i < next.size(); i++) {
+                    if (next.get(i).getPageId() == pageId) {
+                        next.remove(i);
+                        break;
+                    }
+                }
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Move the tab with the given page id, if it still exists, to the given position (clamped to the list bounds). The page keeps its
+     * fragment and saved state, since the resulting diff is a single MOVE (in either direction, see TabListDiff.calculate()).
+     *
+     * @param pageId
+     * @param toPosition
+     * @return
+     */
+    public static Mutation move(final long pageId, final int toPosition) {
+        return new Mutation() {
+            @Override
+            public List<TabDescriptor> apply(List<TabDescriptor> tabs) {
+                List<TabDescriptor> next = new ArrayList<>(tabs);
+                for (int i = 0; i < next.size(); i++) {
+                    if (next.get(i).getPageId() == pageId) {
+                        TabDescriptor tab = next.remove(i);
+                        next.add(Math.max(0, Math.min(toPosition, next.size())), tab);
+                        break;
+                    }
+                }
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Replace all tabs (e.g.: by the ones from a server payload). Tabs with the same page ids as current ones keep their pages.
+     *
+     * @param newTabs
+     * @return
+     */
+    public static Mutation replaceAll(final List<TabDescriptor> newTabs) {
+        return new Mutation() {
+            @Override
+            public List<TabDescriptor> apply(List<TabDescriptor> tabs) {
+                return newTabs;
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package com.motondon.tablayoutdemo;
+
+/**
+ * Counters and measurements of what the pager is doing: fragments created, views inflated, adapter notifications, swipe latency, per-page
+ * state size, etc. They are handed to a pluggable Sink (e.g.: AggregatingMetricsSink, which backs the MetricsOverlay).
+ *
+ * When no sink is set (the default), metrics are disabled and each call costs a single field read. Callers which would need to compute
+ * something just to report it should check isEnabled() first.
+ *
+ * This class does not depend on Android, so it can be tested on the JVM.
+ */
+public final class TabMetrics {
+
+    public interface Sink {
+        /**
+         * Called when a counter is incremented.
+         *
+         * @param name
+         * @param delta
+         */
+        void onCount(String name, long delta);
+
+        /**
+         * Called when a value is recorded for a histogram.
+         *
+         * @param name
+         * @param value
+         */
+        void onValue(String name, long value);
+    }
+
+    // Counters
+    public static final String FRAGMENT_CREATED = "fragment_created";
+    public static final String HOT_PAGE_REUSED = "hot_page_reused";
+    public static final String VIEW_INFLATED = "view_inflated";
+    public static final String VIEW_PRE_INFLATED = "view_pre_inflated";
+    public static final String ADAPTER_NOTIFIED = "adapter_notified";
+    public static final String FRAGMENT_LEAKED = "fragment_leaked";
+    public static final String PREFETCH_USED = "prefetch_used";
+    public static final String PREFETCH_CANCELLED = "prefetch_cancelled";
+
+    // Histograms
+    public static final String SWIPE_SETTLE_MS = "swipe_settle_ms";
+    public static final String PAGE_STATE_BYTES = "page_state_bytes";
+
+    private static volatile Sink sSink;
+
+    private TabMetrics() {
+    }
+
+    /**
+     * Set the sink which receives all metrics, or null in order to disable them.
+     *
+     * @param sink
+     */
+    public static void setSink(Sink sink) {
+        sSink = sink;
+    }
+
+    public static boolean isEnabled() {
+        return sSink != null;
+    }
+
+    public static void count(String name) {
+        Sink sink = sSink;
+        if (sink != null) {
+            sink.onCount(name, 1);
+        }
+    }
+
+    public static void record(String name, long value) {
+        Sink sink = sSink;
+        if (sink != null) {
+            sink.onValue(name, value);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.motondon.tablayoutdemo;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the tabs of the last session in a small append-only file, so that they survive process death and cold starts (the savedInstanceState
+ * bundle only survives the former, and only while the task is alive).
+ *
+ * The file starts with a header (which includes the app version, since icon ids are resource ids and might change between versions) and a
+ * snapshot record with the whole tab list. After that, each change is appended as a small record: the operations of each TabListDiff, the
+ * selected tab and the tab counter. So, writing is cheap enough to be done on every mutation. Once there are too many records, the file is
+ * rewritten with a single snapshot record.
+ *
+ * All writes are done in order on the given executor, never on the caller thread. Reading is done once, at startup, in a single read (see
+ * read()). If the app was killed in the middle of a write, the incomplete record at the end is ignored.
+ *
+ * Per-page fragment state is not part of the session: Fragment.SavedState is a Parcelable, and parceled data must not be persisted. So,
+ * after a cold start, pages are created from scratch.
+ *
+ * This class does not depend on Android, so it can be tested on the JVM.
+ */
+public class TabSessionStore {
+
+    private static final int MAGIC = 0x54414253; // "TABS"
+    private static final int FORMAT_VERSION = 1;
+
+    // Record types
+    private static final int RECORD_SNAPSHOT = 1;
+    private static final int RECORD_INSERT = 2;
+    private static final int RECORD_REMOVE = 3;
+    private static final int RECORD_MOVE = 4;
+    private static final int RECORD_CHANGE = 5;
+    private static final int RECORD_SELECT = 6;
+    private static final int RECORD_TAB_COUNTER = 7;
+
+    // Once there are this many records after the snapshot, the file is rewritten.
+    static final int MAX_RECORDS = 512;
+
+    /**
+     * The tabs of a session, as read by read().
+     */
+    public static class Session {
+        private final List<TabDescriptor> mTabs;
+        private final int mSelectedIndex;
+        private final int mTabCounter;
+
+        Session(List<TabDescriptor> tabs, int selectedIndex, int tabCounter) {
+            mTabs = Collections.unmodifiableList(tabs);
+            mSelectedIndex = selectedIndex;
+            mTabCounter = tabCounter;
+        }
+
+        public List<TabDescriptor> getTabs() {
+            return mTabs;
+        }
+
+        public int getSelectedIndex() {
+            return mSelectedIndex;
+        }
+
+        /**
+         * Return the last value given to appendTabCounter() (e.g.: the number of tabs created by the user so far).
+         *
+         * @return
+         */
+        public int getTabCounter() {
+            return mTabCounter;
+        }
+    }
+
+    private final File mFile;
+    private final int mAppVersion;
+    private final Executor mExecutor;
+
+    // Only touched on the executor: the session as it is in the file, so that it can be compacted without reading it back.
+    private final List<TabDescriptor> mTabs = new ArrayList<>();
+    private int mSelectedIndex = 0;
+    private int mTabCounter = 0;
+    private int mRecordCount = 0;
+    private DataOutputStream mOut;
+    private boolean mClosed = false;
+
+    /**
+     * @param file
+     * @param appVersion sessions written by another app version are discarded
+     * @param executor all writes are done on it, in order, so it must run tasks sequentially (e.g.: a single thread executor)
+     */
+    public TabSessionStore(File file, int appVersion, Executor executor) {
+        mFile = file;
+        mAppVersion = appVersion;
+        mExecutor = executor;
+    }
+
+    /**
+     * Read the last session, or return null if there is none (or it cannot be used). This is done on the caller thread, in a single read,
+     * since the activity needs its tabs before showing anything.
+     *
+     * @return
+     */
+    public Session read() {
+        if (!mFile.exists()) {
+            return null;
+        }
+
+        byte[] bytes;
+        try {
+            bytes = readFully(mFile);
+        } catch (IOException e) {
+            return null;
+        }
+
+        List<TabDescriptor> tabs = new ArrayList<>();
+        int[] selectedAndCounter = new int[2];
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != mAppVersion) {
+                return null;
+            }
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                readRecord(type, in, tabs, selectedAndCounter);
+            }
+        } catch (EOFException e) {
+            // The app was killed in the middle of a write. Keep what was read so far. Note the next writeSnapshot() rewrites the file, so the
+            // incomplete record will not get in the way of the following ones.
+        } catch (IOException | IndexOutOfBoundsException e) {
+            return null;
+        }
+
+        int selectedIndex = Math.max(0, Math.min(selectedAndCounter[0], tabs.size() - 1));
+        return new Session(tabs, selectedIndex, selectedAndCounter[1]);
+    }
+
+    /**
+     * Start a new session file with the given tabs. Must be called before any of the append methods, e.g.: once the activity restored its tabs.
+     *
+     * @param tabs
+     * @param selectedIndex
+     * @param tabCounter
+     */
+    public void writeSnapshot(List<TabDescriptor> tabs, final int selectedIndex, final int tabCounter) {
+        final List<TabDescriptor> copy = new ArrayList<>(tabs);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mTabs.clear();
+                mTabs.addAll(copy);
+                mSelectedIndex = selectedIndex;
+                mTabCounter = tabCounter;
+                rewrite();
+            }
+        });
+    }
+
+    /**
+     * Record the changes made to the tabs.
+     *
+     * @param diff
+     */
+    public void appendDiff(final TabListDiff diff) {
+        if (diff.isEmpty()) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                diff.applyTo(mTabs);
+                try {
+                    for (TabListDiff.Op op : diff.getOps()) {
+                        writeOp(op);
+                    }
+                } catch (IOException e) {
+                    closeQuietly();
+                }
+                onRecordsAppended(diff.getOps().size());
+            }
+        });
+    }
+
+    public void appendSelection(final int selectedIndex) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mOut == null || selectedIndex == mSelectedIndex) {
+                    return;
+                }
+                mSelectedIndex = selectedIndex;
+                try {
+                    mOut.writeByte(RECORD_SELECT);
+                    mOut.writeInt(selectedIndex);
+                } catch (IOException e) {
+                    closeQuietly();
+                }
+                onRecordsAppended(1);
+            }
+        });
+    }
+
+    public void appendTabCounter(final int tabCounter) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mOut == null) {
+                    return;
+                }
+                mTabCounter = tabCounter;
+                try {
+                    mOut.writeByte(RECORD_TAB_COUNTER);
+                    mOut.writeInt(tabCounter);
+                } catch (IOException e) {
+                    closeQuietly();
+                }
+                onRecordsAppended(1);
+            }
+        });
+    }
+
+    /**
+     * Flush and close the file. Nothing else is written afterwards.
+     */
+    public void close() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mClosed = true;
+                closeQuietly();
+            }
+        });
+    }
+
+    private void writeOp(TabListDiff.Op op) throws IOException {
+        if (mOut == null) {
+            return;
+        }
+        switch (op.type) {
+            case TabListDiff.INSERT:
+                mOut.writeByte(RECORD_INSERT);
+                mOut.writeInt(op.toPosition);
+                writeTab(mOut, op.tab);
+                break;
+            case TabListDiff.REMOVE:
+                mOut.writeByte(RECORD_REMOVE);
+                mOut.writeInt(op.fromPosition);
+                break;
+            case TabListDiff.MOVE:
+                mOut.writeByte(RECORD_MOVE);
+                mOut.writeInt(op.fromPosition);
+                mOut.writeInt(op.toPosition);
+                break;
+            case TabListDiff.CHANGE:
+                mOut.writeByte(RECORD_CHANGE);
+                mOut.writeInt(op.toPosition);
+                writeTab(mOut, op.tab);
+                break;
+        }
+    }
+
+    /**
+     * Flush each batch of records, so that they reach the file even if the process is killed afterwards, and compact the file when needed.
+     */
+    private void onRecordsAppended(int count) {
+        if (mOut == null) {
+            return;
+        }
+        mRecordCount += count;
+        if (mRecordCount >= MAX_RECORDS) {
+            rewrite();
+            return;
+        }
+        try {
+            mOut.flush();
+        } catch (IOException e) {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Write the whole session to a temporary file and then replace the current one with it, so that a crash never leaves a broken file behind.
+     */
+    private void rewrite() {
+        if (mClosed) {
+            return;
+        }
+        closeQuietly();
+
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(mAppVersion);
+                out.writeByte(RECORD_SNAPSHOT);
+                TabStateSnapshot.of(mTabs, mSelectedIndex).writeTo(out);
+                out.writeInt(mTabCounter);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(mFile)) {
+                throw new IOException("Could not rename " + tmpFile + " to " + mFile);
+            }
+
+            mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, true)));
+            mRecordCount = 0;
+        } catch (IOException e) {
+            // Give up on this session. It will be written again on the next writeSnapshot().
+            closeQuietly();
+        }
+    }
+
+    private void closeQuietly() {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                // Nothing to do here.
+            }
+            mOut = null;
+        }
+    }
+
+    private static void readRecord(int type, DataInput in, List<TabDescriptor> tabs, int[] selectedAndCounter) throws IOException {
+        switch (type) {
+            case RECORD_SNAPSHOT:
+                TabStateSnapshot snapshot = TabStateSnapshot.readFrom(in);
+                tabs.clear();
+                tabs.addAll(snapshot.toTabDescriptors());
+                selectedAndCounter[0] = snapshot.getSelectedIndex();
+                selectedAndCounter[1] = in.readInt();
+                break;
+            case RECORD_INSERT:
+                int insertPosition = in.readInt();
+                tabs.add(insertPosition, readTab(in));
+                break;
+            case RECORD_REMOVE:
+                tabs.remove(in.readInt());
+                break;
+            case RECORD_MOVE:
+                int fromPosition = in.readInt();
+                int toPosition = in.readInt();
+                tabs.add(toPosition, tabs.remove(fromPosition));
+                break;
+            case RECORD_CHANGE:
+                int changePosition = in.readInt();
+                tabs.set(changePosition, readTab(in));
+                break;
+            case RECORD_SELECT:
+                selectedAndCounter[0] = in.readInt();
+                break;
+            case RECORD_TAB_COUNTER:
+                selectedAndCounter[1] = in.readInt();
+                break;
+            default:
+                throw new IOException("Unknown record type: " + type);
+        }
+    }
+
+    private static void writeTab(DataOutput out, TabDescriptor tab) throws IOException {
+        out.writeLong(tab.getPageId());
+        out.writeUTF(tab.getTypeKey());
+        out.writeUTF(tab.getTitle());
+        out.writeInt(tab.getIconId());
+    }
+
+    private static TabDescriptor readTab(DataInput in) throws IOException {
+        long pageId = in.readLong();
+        String typeKey = in.readUTF();
+        String title = in.readUTF();
+        int iconId = in.readInt();
+        return new TabDescriptor(pageId, typeKey, title, iconId);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = in.read(bytes, offset, bytes.length - offset);
+                if (count < 0) {
+                    break;
+                }
+                offset += count;
+            }
+            return offset == bytes.length ? bytes : Arrays.copyOf(bytes, offset);
+        } finally {
+            in.close();
+        }
+    }
+}
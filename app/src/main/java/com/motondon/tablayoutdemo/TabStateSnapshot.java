@@ -0,0 +1,228 @@
+package com.motondon.tablayoutdemo;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact snapshot of the tabs shown by the ViewPagerAdapter, saved by MainActivity on onSaveInstanceState() and used to rebuild the
+ * tabs on onCreate() for both orientation change methods.
+ *
+ * Instead of putting a list of fragments (or two lists of strings) in the bundle by using Java serialization, we write a single byte
+ * array: a table with the distinct fragment type keys (see FragmentFactory), so that each key is written only once no matter how many
+ * tabs of that type exist, followed by the page id, type index, title and icon id of each tab, and the selected tab index.
+ *
+ * Note that per-page fragment state is not part of the snapshot. It is saved by the ViewPagerAdapter itself (see saveState()), keyed by
+ * the same page ids.
+ */
+public class TabStateSnapshot implements Parcelable {
+
+    private static final int VERSION = 1;
+
+    private final long[] mPageIds;
+    private final String[] mTypeTable;
+    private final int[] mTypeIndexes;
+    private final String[] mTitles;
+    private final int[] mIconIds;
+    private final int mSelectedIndex;
+
+    /**
+     * All arrays must have the same length, one entry per tab.
+     *
+     * @param pageIds
+     * @param typeKeys
+     * @param titles
+     * @param iconIds
+     * @param selectedIndex
+     */
+    public TabStateSnapshot(long[] pageIds, String[] typeKeys, String[] titles, int[] iconIds, int selectedIndex) {
+        if (typeKeys.length != pageIds.length || titles.length != pageIds.length || iconIds.length != pageIds.length) {
+            throw new IllegalArgumentException("All arrays must have one entry per tab");
+        }
+
+        List<String> typeTable = new ArrayList<>();
+        Map<String, Integer> typeIndexes = new HashMap<>();
+
+        mTypeIndexes = new int[typeKeys.length];
+        for (int i = 0; i < typeKeys.length; i++) {
+            Integer index = typeIndexes.get(typeKeys[i]);
+            if (index == null) {
+                index = typeTable.size();
+                typeTable.add(typeKeys[i]);
+                typeIndexes.put(typeKeys[i], index);
+            }
+            mTypeIndexes[i] = index;
+        }
+
+        mPageIds = pageIds;
+        mTypeTable = typeTable.toArray(new String[typeTable.size()]);
+        mTitles = titles;
+        mIconIds = iconIds;
+        mSelectedIndex = selectedIndex;
+    }
+
+    /**
+     * Build a snapshot of the given tabs.
+     *
+     * @param tabs
+     * @param selectedIndex
+     * @return
+     */
+    public static TabStateSnapshot of(List<TabDescriptor> tabs, int selectedIndex) {
+        long[] pageIds = new long[tabs.size()];
+        String[] typeKeys = new String[tabs.size()];
+        String[] titles = new String[tabs.size()];
+        int[] iconIds = new int[tabs.size()];
+        for (int i = 0; i < tabs.size(); i++) {
+            TabDescriptor tab = tabs.get(i);
+            pageIds[i] = tab.getPageId();
+            typeKeys[i] = tab.getTypeKey();
+            titles[i] = tab.getTitle();
+            iconIds[i] = tab.getIconId();
+        }
+        return new TabStateSnapshot(pageIds, typeKeys, titles, iconIds, selectedIndex);
+    }
+
+    private TabStateSnapshot(long[] pageIds, String[] typeTable, int[] typeIndexes, String[] titles, int[] iconIds, int selectedIndex) {
+        mPageIds = pageIds;
+        mTypeTable = typeTable;
+        mTypeIndexes = typeIndexes;
+        mTitles = titles;
+        mIconIds = iconIds;
+        mSelectedIndex = selectedIndex;
+    }
+
+    public int getPageCount() {
+        return mPageIds.length;
+    }
+
+    public long getPageId(int position) {
+        return mPageIds[position];
+    }
+
+    public String getTypeKey(int position) {
+        return mTypeTable[mTypeIndexes[position]];
+    }
+
+    public String getTitle(int position) {
+        return mTitles[position];
+    }
+
+    public int getIconId(int position) {
+        return mIconIds[position];
+    }
+
+    public int getSelectedIndex() {
+        return mSelectedIndex;
+    }
+
+    /**
+     * Return the descriptors of all tabs, keeping their page ids.
+     *
+     * @return
+     */
+    public List<TabDescriptor> toTabDescriptors() {
+        List<TabDescriptor> tabs = new ArrayList<>(mPageIds.length);
+        for (int i = 0; i < mPageIds.length; i++) {
+            tabs.add(new TabDescriptor(mPageIds[i], getTypeKey(i), mTitles[i], mIconIds[i]));
+        }
+        return tabs;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(VERSION);
+
+        out.writeInt(mTypeTable.length);
+        for (String typeKey : mTypeTable) {
+            out.writeUTF(typeKey);
+        }
+
+        out.writeInt(mPageIds.length);
+        for (int i = 0; i < mPageIds.length; i++) {
+            out.writeLong(mPageIds[i]);
+            out.writeShort(mTypeIndexes[i]);
+            out.writeUTF(mTitles[i]);
+            out.writeInt(mIconIds[i]);
+        }
+
+        out.writeInt(mSelectedIndex);
+    }
+
+    public static TabStateSnapshot readFrom(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported tab state snapshot version: " + version);
+        }
+
+        String[] typeTable = new String[in.readInt()];
+        for (int i = 0; i < typeTable.length; i++) {
+            typeTable[i] = in.readUTF();
+        }
+
+        int pageCount = in.readInt();
+        long[] pageIds = new long[pageCount];
+        int[] typeIndexes = new int[pageCount];
+        String[] titles = new String[pageCount];
+        int[] iconIds = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pageIds[i] = in.readLong();
+            typeIndexes[i] = in.readShort();
+            titles[i] = in.readUTF();
+            iconIds[i] = in.readInt();
+        }
+
+        return new TabStateSnapshot(pageIds, typeTable, typeIndexes, titles, iconIds, in.readInt());
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + mPageIds.length * 32);
+        try {
+            writeTo(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            // Cannot happen when writing to memory.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static TabStateSnapshot fromByteArray(byte[] bytes) throws IOException {
+        return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeByteArray(toByteArray());
+    }
+
+    public static final Parcelable.Creator<TabStateSnapshot> CREATOR = new Parcelable.Creator<TabStateSnapshot>() {
+        @Override
+        public TabStateSnapshot createFromParcel(Parcel source) {
+            try {
+                return fromByteArray(source.createByteArray());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read tab state snapshot", e);
+            }
+        }
+
+        @Override
+        public TabStateSnapshot[] newArray(int size) {
+            return new TabStateSnapshot[size];
+        }
+    };
+}
@@ -0,0 +1,164 @@
+package com.motondon.tablayoutdemo;
+
+import android.support.design.widget.TabLayout;
+import android.support.v4.view.ViewPager;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.motondon.tablayoutdemo_part_2.R;
+
+import java.util.List;
+
+/**
+ * Keeps the TabLayout in sync with the ViewPagerAdapter, replacing TabLayout.setupWithViewPager().
+ *
+ * When using setupWithViewPager(), the TabLayout removes and recreates all of its tabs each time the adapter notifies a change, which
+ * with many tabs is the most expensive part of adding or removing a single one. Instead, when the adapter changes, we only remove, insert
+ * or move the tabs that actually changed, following the operations the adapter applied (see ViewPagerAdapter.TabChangeListener). Those
+ * come from the TabListDiff calculated by the TabListModel on a background thread, so the tab lists are never compared on the main thread.
+ * Each tab uses a custom view (icon plus title) which is taken from a TabViewPool, so views of removed tabs are reused for new ones, and
+ * icons are shared through a TabIconCache.
+ */
+public class TabStripBinder {
+
+    private final TabLayout mTabLayout;
+    private final ViewPager mViewPager;
+    private final ViewPagerAdapter mAdapter;
+    private final TabViewPool mViewPool;
+    private final TabIconCache mIconCache;
+
+    // While we are changing the tabs, TabLayout might select other tabs (e.g.: when the selected one is removed). These must not change
+    // the viewPager current item.
+    private boolean mUpdatingTabs = false;
+
+    public TabStripBinder(TabLayout tabLayout, ViewPager viewPager, ViewPagerAdapter adapter) {
+        mTabLayout = tabLayout;
+        mViewPager = viewPager;
+        mAdapter = adapter;
+        mViewPool = new TabViewPool(LayoutInflater.from(tabLayout.getContext()));
+        mIconCache = new TabIconCache(tabLayout.getContext());
+
+        // This is what setupWithViewPager() does, except we do not let the TabLayout observe the adapter.
+        mViewPager.addOnPageChangeListener(new TabLayout.TabLayoutOnPageChangeListener(mTabLayout));
+        mTabLayout.addOnTabSelectedListener(new TabLayout.OnTabSelectedListener() {
+            @Override
+            public void onTabSelected(TabLayout.Tab tab) {
+                if (!mUpdatingTabs) {
+                    mViewPager.setCurrentItem(tab.getPosition());
+                }
+            }
+
+            @Override
+            public void onTabUnselected(TabLayout.Tab tab) {
+            }
+
+            @Override
+            public void onTabReselected(TabLayout.Tab tab) {
+            }
+        });
+
+        // Note the viewPager observes the adapter too and is notified first, so when onTabsChanged() is called it already knows its new current item.
+        mAdapter.addTabChangeListener(new ViewPagerAdapter.TabChangeListener() {
+            @Override
+            public void onTabsChanged(TabListDiff diff) {
+                bindTabs(diff);
+            }
+        });
+
+        bindTabs(null);
+    }
+
+    /**
+     * Bring the tabs in line with the adapter, touching only the tabs which changed, and then select the tab of the viewPager current item.
+     *
+     * @param diff the operations applied by the adapter, or null to bind all tabs again
+     */
+    private void bindTabs(TabListDiff diff) {
+        mUpdatingTabs = true;
+        try {
+            if (diff == null) {
+                // The tabs were replaced as a whole (e.g.: restored after an orientation change). Their views go back to the pool first, so
+                // that they are reused for the new tabs.
+                for (int i = mTabLayout.getTabCount() - 1; i >= 0; i--) {
+                    removeTab(i);
+                }
+                List<TabDescriptor> tabs = mAdapter.getTabDescriptors();
+                for (int i = 0; i < tabs.size(); i++) {
+                    insertTab(i, tabs.get(i), null);
+                }
+            } else {
+                for (TabListDiff.Op op : diff.getOps()) {
+                    switch (op.type) {
+                        case TabListDiff.INSERT:
+                            insertTab(op.toPosition, op.tab, null);
+                            break;
+                        case TabListDiff.REMOVE:
+                            removeTab(op.fromPosition);
+                            break;
+                        case TabListDiff.MOVE:
+                            moveTab(op.fromPosition, op.toPosition, op.tab);
+                            break;
+                        case TabListDiff.CHANGE:
+                            bindTab(mTabLayout.getTabAt(op.toPosition), op.tab);
+                            break;
+                    }
+                }
+            }
+
+            int currentItem = mViewPager.getCurrentItem();
+            if (currentItem < mTabLayout.getTabCount() && mTabLayout.getSelectedTabPosition() != currentItem) {
+                mTabLayout.getTabAt(currentItem).select();
+            }
+        } finally {
+            mUpdatingTabs = false;
+        }
+    }
+
+    private void bindTab(TabLayout.Tab tab, TabDescriptor page) {
+        tab.setText(page.getTitle()).setIcon(mIconCache.get(page.getIconId()));
+    }
+
+    /**
+     * Insert a tab for the given page. If customView is null, one is taken from the pool.
+     *
+     * @param position
+     * @param page
+     * @param customView
+     */
+    private void insertTab(int position, TabDescriptor page, View customView) {
+        if (customView == null) {
+            customView = mViewPool.obtain(R.layout.tab_item, mTabLayout);
+        }
+
+        TabLayout.Tab tab = mTabLayout.newTab().setCustomView(customView);
+        bindTab(tab, page);
+        mTabLayout.addTab(tab, position, false);
+    }
+
+    private void removeTab(int position) {
+        View customView = mTabLayout.getTabAt(position).getCustomView();
+        mTabLayout.removeTabAt(position);
+
+        if (customView != null) {
+            mViewPool.release(R.layout.tab_item, customView);
+        }
+    }
+
+    /**
+     * TabLayout cannot move a tab, so remove it and insert it again at its new position, keeping its custom view.
+     *
+     * @param fromPosition
+     * @param toPosition
+     * @param page
+     */
+    private void moveTab(int fromPosition, int toPosition, TabDescriptor page) {
+        View customView = mTabLayout.getTabAt(fromPosition).getCustomView();
+        mTabLayout.removeTabAt(fromPosition);
+
+        if (customView != null && customView.getParent() != null) {
+            ((ViewGroup) customView.getParent()).removeView(customView);
+        }
+        insertTab(toPosition, page, customView);
+    }
+}
@@ -0,0 +1,410 @@
+package com.motondon.tablayoutdemo;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tabs of the ViewPagerAdapter, kept as a table with one column per field instead of a list of objects: page ids, type ids and icon ids
+ * are kept in primitive arrays, type keys in a small table (see getTypeId()) and titles are interned, so tabs with the same title share a
+ * single string.
+ *
+ * Besides, a page id to position index (an open addressing hash table, also made of primitive arrays) makes indexOfPage() O(1), which the
+ * adapter calls for each live page on every change (see ViewPagerAdapter.getItemPosition()). Appending a page keeps the index up to date,
+ * but any change which shifts positions (a middle insert, a remove or a move) invalidates it, and the next lookup rebuilds it in O(n). So
+ * changes are better applied as a whole with apply(), which rebuilds it at most once per diff instead of once per operation.
+ *
+ * Reading a field (size(), getPageId(), getTitle(), indexOfPage(), etc) never allocates. TabDescriptors are only built when asked for (see
+ * getDescriptor() and asDescriptorList()), which is not the case on the adapter hot path.
+ *
+ * This class does not depend on Android, so it can be tested and benchmarked on the JVM. It is not thread safe.
+ */
+public final class TabTable {
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int NOT_FOUND = -1;
+
+    private int mSize = 0;
+    private long[] mPageIds = new long[INITIAL_CAPACITY];
+    private int[] mTypeIds = new int[INITIAL_CAPACITY];
+    private int[] mIconIds = new int[INITIAL_CAPACITY];
+    private String[] mTitles = new String[INITIAL_CAPACITY];
+
+    // Type keys are few (one per fragment class), so they are never removed from the table.
+    private String[] mTypeKeys = new String[4];
+    private int mTypeCount = 0;
+    private final Map<String, Integer> mTypeIdsByKey = new HashMap<>();
+
+    // Interned titles. Pruned when it holds many more titles than there are tabs (see internTitle()).
+    private final Map<String, String> mTitlePool = new HashMap<>();
+
+    // Page id to position index. Keys are stored in mIndexKeys and positions + 1 in mIndexValues, so that 0 means an empty slot. Any change
+    // which shifts positions invalidates it, and it is rebuilt (without allocating, unless it has to grow) on the next lookup.
+    private long[] mIndexKeys = new long[INITIAL_CAPACITY * 2];
+    private int[] mIndexValues = new int[INITIAL_CAPACITY * 2];
+    private boolean mIndexValid = true;
+
+    // Built by asDescriptorList() and kept until the next change.
+    private List<TabDescriptor> mDescriptors;
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public long getPageId(int position) {
+        checkPosition(position);
+        return mPageIds[position];
+    }
+
+    /**
+     * Return the id of the FragmentFactory type key of the page at the given position. Ids are only meaningful within this table.
+     *
+     * @param position
+     * @return
+     */
+    public int getTypeId(int position) {
+        checkPosition(position);
+        return mTypeIds[position];
+    }
+
+    public String getTypeKey(int position) {
+        checkPosition(position);
+        return mTypeKeys[mTypeIds[position]];
+    }
+
+    public String getTitle(int position) {
+        checkPosition(position);
+        return mTitles[position];
+    }
+
+    public int getIconId(int position) {
+        checkPosition(position);
+        return mIconIds[position];
+    }
+
+    /**
+     * Return the current position of the page with the given page id or -1 if there is no such page. O(1), unless the index has to be
+     * rebuilt after a change which shifted positions.
+     *
+     * @param pageId
+     * @return
+     */
+    public int indexOfPage(long pageId) {
+        if (!mIndexValid) {
+            rebuildIndex();
+        }
+
+        int mask = mIndexKeys.length - 1;
+        for (int slot = hash(pageId) & mask; mIndexValues[slot] != 0; slot = (slot + 1) & mask) {
+            if (mIndexKeys[slot] == pageId) {
+                return mIndexValues[slot] - 1;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    public boolean containsPage(long pageId) {
+        return indexOfPage(pageId) >= 0;
+    }
+
+    /**
+     * Build a descriptor of the page at the given position.
+     *
+     * @param position
+     * @return
+     */
+    public TabDescriptor getDescriptor(int position) {
+        checkPosition(position);
+        return new TabDescriptor(mPageIds[position], mTypeKeys[mTypeIds[position]], mTitles[position], mIconIds[position]);
+    }
+
+    /**
+     * Return an unmodifiable list with the descriptors of all pages, in their current order. The list is built once and then reused until
+     * the table changes. It is a snapshot: later changes are not reflected in it.
+     *
+     * @return
+     */
+    public List<TabDescriptor> asDescriptorList() {
+        if (mDescriptors == null) {
+            final TabDescriptor[] descriptors = new TabDescriptor[mSize];
+            for (int i = 0; i < mSize; i++) {
+                descriptors[i] = getDescriptor(i);
+            }
+            mDescriptors = new AbstractList<TabDescriptor>() {
+                @Override
+                public TabDescriptor get(int index) {
+                    return descriptors[index];
+                }
+
+                @Override
+                public int size() {
+                    return descriptors.length;
+                }
+            };
+        }
+        return mDescriptors;
+    }
+
+    /**
+     * Build a snapshot of all pages. See TabStateSnapshot class.
+     *
+     * @param selectedIndex
+     * @return
+     */
+    public TabStateSnapshot toSnapshot(int selectedIndex) {
+        String[] typeKeys = new String[mSize];
+        for (int i = 0; i < mSize; i++) {
+            typeKeys[i] = mTypeKeys[mTypeIds[i]];
+        }
+        return new TabStateSnapshot(Arrays.copyOf(mPageIds, mSize), typeKeys, Arrays.copyOf(mTitles, mSize), Arrays.copyOf(mIconIds, mSize), selectedIndex);
+    }
+
+    public void add(TabDescriptor tab) {
+        insert(mSize, tab);
+    }
+
+    public void addAll(List<TabDescriptor> tabs) {
+        ensureCapacity(mSize + tabs.size());
+        for (int i = 0; i < tabs.size(); i++) {
+            insert(mSize, tabs.get(i));
+        }
+    }
+
+    /**
+     * Insert a page at the given position, shifting the pages after it. Page ids must be unique.
+     *
+     * @param position
+     * @param tab
+     */
+    public void insert(int position, TabDescriptor tab) {
+        if (position < 0 || position > mSize) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + mSize);
+        }
+        if (containsPage(tab.getPageId())) {
+            throw new IllegalArgumentException("Page id already in the table: " + tab.getPageId());
+        }
+
+        insertRow(position, tab);
+    }
+
+    /**
+     * Replace the page at the given position. Its page id may not change.
+     *
+     * @param position
+     * @param tab
+     */
+    public void set(int position, TabDescriptor tab) {
+        checkPosition(position);
+        if (mPageIds[position] != tab.getPageId()) {
+            throw new IllegalArgumentException("Cannot change the page id at position " + position);
+        }
+
+        setRow(position, tab);
+        mDescriptors = null;
+    }
+
+    public void remove(int position) {
+        checkPosition(position);
+
+        shift(position + 1, position, mSize - position - 1);
+        mSize--;
+        mTitles[mSize] = null;
+        mIndexValid = false;
+        mDescriptors = null;
+    }
+
+    public void move(int fromPosition, int toPosition) {
+        checkPosition(fromPosition);
+        checkPosition(toPosition);
+        if (fromPosition == toPosition) {
+            return;
+        }
+
+        long pageId = mPageIds[fromPosition];
+        int typeId = mTypeIds[fromPosition];
+        int iconId = mIconIds[fromPosition];
+        String title = mTitles[fromPosition];
+
+        if (fromPosition < toPosition) {
+            shift(fromPosition + 1, fromPosition, toPosition - fromPosition);
+        } else {
+            shift(toPosition, toPosition + 1, fromPosition - toPosition);
+        }
+
+        mPageIds[toPosition] = pageId;
+        mTypeIds[toPosition] = typeId;
+        mIconIds[toPosition] = iconId;
+        mTitles[toPosition] = title;
+        mIndexValid = false;
+        mDescriptors = null;
+    }
+
+    public void clear() {
+        Arrays.fill(mTitles, 0, mSize, null);
+        mSize = 0;
+        mTitlePool.clear();
+        Arrays.fill(mIndexValues, 0);
+        mIndexValid = true;
+        mDescriptors = null;
+    }
+
+    /**
+     * Apply the operations of a diff calculated from the current pages. See TabListDiff.applyTo().
+     *
+     * Unlike calling insert() for each INSERT, this does not look up the index between the operations, so that it is rebuilt at most
+     * once (on the next lookup) instead of after every operation which shifted positions.
+     *
+     * @param diff
+     */
+    public void apply(TabListDiff diff) {
+        // A diff only inserts pages which are not in the old list, so their page ids can all be checked up front, before the index gets
+        // invalidated.
+        for (TabListDiff.Op op : diff.getOps()) {
+            if (op.type == TabListDiff.INSERT && containsPage(op.tab.getPageId())) {
+                throw new IllegalArgumentException("Page id already in the table: " + op.tab.getPageId());
+            }
+        }
+
+        for (TabListDiff.Op op : diff.getOps()) {
+            switch (op.type) {
+                case TabListDiff.INSERT:
+                    if (op.toPosition < 0 || op.toPosition > mSize) {
+                        throw new IndexOutOfBoundsException("Position: " + op.toPosition + ", size: " + mSize);
+                    }
+                    insertRow(op.toPosition, op.tab);
+                    break;
+                case TabListDiff.REMOVE:
+                    remove(op.fromPosition);
+                    break;
+                case TabListDiff.MOVE:
+                    move(op.fromPosition, op.toPosition);
+                    break;
+                case TabListDiff.CHANGE:
+                    set(op.toPosition, op.tab);
+                    break;
+            }
+        }
+    }
+
+    private void insertRow(int position, TabDescriptor tab) {
+        ensureCapacity(mSize + 1);
+        if (position < mSize) {
+            shift(position, position + 1, mSize - position);
+            mIndexValid = false;
+        }
+
+        mSize++;
+        setRow(position, tab);
+        if (mIndexValid) {
+            putIndex(tab.getPageId(), position);
+        }
+        mDescriptors = null;
+    }
+
+    private void setRow(int position, TabDescriptor tab) {
+        mPageIds[position] = tab.getPageId();
+        mTypeIds[position] = getTypeId(tab.getTypeKey());
+        mIconIds[position] = tab.getIconId();
+        mTitles[position] = internTitle(tab.getTitle());
+    }
+
+    private int getTypeId(String typeKey) {
+        Integer typeId = mTypeIdsByKey.get(typeKey);
+        if (typeId == null) {
+            if (mTypeCount == mTypeKeys.length) {
+                mTypeKeys = Arrays.copyOf(mTypeKeys, mTypeCount * 2);
+            }
+            typeId = mTypeCount;
+            mTypeKeys[mTypeCount++] = typeKey;
+            mTypeIdsByKey.put(typeKey, typeId);
+        }
+        return typeId;
+    }
+
+    private String internTitle(String title) {
+        if (title == null) {
+            return null;
+        }
+
+        String interned = mTitlePool.get(title);
+        if (interned != null) {
+            return interned;
+        }
+
+        // Titles of removed tabs stay in the pool until it is much larger than the table. Then keep only the titles still in use.
+        if (mTitlePool.size() >= Math.max(INITIAL_CAPACITY, mSize * 2)) {
+            mTitlePool.clear();
+            for (int i = 0; i < mSize; i++) {
+                if (mTitles[i] != null) {
+                    mTitlePool.put(mTitles[i], mTitles[i]);
+                }
+            }
+        }
+        mTitlePool.put(title, title);
+        return title;
+    }
+
+    private void shift(int from, int to, int count) {
+        System.arraycopy(mPageIds, from, mPageIds, to, count);
+        System.arraycopy(mTypeIds, from, mTypeIds, to, count);
+        System.arraycopy(mIconIds, from, mIconIds, to, count);
+        System.arraycopy(mTitles, from, mTitles, to, count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mPageIds.length) {
+            return;
+        }
+
+        // Capacities are powers of two, so that index slots can be found with a mask.
+        int newCapacity = mPageIds.length;
+        while (newCapacity < capacity) {
+            newCapacity *= 2;
+        }
+        mPageIds = Arrays.copyOf(mPageIds, newCapacity);
+        mTypeIds = Arrays.copyOf(mTypeIds, newCapacity);
+        mIconIds = Arrays.copyOf(mIconIds, newCapacity);
+        mTitles = Arrays.copyOf(mTitles, newCapacity);
+
+        // Keep the index at most half full.
+        mIndexKeys = new long[newCapacity * 2];
+        mIndexValues = new int[newCapacity * 2];
+        mIndexValid = false;
+    }
+
+    private void rebuildIndex() {
+        Arrays.fill(mIndexValues, 0);
+        for (int i = 0; i < mSize; i++) {
+            putIndex(mPageIds[i], i);
+        }
+        mIndexValid = true;
+    }
+
+    private void putIndex(long pageId, int position) {
+        int mask = mIndexKeys.length - 1;
+        int slot = hash(pageId) & mask;
+        while (mIndexValues[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        mIndexKeys[slot] = pageId;
+        mIndexValues[slot] = position + 1;
+    }
+
+    private static int hash(long pageId) {
+        // Page ids are sequential, so spread them over the table.
+        long h = pageId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + mSize);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.motondon.tablayoutdemo;
+
+import android.support.annotation.LayoutRes;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of custom tab views, keyed by their layout. Views of removed tabs are put back here and reused for new tabs instead of inflating
+ * them again.
+ */
+public class TabViewPool {
+
+    // No point to keep more views than this per layout, since tabs are usually removed one or a few at a time.
+    private static final int MAX_POOL_SIZE_PER_LAYOUT = 16;
+
+    private final LayoutInflater mInflater;
+    private final SparseArray<ArrayDeque<View>> mPool = new SparseArray<>();
+
+    public TabViewPool(LayoutInflater inflater) {
+        mInflater = inflater;
+    }
+
+    /**
+     * Return a recycled view for the given layout, or inflate a new one if there is none.
+     *
+     * @param layoutId
+     * @param parent
+     * @return
+     */
+    public View obtain(@LayoutRes int layoutId, ViewGroup parent) {
+        ArrayDeque<View> views = mPool.get(layoutId);
+        if (views != null && !views.isEmpty()) {
+            return views.pop();
+        }
+        return mInflater.inflate(layoutId, parent, false);
+    }
+
+    /**
+     * Put back a view which is no longer used by any tab.
+     *
+     * @param layoutId
+     * @param view
+     */
+    public void release(@LayoutRes int layoutId, View view) {
+        if (view.getParent() instanceof ViewGroup) {
+            ((ViewGroup) view.getParent()).removeView(view);
+        }
+
+        ArrayDeque<View> views = mPool.get(layoutId);
+        if (views == null) {
+            views = new ArrayDeque<>();
+            mPool.put(layoutId, views);
+        }
+        if (views.size() < MAX_POOL_SIZE_PER_LAYOUT) {
+            views.push(view);
+        }
+    }
+
+    public void clear() {
+        mPool.clear();
+    }
+}
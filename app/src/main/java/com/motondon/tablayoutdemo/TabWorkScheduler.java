@@ -0,0 +1,346 @@
+package com.motondon.tablayoutdemo;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the background work of the pages (e.g.: loading or polling data) on a small pool of threads, giving priority to the work of the
+ * visible page, then to the pages next to it (which the user can swipe to), and only then to the offscreen ones.
+ *
+ * Each page has a priority (PRIORITY_VISIBLE, PRIORITY_ADJACENT or PRIORITY_OFFSCREEN), which is kept up to date by calling
+ * updatePriorities() whenever the selected page or the list of pages changes, and removePages() when pages are removed (see MainActivity).
+ * Only the pages around the selected one are passed, so this does not depend on the number of pages. Whenever a thread is free, it runs the
+ * oldest task of the pages with the highest priority. Work of offscreen pages is throttled: at most one such task runs every
+ * offscreenIntervalMs (or none at all, when it is negative, i.e.: they are paused until their page gets closer to the screen).
+ *
+ * Priorities are looked up when a task is about to run rather than when it is submitted, so a task submitted by an offscreen page runs
+ * first as soon as the user selects it.
+ *
+ * Fragments use it through BaseFragment.runInBackground(). This class does not depend on Android, so it can be tested on the JVM.
+ */
+public class TabWorkScheduler {
+
+    public static final int PRIORITY_VISIBLE = 0;
+    public static final int PRIORITY_ADJACENT = 1;
+    public static final int PRIORITY_OFFSCREEN = 2;
+
+    // Used by getDefault(). Offscreen pages may run a task every two seconds, which is enough for them to keep polling without competing with
+    // the visible page.
+    private static final int DEFAULT_THREAD_COUNT = 2;
+    private static final long DEFAULT_OFFSCREEN_INTERVAL_MS = 2000;
+
+    private static TabWorkScheduler sDefault;
+
+    /**
+     * A unit of work submitted to the scheduler. Cancelling it prevents it from running if it did not start yet.
+     */
+    public static final class Task {
+        private final long mPageId;
+        private final Object mOwner;
+        private final Runnable mWork;
+        private final long mSequence;
+        private volatile boolean mCancelled = false;
+
+        private Task(long pageId, Object owner, Runnable work, long sequence) {
+            mPageId = pageId;
+            mOwner = owner;
+            mWork = work;
+            mSequence = sequence;
+        }
+
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private final Object mLock = new Object();
+    private final long mOffscreenIntervalNanos;
+
+    // Pending tasks of each page, oldest first, and the priority of each page. Pages without a priority are offscreen.
+    private final Map<Long, ArrayDeque<Task>> mPendingTasks = new HashMap<>();
+    private final Map<Long, Integer> mPriorities = new HashMap<>();
+
+    private long mNextSequence = 0;
+    private long mLastOffscreenRunNanos = 0;
+    private boolean mShutdown = false;
+
+    /**
+     * Return the scheduler shared by all the pages. It lives as long as the process, since retained fragments keep their work across
+     * orientation changes.
+     *
+     * @return
+     */
+    public static synchronized TabWorkScheduler getDefault() {
+        if (sDefault == null) {
+            sDefault = new TabWorkScheduler(DEFAULT_THREAD_COUNT, DEFAULT_OFFSCREEN_INTERVAL_MS);
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param threadCount
+     * @param offscreenIntervalMs minimum time between two tasks of offscreen pages, or a negative value to pause them
+     */
+    public TabWorkScheduler(int threadCount, long offscreenIntervalMs) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        mOffscreenIntervalNanos = offscreenIntervalMs < 0 ? -1 : offscreenIntervalMs * 1000000L;
+
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runTasks();
+                }
+            }, "TabWorkScheduler-" + i);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+    }
+
+    /**
+     * Run the given work in the background on behalf of a page.
+     *
+     * @param pageId
+     * @param owner the object the work belongs to (e.g.: the fragment), so that all its work can be cancelled at once. See cancelAll().
+     * @param work
+     * @return
+     */
+    public Task submit(long pageId, Object owner, Runnable work) {
+        synchronized (mLock) {
+            if (mShutdown) {
+                throw new IllegalStateException("Scheduler was shut down");
+            }
+
+            Task task = new Task(pageId, owner, work, mNextSequence++);
+            ArrayDeque<Task> tasks = mPendingTasks.get(pageId);
+            if (tasks == null) {
+                tasks = new ArrayDeque<>();
+                mPendingTasks.put(pageId, tasks);
+            }
+            tasks.add(task);
+            mLock.notifyAll();
+            return task;
+        }
+    }
+
+    /**
+     * Cancel all pending tasks submitted by the given owner. Tasks already running are not interrupted.
+     *
+     * @param owner
+     */
+    public void cancelAll(Object owner) {
+        synchronized (mLock) {
+            Iterator<ArrayDeque<Task>> pages = mPendingTasks.values().iterator();
+            while (pages.hasNext()) {
+                ArrayDeque<Task> tasks = pages.next();
+                Iterator<Task> iterator = tasks.iterator();
+                while (iterator.hasNext()) {
+                    Task task = iterator.next();
+                    if (task.mOwner == owner) {
+                        task.cancel();
+                        iterator.remove();
+                    }
+                }
+                if (tasks.isEmpty()) {
+                    pages.remove();
+                }
+            }
+        }
+    }
+
+    public void setPriority(long pageId, int priority) {
+        synchronized (mLock) {
+            mPriorities.put(pageId, priority);
+            mLock.notifyAll();
+        }
+    }
+
+    public int getPriority(long pageId) {
+        synchronized (mLock) {
+            Integer priority = mPriorities.get(pageId);
+            return priority != null ? priority : PRIORITY_OFFSCREEN;
+        }
+    }
+
+    /**
+     * Set the priorities of the pages around the selected one: the selected page is visible and the given ones (e.g.: those within the
+     * offscreen page limit) are adjacent. Every other page is offscreen.
+     *
+     * @param visiblePageId page id of the selected page, or BaseFragment.NO_PAGE_ID if there is none
+     * @param adjacentPageIds
+     */
+    public void updatePriorities(long visiblePageId, Collection<Long> adjacentPageIds) {
+        synchronized (mLock) {
+            mPriorities.clear();
+            for (Long pageId : adjacentPageIds) {
+                mPriorities.put(pageId, PRIORITY_ADJACENT);
+            }
+            if (visiblePageId != BaseFragment.NO_PAGE_ID) {
+                mPriorities.put(visiblePageId, PRIORITY_VISIBLE);
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Cancel the pending tasks of the given pages, which were removed.
+     *
+     * @param pageIds
+     */
+    public void removePages(Collection<Long> pageIds) {
+        synchronized (mLock) {
+            for (Long pageId : pageIds) {
+                mPriorities.remove(pageId);
+                ArrayDeque<Task> tasks = mPendingTasks.remove(pageId);
+                if (tasks != null) {
+                    for (Task task : tasks) {
+                        task.cancel();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the priority of every page from its distance to the selected one: the selected page is visible and those within the offscreen page
+     * limit are adjacent. Pending tasks of pages which are not in the list any more are cancelled. This goes through every page, so use it when
+     * the whole list of pages was replaced, and the other updatePriorities() and removePages() otherwise.
+     *
+     * @param tabs
+     * @param selectedPosition
+     * @param offscreenPageLimit
+     */
+    public void updatePriorities(List<TabDescriptor> tabs, int selectedPosition, int offscreenPageLimit) {
+        synchronized (mLock) {
+            mPriorities.clear();
+            Set<Long> pageIds = new HashSet<>();
+            for (int i = 0; i < tabs.size(); i++) {
+                long pageId = tabs.get(i).getPageId();
+                pageIds.add(pageId);
+
+                int distance = Math.abs(i - selectedPosition);
+                if (distance == 0) {
+                    mPriorities.put(pageId, PRIORITY_VISIBLE);
+                } else if (distance <= offscreenPageLimit) {
+                    mPriorities.put(pageId, PRIORITY_ADJACENT);
+                }
+            }
+
+            Iterator<Map.Entry<Long, ArrayDeque<Task>>> iterator = mPendingTasks.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, ArrayDeque<Task>> entry = iterator.next();
+                if (!pageIds.contains(entry.getKey())) {
+                    for (Task task : entry.getValue()) {
+                        task.cancel();
+                    }
+                    iterator.remove();
+                }
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    public int getPendingTaskCount() {
+        synchronized (mLock) {
+            int count = 0;
+            for (ArrayDeque<Task> tasks : mPendingTasks.values()) {
+                count += tasks.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Stop all threads once they finish their current task. Pending tasks are dropped.
+     */
+    public void shutdown() {
+        synchronized (mLock) {
+            mShutdown = true;
+            mPendingTasks.clear();
+            mLock.notifyAll();
+        }
+    }
+
+    private void runTasks() {
+        while (true) {
+            Task task;
+            try {
+                task = takeNextTask();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == null) {
+                return;
+            }
+
+            if (!task.isCancelled()) {
+                task.mWork.run();
+            }
+        }
+    }
+
+    /**
+     * Wait for the next task to run, i.e.: the oldest pending task of the pages with the highest priority. Return null on shutdown.
+     */
+    private Task takeNextTask() throws InterruptedException {
+        synchronized (mLock) {
+            while (!mShutdown) {
+                ArrayDeque<Task> best = null;
+                int bestPriority = Integer.MAX_VALUE;
+                for (Map.Entry<Long, ArrayDeque<Task>> entry : mPendingTasks.entrySet()) {
+                    Integer priority = mPriorities.get(entry.getKey());
+                    int pagePriority = priority != null ? priority : PRIORITY_OFFSCREEN;
+                    if (pagePriority < bestPriority
+                            || (pagePriority == bestPriority && entry.getValue().peek().mSequence < best.peek().mSequence)) {
+                        best = entry.getValue();
+                        bestPriority = pagePriority;
+                    }
+                }
+
+                long waitNanos = 0;
+                if (best != null && bestPriority == PRIORITY_OFFSCREEN) {
+                    if (mOffscreenIntervalNanos < 0) {
+                        best = null;
+                    } else {
+                        long elapsed = System.nanoTime() - mLastOffscreenRunNanos;
+                        if (mLastOffscreenRunNanos != 0 && elapsed < mOffscreenIntervalNanos) {
+                            waitNanos = mOffscreenIntervalNanos - elapsed;
+                            best = null;
+                        } else {
+                            mLastOffscreenRunNanos = System.nanoTime();
+                        }
+                    }
+                }
+
+                if (best != null) {
+                    Task task = best.poll();
+                    if (best.isEmpty()) {
+                        mPendingTasks.remove(task.mPageId);
+                    }
+                    return task;
+                }
+
+                // Wait for new tasks or priority changes, or until offscreen pages may run again.
+                if (waitNanos > 0) {
+                    mLock.wait(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+                } else {
+                    mLock.wait();
+                }
+            }
+            return null;
+        }
+    }
+}
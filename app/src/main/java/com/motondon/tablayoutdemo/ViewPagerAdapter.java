@@ -1,21 +1,34 @@
 package com.motondon.tablayoutdemo;
 
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
-import android.support.v4.app.FragmentStatePagerAdapter;
+import android.support.v4.app.FragmentTransaction;
+import android.support.v4.util.LongSparseArray;
 import android.support.v4.view.PagerAdapter;
 import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.motondon.tablayoutdemo_part_2.BuildConfig;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by Joca on 4/6/2016.
  *
  * !!!!!!!!!!!!!!!!!IMPORTANT!!!!!!!!!!!!!!!!!!!!!!
- * Since we are updating viewPager dynamically (i.e.: by adding and removing tabs), WE MUST EXTEND FragmentStatePagerAdapter AND NOT
- * FragmentPagerAdapter. Also we must override getItemPosition() and return "PagerAdapter.POSITION_NONE" in order for the adapter to refresh
- * its data.
+ * Since we are updating viewPager dynamically (i.e.: by adding and removing tabs), WE MUST NOT USE FragmentPagerAdapter. This adapter
+ * works the same way FragmentStatePagerAdapter does (fragments are removed when they go offscreen and only their saved state is kept), but
+ * it tracks every page by a stable page id instead of by its position. See "Stable page ids" below.
  *
  * From the Documentation:
  *   - "When using FragmentPagerAdapter, the fragment of each page the user visits will be kept in memory,
@@ -39,90 +52,765 @@ import java.util.List;
  * after an orientation change. Note that we must add only those that were available before the orientation change, including the ones
  * user might have created dynamically and avoid those user might have deleted. There are basically two approaches to achieve our goal:
  *
- *    1o) Before calling super.onSaveInstanceState() we will retain a list of the fragment classes name and titles. Then destroy all fragments
- *        (thanks to the FragmentStatePagerAdapter which will not keep them). Note we need to keep the fully qualified class name since we will use
- *        reflection in order to reconstruct them. Then, recreate them on activity onCreate (using reflection) and if one of the items is an instance
+ *    1o) Before calling super.onSaveInstanceState() we will retain a list of the fragment type keys and titles. Then destroy all fragments
+ *        (thanks to the FragmentStatePagerAdapter which will not keep them). Note we need to keep the type key since we will use the FragmentFactory
+ *        in order to reconstruct them. Then, recreate them on activity onCreate (using FragmentFactory) and if one of the items is an instance
  *        of GenericFragment (i.e.: a fragment which was added dynamically and not those ones added at the app startup), we need also to set its title,
  *        since it can be something like "Generic 1", "Generic 2" , etc (and not a constant name).
  *
- *    2o) Save a list of current fragments on onSaveInstanceState() and add them back to the adapter on activity onCreate(). For this to work we need all
- *        fragments to be marked with setRetainInstance(true).
+ *    2o) Keep the current fragments on onSaveInstanceState() and add them back to the adapter on activity onCreate(). For this to work we need all
+ *        fragments to be marked with setRetainInstance(true), so that the FragmentManager retains the live ones and we can look them up by their tags.
+ *
+ *    For both approaches the list of tabs itself is saved as a TabStateSnapshot.
  *
  *    The difference from both approaches is that the first one is supposed to use more memory during the orientation change (since we are holding all
  *    fragment instances), but will be faster when adding them back to the adapter. On the other hand, the second approach will use much less memory
- *    (once we are storing only the fragments classes names) at the cost of more overhead when recreating them (we need to recreate all fragments by
- *    using reflection).
+ *    (once we are storing only the fragments type keys) at the cost of more overhead when recreating them (we need to recreate all fragments).
  *
  *    Using one or another depends on the requirements of your app, for example how many fragments a viewPager contains. If we are dealing with a huge
- *    number of fragment, maybe the first one may not be a good choice. 
+ *    number of fragment, maybe the first one may not be a good choice. See OrientationChangeBenchmark (androidTest), which measures both of them.
  *
  *    Note: These two approaches were taken from this great SO question:
  *    http://stackoverflow.com/questions/7951730/viewpager-and-fragments-whats-the-right-way-to-store-fragments-state?rq=1
  *
+ * ----------------------------------------
+ *
+ * Stable page ids
+ *
+ * Returning "PagerAdapter.POSITION_NONE" from getItemPosition() for every page makes the ViewPager destroy and recreate all live fragments
+ * (and re-inflate their views) whenever a single tab is added or removed. Instead, each page has a page id (see TabDescriptor and
+ * BaseFragment.getPageId()), and getItemPosition() returns the page's current index, or POSITION_NONE only when that page was
+ * removed. This is why we cannot extend FragmentStatePagerAdapter: it keeps live fragments and saved states in lists indexed by position,
+ * which get out of sync as soon as a page changes its position. Here both are keyed by page id.
+ *
+ * ----------------------------------------
+ *
+ * Lazy pages
+ *
+ * The adapter does not hold a fragment for each tab, but a row in a TabTable (page id, type, title and icon). Fragments are created by the
+ * FragmentFactory in getItem(), only when the viewPager asks for that page, and are dropped (keeping only their saved state) when they go
+ * offscreen. Saved states are kept in a SavedStateCache, which has a byte budget: when it is exceeded, the states of the least recently used
+ * pages are compressed and then dropped.
+ *
+ * ----------------------------------------
+ *
+ * Page retention
+ *
+ * By default (see PageRetentionPolicy.DEFAULT) pages which go offscreen are removed and only their saved state is kept. A retention policy
+ * with a hot page count keeps the most recently used of them hidden instead (with their views), so that swiping back to them is cheap. They
+ * are dropped, least recently used first, when there are more than the policy allows or when trimHotPages() is called on memory pressure.
+ *
+ * ----------------------------------------
+ *
+ * Prefetching
+ *
+ * A page can be created before the viewPager asks for it (see prefetchPage()), e.g.: when the user starts swiping towards it or touches its
+ * tab (see PagePrefetcher class). Its fragment is kept aside, without being added, and instantiateItem() uses it instead of creating a new
+ * one. Prefetched pages which are not used must be cancelled, which lets the fragment stop loading its data.
+ *
+ * ----------------------------------------
+ *
+ * Batched mutations
+ *
+ * Each call to addTabPage(), removeTabPage(), moveTabPage() and setPages() notifies the viewPager (and the tab strip, which updates its tabs).
+ * When many tabs change at once, wrap the calls between beginBatch() and commitBatch(), so that observers are notified only once and the
+ * viewPager updates its pages in a single fragment transaction:
+ *
+ *     adapter.beginBatch();
+ *     try {
+ *         adapter.addTabPage(...);
+ *         adapter.removeTabPage(...);
+ *     } finally {
+ *         adapter.commitBatch();
+ *     }
+ *
+ * Besides the data set observers, TabChangeListeners are told which tabs changed, as a TabListDiff of the operations applied since the last
+ * notification (those of applyDiff() as they are, and one for each other call). So, the tab strips (see TabStripBinder) never need to
+ * compare the whole list of tabs on the main thread to find out what changed.
+ *
+ * ----------------------------------------
+ *
+ * Leak detection
+ *
+ * Every fragment removed by this adapter is handed to the FragmentLeakWatcher (when installed, i.e.: in debug builds), which reports the
+ * ones that are still reachable after a while. This adapter is the RetentionInspector for them: see findReferencesTo().
+ *
  */
-public class ViewPagerAdapter extends FragmentStatePagerAdapter {
+public class ViewPagerAdapter extends PagerAdapter implements FragmentLeakWatcher.RetentionInspector {
     private final static String TAG = ViewPagerAdapter.class.getSimpleName();
 
-    private final List<Fragment> mTabItems = new ArrayList<>();
-    private final List<String> mTabTitle = new ArrayList<>();
+    public interface TabChangeListener {
+        /**
+         * Called after the data set observers, each time they are notified.
+         *
+         * @param diff the operations applied to the tabs since the last call, or null if the tabs were replaced as a whole (see setPages()),
+         *             in which case they must be read again with getTabDescriptors()
+         */
+        void onTabsChanged(@Nullable TabListDiff diff);
+    }
+
+    // Keys used by saveState()/restoreState()
+    private static final String STATE_SAVED_STATES = "STATE_SAVED_STATES";
+    private static final String STATE_ACTIVE_PAGE_PREFIX = "page:";
+    private static final String STATE_HOT_PAGE_PREFIX = "hot:";
+
+    private final FragmentManager mFragmentManager;
+    private FragmentTransaction mCurTransaction = null;
+    private Fragment mCurrentPrimaryItem = null;
+
+    // The tabs, as a table of primitive columns with a page id to position index. See TabTable class.
+    private final TabTable mTabs = new TabTable();
+
+    // Default budget of the saved states of the pages which are not instantiated. See SavedStateCache class.
+    public static final int DEFAULT_SAVED_STATE_BUDGET_BYTES = 256 * 1024;
+
+    // Fragments currently instantiated by the viewPager and the saved state of those that were destroyed, both keyed by page id.
+    private final LongSparseArray<Fragment> mActivePages = new LongSparseArray<>();
+    private final SavedStateCache mSavedState;
+
+    // Pages out of the offscreen limit which were kept hidden instead of being removed (see PageRetentionPolicy), least recently used first.
+    private final LinkedHashMap<Long, Fragment> mHotPages = new LinkedHashMap<>(16, 0.75f, true);
+    private PageRetentionPolicy mRetentionPolicy = PageRetentionPolicy.DEFAULT;
+
+    // Fragments created ahead of time by prefetchPage(), not added to the FragmentManager yet. See PagePrefetcher class.
+    private final LongSparseArray<Fragment> mPrefetchedPages = new LongSparseArray<>();
+
+    // Used by beginBatch()/commitBatch(). While a batch is open, notifyDataSetChanged() only records there is something to notify.
+    private int mBatchDepth = 0;
+    private boolean mBatchChanged = false;
+
+    // Operations applied to mTabs since the last notification, handed to the TabChangeListeners. When the tabs are replaced as a whole, they
+    // are dropped and mTabsReplaced is set instead.
+    private final List<TabListDiff.Op> mPendingOps = new ArrayList<>();
+    private boolean mTabsReplaced = false;
+    private final List<TabChangeListener> mTabChangeListeners = new ArrayList<>();
 
     public ViewPagerAdapter(FragmentManager manager) {
-        super(manager);
+        this(manager, new SavedStateCache(DEFAULT_SAVED_STATE_BUDGET_BYTES, true));
     }
 
-    @Override
+    public ViewPagerAdapter(FragmentManager manager, SavedStateCache savedStateCache) {
+        mFragmentManager = manager;
+        mSavedState = savedStateCache;
+    }
+
+    /**
+     * Create the fragment for the given position. Called by instantiateItem() only when that page is not instantiated yet.
+     *
+     * @param position
+     * @return
+     */
     public Fragment getItem(int position) {
-        return mTabItems.get(position);
+        return FragmentFactory.newFragment(mTabs.getDescriptor(position));
     }
 
     @Override
     public int getCount() {
-        return mTabItems.size();
+        return mTabs.size();
     }
 
     @Override
     public CharSequence getPageTitle(int position) {
-        return mTabTitle.get(position);
+        return mTabs.getTitle(position);
+    }
+
+    @Override
+    public Object instantiateItem(ViewGroup container, int position) {
+        long pageId = mTabs.getPageId(position);
+
+        // If this page is already instantiated, there is nothing to do.
+        Fragment fragment = mActivePages.get(pageId);
+        if (fragment != null) {
+            return fragment;
+        }
+
+        if (mCurTransaction == null) {
+            mCurTransaction = mFragmentManager.beginTransaction();
+        }
+
+        // If it was kept hot, just show it again. Its view was never destroyed.
+        fragment = mHotPages.remove(pageId);
+        if (fragment != null) {
+            mActivePages.put(pageId, fragment);
+            mCurTransaction.show(fragment);
+            TabMetrics.count(TabMetrics.HOT_PAGE_REUSED);
+            return fragment;
+        }
+
+        // If it was prefetched, its data is (being) loaded already. Otherwise create it now.
+        fragment = mPrefetchedPages.get(pageId);
+        if (fragment != null) {
+            mPrefetchedPages.remove(pageId);
+            TabMetrics.count(TabMetrics.PREFETCH_USED);
+        } else {
+            fragment = getItem(position);
+            TabMetrics.count(TabMetrics.FRAGMENT_CREATED);
+        }
+        Fragment.SavedState savedState = mSavedState.take(pageId);
+        if (savedState != null) {
+            fragment.setInitialSavedState(savedState);
+        }
+        fragment.setMenuVisibility(false);
+        fragment.setUserVisibleHint(false);
+
+        mActivePages.put(pageId, fragment);
+        mCurTransaction.add(container.getId(), fragment, makeFragmentTag(pageId));
+
+        return fragment;
+    }
+
+    @Override
+    public void destroyItem(ViewGroup container, int position, Object object) {
+        Fragment fragment = (Fragment) object;
+        long pageId = ((BaseFragment) fragment).getPageId();
+
+        // This happens after removeAllFragments(), which already removed the fragment and kept its state.
+        if (mActivePages.get(pageId) != fragment) {
+            return;
+        }
+
+        if (mCurTransaction == null) {
+            mCurTransaction = mFragmentManager.beginTransaction();
+        }
+
+        mActivePages.remove(pageId);
+
+        // Note that position might be stale here (e.g.: when the page was removed). So, only keep the pages that are still in the adapter.
+        boolean stillInAdapter = indexOfPage(pageId) >= 0;
+        if (stillInAdapter && fragment.isAdded() && mRetentionPolicy.getHotPageCount() > 0) {
+            // Hide it instead of removing it. The viewPager skips views which are gone, so it is not in the way.
+            fragment.setMenuVisibility(false);
+            fragment.setUserVisibleHint(false);
+            mHotPages.put(pageId, fragment);
+            mCurTransaction.hide(fragment);
+            trimHotPages(mRetentionPolicy.getHotPageCount(), mCurTransaction);
+            return;
+        }
+
+        removePage(pageId, fragment, stillInAdapter, mCurTransaction);
+    }
+
+    @Override
+    public void setPrimaryItem(ViewGroup container, int position, Object object) {
+        Fragment fragment = (Fragment) object;
+        if (fragment != mCurrentPrimaryItem) {
+            if (mCurrentPrimaryItem != null) {
+                mCurrentPrimaryItem.setMenuVisibility(false);
+                mCurrentPrimaryItem.setUserVisibleHint(false);
+            }
+            if (fragment != null) {
+                fragment.setMenuVisibility(true);
+                fragment.setUserVisibleHint(true);
+            }
+            mCurrentPrimaryItem = fragment;
+        }
+    }
+
+    @Override
+    public void startUpdate(ViewGroup container) {
+        if (container.getId() == View.NO_ID) {
+            throw new IllegalStateException("ViewPager with adapter " + this + " requires a view id");
+        }
+    }
+
+    @Override
+    public void finishUpdate(ViewGroup container) {
+        if (mCurTransaction != null) {
+            mCurTransaction.commitNowAllowingStateLoss();
+            mCurTransaction = null;
+        }
+    }
+
+    @Override
+    public boolean isViewFromObject(View view, Object object) {
+        return ((Fragment) object).getView() == view;
     }
 
     /**
-     * This is called when notifyDataSetChanged() is called. Without this, getItem() is not triggered
+     * This is called when notifyDataSetChanged() is called. Return the current index of the page, so that the viewPager only destroys
+     * the pages that were actually removed and keeps all the others (even when their position changed).
      *
      * @param object
      * @return
      */
     @Override
     public int getItemPosition(Object object) {
-        Log.d(TAG, "getItemPosition() - object: " + ((BaseFragment)object).getFragmentName());
-        // refresh all fragments when data set changed
-        return PagerAdapter.POSITION_NONE;
+        int position = indexOfPage(((BaseFragment) object).getPageId());
+        return position >= 0 ? position : PagerAdapter.POSITION_NONE;
     }
 
-    public void addTabPage(BaseFragment fragment) {
-        Log.d(TAG, "addTabPage() - Adding fragment: " + fragment.getFragmentName());
+    /**
+     * While a batch is open (see beginBatch()), notifications are deferred until the outermost commitBatch() call.
+     */
+    @Override
+    public void notifyDataSetChanged() {
+        if (mBatchDepth > 0) {
+            mBatchChanged = true;
+            return;
+        }
 
-        mTabItems.add(fragment);
-        mTabTitle.add(fragment.getFragmentName());
+        // Prefetched pages which were removed will never be used.
+        for (int i = mPrefetchedPages.size() - 1; i >= 0; i--) {
+            if (indexOfPage(mPrefetchedPages.keyAt(i)) < 0) {
+                cancelPrefetchAt(i);
+            }
+        }
+
+        // The viewPager does not know about hot pages, so it will never destroy them. Do it here for those which were removed.
+        if (!mHotPages.isEmpty()) {
+            FragmentTransaction transaction = null;
+            Iterator<Map.Entry<Long, Fragment>> iterator = mHotPages.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Fragment> entry = iterator.next();
+                if (indexOfPage(entry.getKey()) < 0) {
+                    if (transaction == null) {
+                        transaction = mFragmentManager.beginTransaction();
+                    }
+                    iterator.remove();
+                    removePage(entry.getKey(), entry.getValue(), false, transaction);
+                }
+            }
+            if (transaction != null) {
+                transaction.commitNowAllowingStateLoss();
+            }
+        }
+
+        TabMetrics.count(TabMetrics.ADAPTER_NOTIFIED);
+        super.notifyDataSetChanged();
+
+        TabListDiff diff = mTabsReplaced ? null : new TabListDiff(new ArrayList<>(mPendingOps));
+        mPendingOps.clear();
+        mTabsReplaced = false;
+        for (int i = 0; i < mTabChangeListeners.size(); i++) {
+            mTabChangeListeners.get(i).onTabsChanged(diff);
+        }
+    }
+
+    public void addTabChangeListener(TabChangeListener listener) {
+        mTabChangeListeners.add(listener);
+    }
+
+    public void removeTabChangeListener(TabChangeListener listener) {
+        mTabChangeListeners.remove(listener);
+    }
+
+    /**
+     * Record an operation applied to mTabs, for the TabChangeListeners.
+     *
+     * @param type
+     * @param fromPosition
+     * @param toPosition
+     * @param tab
+     */
+    private void recordOp(int type, int fromPosition, int toPosition, TabDescriptor tab) {
+        if (!mTabsReplaced) {
+            mPendingOps.add(new TabListDiff.Op(type, fromPosition, toPosition, tab));
+        }
+    }
+
+    private void recordTabsReplaced() {
+        mTabsReplaced = true;
+        mPendingOps.clear();
+    }
+
+    /**
+     * Create the fragment of the given page ahead of time and let it start loading its data (see BaseFragment.onPrefetch()), so that it is
+     * ready by the time the viewPager instantiates it. Does nothing if the page already has a fragment (live, hot or prefetched).
+     *
+     * The fragment is not added to the FragmentManager until instantiateItem() is called for that page. If that does not happen, call
+     * cancelPrefetch() or cancelPrefetches().
+     *
+     * @param context used by the fragment to load its data, since it is not attached yet
+     * @param position
+     * @return true if the page was prefetched by this call
+     */
+    public boolean prefetchPage(Context context, int position) {
+        if (position < 0 || position >= mTabs.size()) {
+            return false;
+        }
+
+        long pageId = mTabs.getPageId(position);
+        if (mActivePages.get(pageId) != null || mHotPages.containsKey(pageId) || mPrefetchedPages.get(pageId) != null) {
+            return false;
+        }
+
+        if (BuildConfig.DEBUG) Log.d(TAG, "prefetchPage() - Prefetching page " + pageId + " at position " + position);
+        Fragment fragment = getItem(position);
+        TabMetrics.count(TabMetrics.FRAGMENT_CREATED);
+        mPrefetchedPages.put(pageId, fragment);
+        if (fragment instanceof BaseFragment) {
+            ((BaseFragment) fragment).onPrefetch(context.getApplicationContext());
+        }
+        return true;
+    }
+
+    /**
+     * Cancel the prefetch of the given page, if it was prefetched and not used yet.
+     *
+     * @param position
+     */
+    public void cancelPrefetch(int position) {
+        if (position < 0 || position >= mTabs.size()) {
+            return;
+        }
+
+        int index = mPrefetchedPages.indexOfKey(mTabs.getPageId(position));
+        if (index >= 0) {
+            cancelPrefetchAt(index);
+        }
+    }
+
+    /**
+     * Cancel all prefetched pages which were not used yet.
+     */
+    public void cancelPrefetches() {
+        for (int i = mPrefetchedPages.size() - 1; i >= 0; i--) {
+            cancelPrefetchAt(i);
+        }
+    }
+
+    public int getPrefetchedPageCount() {
+        return mPrefetchedPages.size();
+    }
+
+    private void cancelPrefetchAt(int index) {
+        long pageId = mPrefetchedPages.keyAt(index);
+        Fragment fragment = mPrefetchedPages.valueAt(index);
+        mPrefetchedPages.removeAt(index);
+
+        if (BuildConfig.DEBUG) Log.d(TAG, "cancelPrefetchAt() - Cancelling prefetch of page " + pageId);
+        if (fragment instanceof BaseFragment) {
+            ((BaseFragment) fragment).onPrefetchCancelled();
+        }
+        TabMetrics.count(TabMetrics.PREFETCH_CANCELLED);
+        FragmentLeakWatcher.watch(fragment, fragment.getClass().getSimpleName() + " (prefetched page id " + pageId + ")", this);
+    }
+
+    /**
+     * Set how many pages keep their views alive. Note the offscreen page limit must be given to the viewPager as well.
+     *
+     * @param policy
+     */
+    public void setRetentionPolicy(PageRetentionPolicy policy) {
+        mRetentionPolicy = policy;
+        trimHotPages(policy.getHotPageCount());
+    }
+
+    public PageRetentionPolicy getRetentionPolicy() {
+        return mRetentionPolicy;
+    }
+
+    /**
+     * Drop the least recently used hot pages (keeping only their saved state) until there are at most maxHotPages of them. Called on
+     * memory pressure (see PageRetentionPolicy.getHotPageCount(int)).
+     *
+     * @param maxHotPages
+     */
+    public void trimHotPages(int maxHotPages) {
+        if (mHotPages.size() <= maxHotPages) {
+            return;
+        }
+
+        if (BuildConfig.DEBUG) Log.d(TAG, "trimHotPages() - Trimming " + (mHotPages.size() - maxHotPages) + " hot page(s)");
+
+        FragmentTransaction transaction = mFragmentManager.beginTransaction();
+        trimHotPages(maxHotPages, transaction);
+        transaction.commitNowAllowingStateLoss();
+    }
+
+    /**
+     * Return the cache of the saved states of the pages which are not instantiated, e.g.: in order to check its hit/miss/eviction counters.
+     *
+     * @return
+     */
+    public SavedStateCache getSavedStateCache() {
+        return mSavedState;
+    }
+
+    /**
+     * Return the number of pages currently kept hot.
+     *
+     * @return
+     */
+    public int getHotPageCount() {
+        return mHotPages.size();
+    }
+
+    private void trimHotPages(int maxHotPages, FragmentTransaction transaction) {
+        Iterator<Map.Entry<Long, Fragment>> iterator = mHotPages.entrySet().iterator();
+        while (mHotPages.size() > maxHotPages && iterator.hasNext()) {
+            Map.Entry<Long, Fragment> entry = iterator.next();
+            iterator.remove();
+            removePage(entry.getKey(), entry.getValue(), true, transaction);
+        }
+    }
+
+    /**
+     * Remove the fragment of a page, keeping its saved state if the page is still in the adapter.
+     */
+    private void removePage(long pageId, Fragment fragment, boolean keepState, FragmentTransaction transaction) {
+        if (keepState && fragment.isAdded()) {
+            mSavedState.put(pageId, mFragmentManager.saveFragmentInstanceState(fragment));
+        } else {
+            mSavedState.remove(pageId);
+        }
+        transaction.remove(fragment);
+        forgetRemovedFragment(pageId, fragment);
+    }
+
+    /**
+     * Make sure we do not keep a removed fragment as the primary item (the viewPager only replaces it when another page becomes the primary
+     * one) and ask the FragmentLeakWatcher to check it is garbage collected.
+     */
+    private void forgetRemovedFragment(long pageId, Fragment fragment) {
+        if (fragment == mCurrentPrimaryItem) {
+            mCurrentPrimaryItem = null;
+        }
+        FragmentLeakWatcher.watch(fragment, fragment.getClass().getSimpleName() + " (page id " + pageId + ")", this);
+    }
+
+    /**
+     * Called by the FragmentLeakWatcher when a removed fragment was not garbage collected. Return the references to it we know about. An
+     * empty list means the fragment is held by something else (e.g.: a listener registered and never unregistered, a background task, a
+     * static field), which the heap dump will tell.
+     *
+     * @param object
+     * @return
+     */
+    @Override
+    public List<String> findReferencesTo(Object object) {
+        List<String> references = new ArrayList<>();
+        if (!(object instanceof Fragment)) {
+            return references;
+        }
+        Fragment fragment = (Fragment) object;
+
+        for (int i = 0; i < mActivePages.size(); i++) {
+            if (mActivePages.valueAt(i) == fragment) {
+                references.add("ViewPagerAdapter.mActivePages (page id " + mActivePages.keyAt(i) + ")");
+            }
+        }
+        for (Map.Entry<Long, Fragment> entry : mHotPages.entrySet()) {
+            if (entry.getValue() == fragment) {
+                references.add("ViewPagerAdapter.mHotPages (page id " + entry.getKey() + ")");
+            }
+        }
+        for (int i = 0; i < mPrefetchedPages.size(); i++) {
+            if (mPrefetchedPages.valueAt(i) == fragment) {
+                references.add("ViewPagerAdapter.mPrefetchedPages (page id " + mPrefetchedPages.keyAt(i) + ")");
+            }
+        }
+        if (fragment == mCurrentPrimaryItem) {
+            references.add("ViewPagerAdapter.mCurrentPrimaryItem");
+        }
+        if (fragment.isAdded()) {
+            references.add("FragmentManager: still added (tag " + fragment.getTag() + ")");
+        } else if (fragment.getTag() != null && mFragmentManager.findFragmentByTag(fragment.getTag()) == fragment) {
+            references.add("FragmentManager: still active (tag " + fragment.getTag() + ")");
+        }
+        if (fragment.getRetainInstance()) {
+            references.add("FragmentManager: retained instance (setRetainInstance(true))");
+        }
+        View view = fragment.getView();
+        if (view != null && view.getParent() != null) {
+            references.add("Fragment view still attached to " + view.getParent().getClass().getSimpleName());
+        }
+        return references;
+    }
+
+    /**
+     * Start grouping mutations. Calls can be nested, and observers will be notified once, when the outermost batch is committed.
+     */
+    public void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * Finish a batch started by beginBatch(). If this is the outermost one and anything changed, notify the observers once.
+     */
+    public void commitBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("commitBatch() called without a matching beginBatch()");
+        }
+
+        mBatchDepth--;
+        if (mBatchDepth == 0 && mBatchChanged) {
+            mBatchChanged = false;
+            notifyDataSetChanged();
+        }
+    }
+
+    public boolean isInBatch() {
+        return mBatchDepth > 0;
+    }
+
+    @Override
+    public Parcelable saveState() {
+        Bundle state = null;
+
+        if (mSavedState.size() > 0) {
+            state = new Bundle();
+            Bundle savedStates = new Bundle();
+            mSavedState.writeToBundle(savedStates);
+            state.putBundle(STATE_SAVED_STATES, savedStates);
+        }
+
+        for (int i = 0; i < mActivePages.size(); i++) {
+            Fragment fragment = mActivePages.valueAt(i);
+            if (fragment.isAdded()) {
+                if (state == null) {
+                    state = new Bundle();
+                }
+                mFragmentManager.putFragment(state, STATE_ACTIVE_PAGE_PREFIX + mActivePages.keyAt(i), fragment);
+            }
+        }
+
+        for (Map.Entry<Long, Fragment> entry : mHotPages.entrySet()) {
+            if (entry.getValue().isAdded()) {
+                if (state == null) {
+                    state = new Bundle();
+                }
+                mFragmentManager.putFragment(state, STATE_HOT_PAGE_PREFIX + entry.getKey(), entry.getValue());
+            }
+        }
+
+        return state;
+    }
+
+    @Override
+    public void restoreState(Parcelable state, ClassLoader loader) {
+        if (state == null) {
+            return;
+        }
+
+        Bundle bundle = (Bundle) state;
+        bundle.setClassLoader(loader);
+
+        mSavedState.clear();
+        mActivePages.clear();
+        mHotPages.clear();
+
+        Bundle savedStates = bundle.getBundle(STATE_SAVED_STATES);
+        if (savedStates != null) {
+            savedStates.setClassLoader(loader);
+            mSavedState.readFromBundle(savedStates);
+        }
+
+        for (String key : bundle.keySet()) {
+            if (key.startsWith(STATE_ACTIVE_PAGE_PREFIX)) {
+                long pageId = Long.parseLong(key.substring(STATE_ACTIVE_PAGE_PREFIX.length()));
+                Fragment fragment = mFragmentManager.getFragment(bundle, key);
+                if (fragment != null) {
+                    fragment.setMenuVisibility(false);
+                    mActivePages.put(pageId, fragment);
+                } else {
+                    Log.w(TAG, "restoreState() - Bad fragment for page id: " + pageId);
+                }
+            } else if (key.startsWith(STATE_HOT_PAGE_PREFIX)) {
+                // Hot pages are restored hidden by the FragmentManager, so they only need to be tracked again.
+                long pageId = Long.parseLong(key.substring(STATE_HOT_PAGE_PREFIX.length()));
+                Fragment fragment = mFragmentManager.getFragment(bundle, key);
+                if (fragment != null) {
+                    fragment.setMenuVisibility(false);
+                    mHotPages.put(pageId, fragment);
+                }
+            }
+        }
+    }
+
+    public void addTabPage(TabDescriptor tab) {
+        if (BuildConfig.DEBUG) Log.d(TAG, "addTabPage() - Adding tab: " + tab.getTitle());
+
+        mTabs.add(tab);
+        recordOp(TabListDiff.INSERT, mTabs.size() - 1, mTabs.size() - 1, tab);
         notifyDataSetChanged();
     }
 
     public void removeTabPage(int position) {
-        if (!mTabItems.isEmpty() && position< mTabItems.size()) {
-            Log.d(TAG, "removeTabPage() - Removing tab at position: " + position);
+        if (!mTabs.isEmpty() && position< mTabs.size()) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "removeTabPage() - Removing tab at position: " + position);
 
-            mTabItems.remove(position);
-            mTabTitle.remove(position);
+            TabDescriptor tab = mTabs.getDescriptor(position);
+            mTabs.remove(position);
+            recordOp(TabListDiff.REMOVE, position, position, tab);
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Apply the operations calculated by a TabListModel. All of them are applied in a single batch, so observers are notified only once.
+     *
+     * @param diff
+     */
+    public void applyDiff(TabListDiff diff) {
+        beginBatch();
+        try {
+            mTabs.apply(diff);
+            if (!mTabsReplaced) {
+                mPendingOps.addAll(diff.getOps());
+            }
             notifyDataSetChanged();
+        } finally {
+            commitBatch();
         }
     }
 
     /**
-     * Used when ORIENTATION_CHANGE_METHOD flag is RETAIN_FRAGMENT
+     * Move a page to another position. Since pages are tracked by their page id, the fragment (and its view, if any) is kept.
+     *
+     * @param fromPosition
+     * @param toPosition
+     */
+    public void moveTabPage(int fromPosition, int toPosition) {
+        if (fromPosition == toPosition || fromPosition < 0 || fromPosition >= mTabs.size() || toPosition < 0 || toPosition >= mTabs.size()) {
+            return;
+        }
+
+        if (BuildConfig.DEBUG) Log.d(TAG, "moveTabPage() - Moving tab from position: " + fromPosition + " to position: " + toPosition);
+
+        mTabs.move(fromPosition, toPosition);
+        recordOp(TabListDiff.MOVE, fromPosition, toPosition, mTabs.getDescriptor(toPosition));
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Build a snapshot of the current pages in order to save it on onSaveInstanceState(). Used for both RETAIN_FRAGMENT and RECREATE_FRAGMENT
+     * orientation change methods.
+     *
+     * @param selectedIndex
+     * @return
+     */
+    public TabStateSnapshot getSnapshot(int selectedIndex) {
+        return mTabs.toSnapshot(selectedIndex);
+    }
+
+    /**
+     * Return the descriptor of the page at the given position. It is built from its row of the TabTable on each call (rather than from the
+     * whole list, which is built again after each change), so callers which only need one field should rather use getPageId(),
+     * getPageTypeKey() or getPageTitle().
+     *
+     * @param position
+     * @return
+     */
+    public TabDescriptor getTabDescriptor(int position) {
+        return mTabs.getDescriptor(position);
+    }
+
+    /**
+     * Return the descriptors of all pages, in their current order. The list is a snapshot: later changes are not reflected in it.
      *
      * @return
      */
-    public List<Fragment> getPages() {
-        return mTabItems;
+    public List<TabDescriptor> getTabDescriptors() {
+        return mTabs.asDescriptorList();
+    }
+
+    public long getPageId(int position) {
+        return mTabs.getPageId(position);
+    }
+
+    public String getPageTypeKey(int position) {
+        return mTabs.getTypeKey(position);
     }
 
     /**
@@ -130,49 +818,108 @@ public class ViewPagerAdapter extends FragmentStatePagerAdapter {
      *
      * @param pages
      */
-    public void setPages(List<Fragment> pages) {
-        this.mTabItems.addAll(pages);
-        for (Fragment fragment : pages) {
-            mTabTitle.add(((BaseFragment)fragment).getFragmentName());
-        }
+    public void setPages(List<TabDescriptor> pages) {
+        this.mTabs.addAll(pages);
+        recordTabsReplaced();
         notifyDataSetChanged();
     }
 
     /**
-     *  Used when ORIENTATION_CHANGE_METHOD flag is RECREATE_FRAGMENT
+     *  Used when the orientation change method is RECREATE_FRAGMENT (see MainActivity.getOrientationChangeMethod())
      *
      * @param supportFragmentManager
      */
     public void removeAllFragments(FragmentManager supportFragmentManager) {
-        if ( mTabItems != null ) {
-            for ( Fragment fragment : mTabItems ) {
-                supportFragmentManager.beginTransaction().remove(fragment).commit();
+        if ( mTabs != null ) {
+            // Remove all of them in a single transaction instead of committing one transaction per fragment. Pages will be recreated
+            // with the same page ids (see TabStateSnapshot), so keep the state of the live ones, as we do when they go offscreen.
+            FragmentTransaction transaction = supportFragmentManager.beginTransaction();
+            for (int i = 0; i < mActivePages.size(); i++) {
+                Fragment fragment = mActivePages.valueAt(i);
+                if (fragment.isAdded()) {
+                    mSavedState.put(mActivePages.keyAt(i), supportFragmentManager.saveFragmentInstanceState(fragment));
+                }
+                transaction.remove(fragment);
+                forgetRemovedFragment(mActivePages.keyAt(i), fragment);
+            }
+            for (Map.Entry<Long, Fragment> entry : mHotPages.entrySet()) {
+                removePage(entry.getKey(), entry.getValue(), true, transaction);
             }
-            mTabItems.clear();
+            transaction.commit();
+            cancelPrefetches();
+
+            mTabs.clear();
+            recordTabsReplaced();
+            mActivePages.clear();
+            mHotPages.clear();
             notifyDataSetChanged();
         }
     }
 
     /**
-     * Used when ORIENTATION_CHANGE_METHOD flag is RECREATE_FRAGMENT
+     * Return the descriptors of the pages which currently have a fragment, i.e.: the live pages and the hot ones.
      *
      * @return
      */
-    public List<String> getPagesClassName() {
-        List<String> fragmentNames = new ArrayList<>();
-        for (Fragment fragment : mTabItems) {
-            fragmentNames.add(fragment.getClass().getName());
+    public List<TabDescriptor> getInstantiatedPages() {
+        List<TabDescriptor> pages = new ArrayList<>();
+        for (int i = 0; i < mTabs.size(); i++) {
+            long pageId = mTabs.getPageId(i);
+            if (mActivePages.get(pageId) != null || mHotPages.containsKey(pageId)) {
+                pages.add(mTabs.getDescriptor(i));
+            }
+        }
+        return pages;
+    }
+
+    /**
+     *  Used when the orientation change method is ADAPTIVE. The fragments of the given pages are retained (see setRetainInstance()), while
+     *  all the others are removed, keeping their saved state, so that they are recreated by the FragmentFactory after the orientation change.
+     *
+     * @param supportFragmentManager
+     * @param retainedPageIds
+     */
+    public void retainPagesForOrientationChange(FragmentManager supportFragmentManager, Set<Long> retainedPageIds) {
+        FragmentTransaction transaction = supportFragmentManager.beginTransaction();
 
+        for (int i = mActivePages.size() - 1; i >= 0; i--) {
+            long pageId = mActivePages.keyAt(i);
+            Fragment fragment = mActivePages.valueAt(i);
+            if (retainedPageIds.contains(pageId)) {
+                fragment.setRetainInstance(true);
+            } else {
+                fragment.setRetainInstance(false);
+                removePage(pageId, fragment, true, transaction);
+                mActivePages.removeAt(i);
+            }
         }
-        return fragmentNames;
+
+        Iterator<Map.Entry<Long, Fragment>> iterator = mHotPages.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Fragment> entry = iterator.next();
+            if (retainedPageIds.contains(entry.getKey())) {
+                entry.getValue().setRetainInstance(true);
+            } else {
+                entry.getValue().setRetainInstance(false);
+                removePage(entry.getKey(), entry.getValue(), true, transaction);
+                iterator.remove();
+            }
+        }
+
+        transaction.commitNowAllowingStateLoss();
     }
 
     /**
-     * Used when ORIENTATION_CHANGE_METHOD flag is RECREATE_FRAGMENT
+     * Return the current position of the page with the given page id or -1 if there is no such page. This is O(1) (see TabTable class).
      *
+     * @param pageId
      * @return
      */
-    public List<String> getPageTitles() {
-        return mTabTitle;
+    public int indexOfPage(long pageId) {
+        return mTabs.indexOfPage(pageId);
+    }
+
+    static String makeFragmentTag(long pageId) {
+        return "ViewPagerAdapter:page:" + pageId;
     }
 }
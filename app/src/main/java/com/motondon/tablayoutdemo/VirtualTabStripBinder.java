@@ -0,0 +1,334 @@
+package com.motondon.tablayoutdemo;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewPager;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.motondon.tablayoutdemo_part_2.R;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A scrollable tab strip for very large tab counts, used instead of the TabLayout when MainActivity.VIRTUAL_TAB_STRIP is true.
+ *
+ * The TabLayout creates a view for each tab, so its cost (memory, layout, and every change to the tabs) grows with the tab count. Here the
+ * tabs are the items of a horizontal RecyclerView: only the tab views around the visible part of the strip exist, and they are recycled as
+ * the strip scrolls. A strip with 500 tabs holds about as many views as one with 10.
+ *
+ * As the TabStripBinder does, this class keeps the strip in sync with the ViewPagerAdapter: when the adapter changes, the operations it
+ * applied (see ViewPagerAdapter.TabChangeListener) are applied to our own list of tabs and notified one by one to the RecyclerView (so only
+ * visible tabs that actually changed are bound again). The tab lists are never compared on the main thread. Since the tabs shown are our
+ * own copy, the RecyclerView never sees a change it was not notified of (e.g.: in the middle of a ViewPagerAdapter batch).
+ *
+ * The selected tab follows the viewPager current item, and is kept in view: tabs which are close are smooth scrolled to, the others are
+ * jumped to. The indicator is drawn by an item decoration, following the viewPager while it scrolls.
+ */
+public class VirtualTabStripBinder {
+
+    // Payload used when only the selected state of a tab changed, so that its views are updated in place instead of being cross-faded.
+    private static final Object PAYLOAD_SELECTION = new Object();
+
+    // Tabs farther than this from the visible ones are jumped to, since smooth scrolling to them would bind every tab in between.
+    private static final int MAX_SMOOTH_SCROLL_DISTANCE = 10;
+
+    private static final int INDICATOR_HEIGHT_DP = 2;
+
+    private final RecyclerView mRecyclerView;
+    private final LinearLayoutManager mLayoutManager;
+    private final ViewPager mViewPager;
+    private final ViewPagerAdapter mAdapter;
+    private final TabIconCache mIconCache;
+    private final TabAdapter mTabAdapter = new TabAdapter();
+
+    // Descriptors of the tabs currently shown, in the same order. Follows the adapter, one notification behind while a batch is open.
+    private final List<TabDescriptor> mBoundTabs = new ArrayList<>();
+
+    // The selected tab is tracked by its page id, since its position changes when tabs before it are added or removed.
+    private long mSelectedPageId = BaseFragment.NO_PAGE_ID;
+
+    // While the viewPager scrolls, the indicator is between the tab at mIndicatorPosition and the next one, by mIndicatorOffset.
+    private int mIndicatorPosition = 0;
+    private float mIndicatorOffset = 0;
+
+    private View.OnLongClickListener mTabLongClickListener;
+    private View.OnTouchListener mTabTouchListener;
+
+    public VirtualTabStripBinder(RecyclerView recyclerView, ViewPager viewPager, ViewPagerAdapter adapter) {
+        mRecyclerView = recyclerView;
+        mViewPager = viewPager;
+        mAdapter = adapter;
+        mIconCache = new TabIconCache(recyclerView.getContext());
+
+        mLayoutManager = new LinearLayoutManager(recyclerView.getContext(), LinearLayoutManager.HORIZONTAL, false);
+        mRecyclerView.setLayoutManager(mLayoutManager);
+
+        // The strip height does not depend on its tabs, so changing them never needs a new layout of the whole strip.
+        mRecyclerView.setHasFixedSize(true);
+        mRecyclerView.addItemDecoration(new IndicatorDecoration(recyclerView.getContext()));
+        mTabAdapter.setHasStableIds(true);
+        mRecyclerView.setAdapter(mTabAdapter);
+
+        mViewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+                mIndicatorPosition = position;
+                mIndicatorOffset = positionOffset;
+                mRecyclerView.invalidate();
+            }
+
+            @Override
+            public void onPageSelected(int position) {
+                selectTab(position, true);
+            }
+        });
+
+        // Note the viewPager observes the adapter too and is notified first, so when onTabsChanged() is called it already knows its new current item.
+        mAdapter.addTabChangeListener(new ViewPagerAdapter.TabChangeListener() {
+            @Override
+            public void onTabsChanged(TabListDiff diff) {
+                bindTabs(diff);
+            }
+        });
+
+        bindTabs(null);
+    }
+
+    /**
+     * Set the listeners of every tab view. Since tab views are created as the strip scrolls, this must be called before the strip is laid
+     * out. Listeners must work out the tab position when they are called (see getTabPosition()), since tab views are recycled.
+     *
+     * @param longClickListener
+     * @param touchListener
+     */
+    public void setTabListeners(View.OnLongClickListener longClickListener, View.OnTouchListener touchListener) {
+        mTabLongClickListener = longClickListener;
+        mTabTouchListener = touchListener;
+    }
+
+    /**
+     * Return the position of the given tab view, which might belong either to a TabLayout or to a virtual tab strip, or -1 if it is not
+     * (or no longer) a tab view.
+     *
+     * @param tabView
+     * @return
+     */
+    public static int getTabPosition(View tabView) {
+        ViewParent parent = tabView.getParent();
+        if (parent instanceof RecyclerView) {
+            return ((RecyclerView) parent).getChildAdapterPosition(tabView);
+        }
+        if (parent instanceof ViewGroup) {
+            return ((ViewGroup) parent).indexOfChild(tabView);
+        }
+        return -1;
+    }
+
+    /**
+     * Bring the tabs in line with the adapter, notifying only the tabs which changed, and then select the tab of the viewPager current item.
+     *
+     * @param diff the operations applied by the adapter, or null to bind all tabs again
+     */
+    private void bindTabs(TabListDiff diff) {
+        if (diff == null || mBoundTabs.isEmpty()) {
+            mBoundTabs.clear();
+            mBoundTabs.addAll(mAdapter.getTabDescriptors());
+            mTabAdapter.notifyDataSetChanged();
+        } else {
+            for (TabListDiff.Op op : diff.getOps()) {
+                switch (op.type) {
+                    case TabListDiff.INSERT:
+                        mBoundTabs.add(op.toPosition, op.tab);
+                        mTabAdapter.notifyItemInserted(op.toPosition);
+                        break;
+                    case TabListDiff.REMOVE:
+                        mBoundTabs.remove(op.fromPosition);
+                        mTabAdapter.notifyItemRemoved(op.fromPosition);
+                        break;
+                    case TabListDiff.MOVE:
+                        mBoundTabs.add(op.toPosition, mBoundTabs.remove(op.fromPosition));
+                        mTabAdapter.notifyItemMoved(op.fromPosition, op.toPosition);
+                        break;
+                    case TabListDiff.CHANGE:
+                        mBoundTabs.set(op.toPosition, op.tab);
+                        mTabAdapter.notifyItemChanged(op.toPosition);
+                        break;
+                }
+            }
+        }
+
+        selectTab(mViewPager.getCurrentItem(), false);
+    }
+
+    private void selectTab(int position, boolean smoothScroll) {
+        if (position < 0 || position >= mBoundTabs.size()) {
+            return;
+        }
+
+        mIndicatorPosition = position;
+        mIndicatorOffset = 0;
+
+        long pageId = mBoundTabs.get(position).getPageId();
+        if (pageId == mSelectedPageId) {
+            mRecyclerView.invalidate();
+            return;
+        }
+
+        int previousPosition = indexOfTab(mSelectedPageId);
+        mSelectedPageId = pageId;
+        if (previousPosition >= 0) {
+            mTabAdapter.notifyItemChanged(previousPosition, PAYLOAD_SELECTION);
+        }
+        mTabAdapter.notifyItemChanged(position, PAYLOAD_SELECTION);
+
+        scrollToTab(position, smoothScroll);
+    }
+
+    /**
+     * Bring the tab at the given position to the middle of the strip (or as close as it gets).
+     *
+     * @param position
+     * @param smoothScroll
+     */
+    private void scrollToTab(int position, boolean smoothScroll) {
+        View tabView = mLayoutManager.findViewByPosition(position);
+        if (tabView != null) {
+            int dx = (tabView.getLeft() + tabView.getRight()) / 2 - mRecyclerView.getWidth() / 2;
+            if (smoothScroll) {
+                mRecyclerView.smoothScrollBy(dx, 0);
+            } else {
+                mRecyclerView.scrollBy(dx, 0);
+            }
+            return;
+        }
+
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+        boolean close = firstVisible != RecyclerView.NO_POSITION
+                && position >= firstVisible - MAX_SMOOTH_SCROLL_DISTANCE && position <= lastVisible + MAX_SMOOTH_SCROLL_DISTANCE;
+        if (smoothScroll && close) {
+            mRecyclerView.smoothScrollToPosition(position);
+        } else {
+            mLayoutManager.scrollToPositionWithOffset(position, mRecyclerView.getWidth() / 3);
+        }
+    }
+
+    private int indexOfTab(long pageId) {
+        if (pageId == BaseFragment.NO_PAGE_ID) {
+            return -1;
+        }
+
+        // Usually the tabs are in line with the adapter, whose index is O(1). Otherwise (in the middle of a batch), look for the tab.
+        int position = mAdapter.indexOfPage(pageId);
+        if (position >= 0 && position < mBoundTabs.size() && mBoundTabs.get(position).getPageId() == pageId) {
+            return position;
+        }
+        for (int i = 0; i < mBoundTabs.size(); i++) {
+            if (mBoundTabs.get(i).getPageId() == pageId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class TabViewHolder extends RecyclerView.ViewHolder {
+        final ImageView icon;
+        final TextView title;
+
+        TabViewHolder(View itemView) {
+            super(itemView);
+            icon = (ImageView) itemView.findViewById(android.R.id.icon);
+            title = (TextView) itemView.findViewById(android.R.id.text1);
+        }
+    }
+
+    private class TabAdapter extends RecyclerView.Adapter<TabViewHolder> {
+
+        @Override
+        public int getItemCount() {
+            return mBoundTabs.size();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mBoundTabs.get(position).getPageId();
+        }
+
+        @Override
+        public TabViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View itemView = LayoutInflater.from(parent.getContext()).inflate(R.layout.virtual_tab_item, parent, false);
+            final TabViewHolder holder = new TabViewHolder(itemView);
+
+            itemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int position = holder.getAdapterPosition();
+                    if (position != RecyclerView.NO_POSITION) {
+                        mViewPager.setCurrentItem(position);
+                    }
+                }
+            });
+            itemView.setOnLongClickListener(mTabLongClickListener);
+            itemView.setOnTouchListener(mTabTouchListener);
+            return holder;
+        }
+
+        @Override
+        public void onBindViewHolder(TabViewHolder holder, int position) {
+            TabDescriptor tab = mBoundTabs.get(position);
+            holder.title.setText(tab.getTitle());
+            holder.icon.setImageDrawable(mIconCache.get(tab.getIconId()));
+            holder.icon.setVisibility(tab.getIconId() != 0 ? View.VISIBLE : View.GONE);
+            holder.itemView.setSelected(tab.getPageId() == mSelectedPageId);
+        }
+
+        @Override
+        public void onBindViewHolder(TabViewHolder holder, int position, List<Object> payloads) {
+            if (payloads.size() == 1 && payloads.get(0) == PAYLOAD_SELECTION) {
+                holder.itemView.setSelected(mBoundTabs.get(position).getPageId() == mSelectedPageId);
+            } else {
+                onBindViewHolder(holder, position);
+            }
+        }
+    }
+
+    /**
+     * Draws the indicator under the selected tab, or between two tabs while the viewPager scrolls, like the TabLayout does.
+     */
+    private class IndicatorDecoration extends RecyclerView.ItemDecoration {
+        private final Paint mPaint = new Paint();
+        private final int mHeight;
+
+        IndicatorDecoration(Context context) {
+            mPaint.setColor(ContextCompat.getColor(context, R.color.colorAccent));
+            mHeight = Math.round(INDICATOR_HEIGHT_DP * context.getResources().getDisplayMetrics().density);
+        }
+
+        @Override
+        public void onDrawOver(Canvas c, RecyclerView parent, RecyclerView.State state) {
+            View tabView = mLayoutManager.findViewByPosition(mIndicatorPosition);
+            if (tabView == null) {
+                return;
+            }
+
+            float left = tabView.getLeft() + tabView.getTranslationX();
+            float right = tabView.getRight() + tabView.getTranslationX();
+            View nextTabView = mIndicatorOffset > 0 ? mLayoutManager.findViewByPosition(mIndicatorPosition + 1) : null;
+            if (nextTabView != null) {
+                left += (nextTabView.getLeft() + nextTabView.getTranslationX() - left) * mIndicatorOffset;
+                right += (nextTabView.getRight() + nextTabView.getTranslationX() - right) * mIndicatorOffset;
+            }
+            c.drawRect(left, parent.getHeight() - mHeight, right, parent.getHeight(), mPaint);
+        }
+    }
+}
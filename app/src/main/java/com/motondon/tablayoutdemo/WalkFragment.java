@@ -6,13 +6,12 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
-import com.motondon.tablayoutdemo_part_2.R;
-
 /**
  * Created by Joca on 4/6/2016.
  */
 public class WalkFragment extends BaseFragment {
 
+    public static final String TYPE_KEY = "walk";
     public static final String ITEM_TEXT = "Walk";
 
     @Override
@@ -23,7 +22,7 @@ public class WalkFragment extends BaseFragment {
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        View root = inflater.inflate(R.layout.fragment_walk, container, false);
+        View root = inflatePageView(inflater, container);
 
         return root;
     }
@@ -32,4 +31,9 @@ public class WalkFragment extends BaseFragment {
     public String getFragmentName() {
         return ITEM_TEXT;
     }
+
+    @Override
+    public String getTypeKey() {
+        return TYPE_KEY;
+    }
 }
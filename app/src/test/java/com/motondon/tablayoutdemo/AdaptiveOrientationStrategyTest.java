@@ -0,0 +1,85 @@
+package com.motondon.tablayoutdemo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveOrientationStrategyTest {
+
+    private static final long THRESHOLD_NANOS = 16 * 1000000L;
+
+    @Test
+    public void unmeasuredPagesAreRecreated() {
+        AdaptiveOrientationStrategy strategy = new AdaptiveOrientationStrategy(THRESHOLD_NANOS, 3);
+
+        assertTrue(strategy.selectRetainedPages(pages("chat", "walk", "generic"), 0.1f).isEmpty());
+    }
+
+    @Test
+    public void onlyExpensivePagesAreRetained() {
+        AdaptiveOrientationStrategy strategy = new AdaptiveOrientationStrategy(THRESHOLD_NANOS, 3);
+        strategy.recordRebuildCost("chat", 300 * 1000000L);
+        strategy.recordRebuildCost("generic", 2 * 1000000L);
+
+        List<TabDescriptor> pages = pages("chat", "walk", "generic");
+        assertEquals(ids(pages.get(0)), strategy.selectRetainedPages(pages, 0.1f));
+    }
+
+    @Test
+    public void mostExpensivePagesAreRetainedFirst() {
+        AdaptiveOrientationStrategy strategy = new AdaptiveOrientationStrategy(THRESHOLD_NANOS, 2);
+        strategy.recordRebuildCost("chat", 100 * 1000000L);
+        strategy.recordRebuildCost("walk", 300 * 1000000L);
+        strategy.recordRebuildCost("generic", 200 * 1000000L);
+
+        List<TabDescriptor> pages = pages("chat", "walk", "generic");
+        assertEquals(ids(pages.get(1), pages.get(2)), strategy.selectRetainedPages(pages, 0.1f));
+    }
+
+    @Test
+    public void fewerPagesAreRetainedAsTheHeapFillsUp() {
+        AdaptiveOrientationStrategy strategy = new AdaptiveOrientationStrategy(THRESHOLD_NANOS, 4);
+        strategy.recordRebuildCost("chat", 100 * 1000000L);
+
+        List<TabDescriptor> pages = pages("chat", "chat", "chat", "chat");
+        assertEquals(4, strategy.selectRetainedPages(pages, 0.1f).size());
+        assertEquals(2, strategy.selectRetainedPages(pages, AdaptiveOrientationStrategy.MODERATE_HEAP_USAGE).size());
+        assertEquals(0, strategy.selectRetainedPages(pages, AdaptiveOrientationStrategy.HIGH_HEAP_USAGE).size());
+    }
+
+    @Test
+    public void rebuildCostIsSmoothed() {
+        AdaptiveOrientationStrategy strategy = new AdaptiveOrientationStrategy(THRESHOLD_NANOS, 3);
+        assertEquals(-1, strategy.getRebuildCostNanos("chat"));
+
+        strategy.recordRebuildCost("chat", 100);
+        assertEquals(100, strategy.getRebuildCostNanos("chat"));
+
+        // A single slow measurement moves the average, but does not replace it.
+        strategy.recordRebuildCost("chat", 1100);
+        long cost = strategy.getRebuildCostNanos("chat");
+        assertTrue(cost > 100 && cost < 1100);
+    }
+
+    private static List<TabDescriptor> pages(String... typeKeys) {
+        List<TabDescriptor> pages = new ArrayList<>();
+        for (String typeKey : typeKeys) {
+            pages.add(TabDescriptor.create(typeKey, typeKey, 0));
+        }
+        return pages;
+    }
+
+    private static Set<Long> ids(TabDescriptor... tabs) {
+        Set<Long> ids = new HashSet<>();
+        for (TabDescriptor tab : Arrays.asList(tabs)) {
+            ids.add(tab.getPageId());
+        }
+        return ids;
+    }
+}
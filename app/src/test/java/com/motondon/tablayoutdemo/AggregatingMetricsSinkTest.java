@@ -0,0 +1,75 @@
+package com.motondon.tablayoutdemo;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AggregatingMetricsSinkTest {
+
+    @After
+    public void tearDown() {
+        TabMetrics.setSink(null);
+    }
+
+    @Test
+    public void nothingIsReportedWithoutSink() {
+        AggregatingMetricsSink sink = new AggregatingMetricsSink();
+
+        assertFalse(TabMetrics.isEnabled());
+        TabMetrics.count(TabMetrics.FRAGMENT_CREATED);
+        TabMetrics.record(TabMetrics.SWIPE_SETTLE_MS, 100);
+
+        assertEquals(0, sink.getCount(TabMetrics.FRAGMENT_CREATED));
+        assertNull(sink.getHistogram(TabMetrics.SWIPE_SETTLE_MS));
+    }
+
+    @Test
+    public void countsAreAdded() {
+        AggregatingMetricsSink sink = new AggregatingMetricsSink();
+        TabMetrics.setSink(sink);
+
+        for (int i = 0; i < 5; i++) {
+            TabMetrics.count(TabMetrics.FRAGMENT_CREATED);
+        }
+        TabMetrics.count(TabMetrics.VIEW_INFLATED);
+
+        assertEquals(5, sink.getCount(TabMetrics.FRAGMENT_CREATED));
+        assertEquals(1, sink.getCount(TabMetrics.VIEW_INFLATED));
+        assertEquals(0, sink.getCount(TabMetrics.ADAPTER_NOTIFIED));
+    }
+
+    @Test
+    public void histogramKeepsMinMaxMeanAndPercentiles() {
+        AggregatingMetricsSink sink = new AggregatingMetricsSink();
+        TabMetrics.setSink(sink);
+
+        for (int value = 1; value <= 100; value++) {
+            TabMetrics.record(TabMetrics.SWIPE_SETTLE_MS, value);
+        }
+
+        AggregatingMetricsSink.Histogram histogram = sink.getHistogram(TabMetrics.SWIPE_SETTLE_MS);
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50, histogram.getMean());
+
+        // Percentiles are bucket upper bounds, so they are never below the exact value and at most twice as much.
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 50 && p50 < 100);
+        assertEquals(100, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        AggregatingMetricsSink sink = new AggregatingMetricsSink();
+        sink.onCount(TabMetrics.ADAPTER_NOTIFIED, 3);
+        sink.onValue(TabMetrics.PAGE_STATE_BYTES, 1024);
+
+        sink.reset();
+
+        assertEquals(0, sink.getCount(TabMetrics.ADAPTER_NOTIFIED));
+        assertNull(sink.getHistogram(TabMetrics.PAGE_STATE_BYTES));
+        assertEquals("", sink.dump());
+    }
+}
@@ -0,0 +1,19 @@
+package com.motondon.tablayoutdemo;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs each task right away, on the calling thread, so that tests can check the results of background work as soon as it is submitted.
+ */
+final class DirectExecutor implements Executor {
+
+    static final DirectExecutor INSTANCE = new DirectExecutor();
+
+    private DirectExecutor() {
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        command.run();
+    }
+}
@@ -0,0 +1,88 @@
+package com.motondon.tablayoutdemo;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FragmentLeakWatcherTest {
+
+    private static class RecordingReporter implements FragmentLeakWatcher.Reporter {
+        final List<String> descriptions = Collections.synchronizedList(new ArrayList<String>());
+        final List<List<String>> hints = Collections.synchronizedList(new ArrayList<List<String>>());
+        final CountDownLatch latch;
+
+        RecordingReporter(int expectedLeaks) {
+            latch = new CountDownLatch(expectedLeaks);
+        }
+
+        @Override
+        public void onLeak(String description, List<String> retentionHints, long watchedForMs) {
+            descriptions.add(description);
+            hints.add(retentionHints);
+            latch.countDown();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FragmentLeakWatcher.install(null);
+    }
+
+    @Test
+    public void watchDoesNothingWhenNotInstalled() {
+        assertFalse(FragmentLeakWatcher.isInstalled());
+        FragmentLeakWatcher.watch(new Object(), "page", null);
+    }
+
+    @Test
+    public void reachableObjectIsReportedWithHints() throws InterruptedException {
+        final Object retained = new Object();
+        FragmentLeakWatcher.RetentionInspector inspector = new FragmentLeakWatcher.RetentionInspector() {
+            @Override
+            public List<String> findReferencesTo(Object object) {
+                List<String> references = new ArrayList<>();
+                if (object == retained) {
+                    references.add("test field");
+                }
+                return references;
+            }
+        };
+
+        RecordingReporter reporter = new RecordingReporter(1);
+        FragmentLeakWatcher watcher = new FragmentLeakWatcher(10, DirectExecutor.INSTANCE, reporter);
+        FragmentLeakWatcher.install(watcher);
+        FragmentLeakWatcher.watch(retained, "page 1", inspector);
+
+        assertTrue(reporter.latch.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("page 1"), reporter.descriptions);
+        assertEquals(Collections.singletonList("test field"), reporter.hints.get(0));
+        assertEquals(1, watcher.getWatchedCount());
+        assertEquals(1, watcher.getLeakCount());
+    }
+
+    @Test
+    public void collectedObjectIsNotReported() throws InterruptedException {
+        RecordingReporter reporter = new RecordingReporter(1);
+        FragmentLeakWatcher watcher = new FragmentLeakWatcher(10, DirectExecutor.INSTANCE, reporter);
+
+        watcher.watchObject(new Object(), "collected", null);
+
+        // Watch another object which stays reachable, so that we know when the first one was checked (checks run in order).
+        Object retained = new Object();
+        watcher.watchObject(retained, "retained", null);
+
+        assertTrue(reporter.latch.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("retained"), reporter.descriptions);
+        assertTrue(reporter.hints.get(0).isEmpty());
+        assertEquals(2, watcher.getWatchedCount());
+        assertEquals(1, watcher.getLeakCount());
+        assertNotNull(retained);
+    }
+}
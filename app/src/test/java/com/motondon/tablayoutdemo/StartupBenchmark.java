@@ -0,0 +1,108 @@
+package com.motondon.tablayoutdemo;
+
+import android.os.Bundle;
+
+import com.motondon.tablayoutdemo_part_2.BuildConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cold and warm start benchmark of MainActivity, run under Robolectric so that it does not need a device.
+ *
+ * A cold start creates the activity from scratch, while a warm start recreates it from the state saved by the previous instance (as after
+ * an orientation change). For each one, the time to first tab rendered is reported: the "firstTabRendered" mark of the StartupTracer if
+ * a frame was drawn, otherwise the time until the activity is visible. The StartupTracer sections are printed as well.
+ *
+ * The test fails when the median time exceeds the budget, which can be set with -PstartupBudgetMs=... (see app/build.gradle). Note
+ * Robolectric timings are not device timings: the budget is meant to catch regressions on the same host, not to match real devices.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class StartupBenchmark {
+
+    private static final long DEFAULT_BUDGET_MS = 1000;
+    private static final int WARM_UP_ITERATIONS = 3;
+    private static final int ITERATIONS = 10;
+
+    @Test
+    public void coldStart() {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            startCold().pause().stop().destroy();
+        }
+
+        long[] times = new long[ITERATIONS];
+        StartupTracer lastTracer = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            ActivityController<MainActivity> controller = startCold();
+            times[i] = timeToFirstTab(controller.get().getStartupTracer(), start);
+            lastTracer = controller.get().getStartupTracer();
+            controller.pause().stop().destroy();
+        }
+
+        report("cold start", times, lastTracer);
+    }
+
+    @Test
+    public void warmStart() {
+        long[] times = new long[ITERATIONS];
+        StartupTracer lastTracer = null;
+        for (int i = -WARM_UP_ITERATIONS; i < ITERATIONS; i++) {
+            ActivityController<MainActivity> previous = startCold();
+            Bundle savedState = new Bundle();
+            previous.saveInstanceState(savedState).pause().stop().destroy();
+
+            long start = System.nanoTime();
+            ActivityController<MainActivity> controller = Robolectric.buildActivity(MainActivity.class).setup(savedState);
+            if (i >= 0) {
+                times[i] = timeToFirstTab(controller.get().getStartupTracer(), start);
+                lastTracer = controller.get().getStartupTracer();
+            }
+            controller.pause().stop().destroy();
+        }
+
+        report("warm start", times, lastTracer);
+    }
+
+    private static ActivityController<MainActivity> startCold() {
+        return Robolectric.buildActivity(MainActivity.class).setup();
+    }
+
+    /**
+     * Return the time to first tab rendered, in nanoseconds. Robolectric does not always draw frames, so when there is no mark fall back to
+     * the time it took the activity to become visible.
+     */
+    private static long timeToFirstTab(StartupTracer tracer, long startNanos) {
+        StartupTracer.Section firstTab = tracer.getSection(StartupTracer.MARK_FIRST_TAB_RENDERED);
+        StartupTracer.Section onCreate = tracer.getSection("MainActivity.onCreate");
+        if (firstTab != null && onCreate != null) {
+            return firstTab.getStartNanos() - onCreate.getStartNanos();
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    private static void report(String name, long[] times, StartupTracer tracer) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        long medianMs = sorted[sorted.length / 2] / 1000000;
+        long maxMs = sorted[sorted.length - 1] / 1000000;
+        long budgetMs = Long.getLong("startup.budgetMs", DEFAULT_BUDGET_MS);
+
+        System.out.println(String.format("%s - time to first tab: median %d ms, max %d ms, budget %d ms", name, medianMs, maxMs, budgetMs));
+        for (StartupTracer.Section section : tracer.getSections()) {
+            System.out.println(String.format("    %s @%d us, took %d us", section.getName(), section.getStartNanos() / 1000,
+                    Math.max(0, section.getDurationNanos()) / 1000));
+        }
+
+        assertTrue(name + " took " + medianMs + " ms, budget is " + budgetMs + " ms", medianMs <= budgetMs);
+    }
+}
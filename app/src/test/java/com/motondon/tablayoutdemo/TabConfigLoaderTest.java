@@ -0,0 +1,323 @@
+package com.motondon.tablayoutdemo;
+
+import com.motondon.tablayoutdemo_part_2.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Run under Robolectric, since the config is parsed with android.util.JsonReader.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TabConfigLoaderTest {
+
+    private static final String CONFIG = "{ \"version\": 2, \"tabs\": ["
+            + "{ \"type\": \"chat\", \"title\": \"Chat\" },"
+            + "{ \"type\": \"generic\", \"title\": \"News\", \"icon\": \"ic_filter_1_white_24dp\", \"badge\": { \"count\": 3 } },"
+            + "{ \"title\": \"No type\" },"
+            + "{ \"type\": \"walk\", \"title\": \"Walk\", \"icon\": null }"
+            + "] }";
+
+    private File cacheDir;
+    private File configFile;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = File.createTempFile("tab_config", null);
+        assertTrue(cacheDir.delete());
+        assertTrue(cacheDir.mkdir());
+        configFile = File.createTempFile("tabs", ".json");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+        configFile.delete();
+    }
+
+    @Test
+    public void parsesEntriesInOrder() throws IOException {
+        write(configFile, CONFIG);
+
+        RecordingCallback callback = load(new TabConfigLoader.FileSource(configFile));
+
+        assertEquals(Arrays.asList("Chat", "News", "Walk"), callback.titles);
+        assertEquals("ic_filter_1_white_24dp", callback.entries.get(1).iconName);
+        assertNull(callback.entries.get(2).iconName);
+        assertEquals(3, callback.finishedCount);
+        assertFalse(callback.fromCache);
+
+        // The first entry is delivered alone, so that the first tab is shown as soon as possible.
+        assertEquals(1, callback.chunkSizes.get(0).intValue());
+    }
+
+    @Test
+    public void cachedConfigIsUsedAndRevalidated() throws IOException {
+        write(configFile, CONFIG);
+        load(new TabConfigLoader.FileSource(configFile));
+
+        final List<String> etags = new ArrayList<>();
+        final TabConfigLoader.Source fileSource = new TabConfigLoader.FileSource(configFile);
+        RecordingCallback callback = load(new TabConfigLoader.Source() {
+            @Override
+            public TabConfigLoader.Response open(String etag) throws IOException {
+                etags.add(etag);
+                return fileSource.open(etag);
+            }
+        });
+
+        assertEquals(Arrays.asList("Chat", "News", "Walk"), callback.titles);
+        assertTrue(callback.fromCache);
+        assertEquals(1, etags.size());
+        assertNotNull(etags.get(0));
+    }
+
+    @Test
+    public void newerConfigIsUsedByTheNextLoad() throws IOException {
+        write(configFile, CONFIG);
+        load(new TabConfigLoader.FileSource(configFile));
+
+        write(configFile, "{ \"tabs\": [ { \"type\": \"walk\", \"title\": \"Walk only\" } ] }");
+
+        // The cached config is served while the new one is fetched and cached.
+        RecordingCallback callback = load(new TabConfigLoader.FileSource(configFile));
+        assertEquals(Arrays.asList("Chat", "News", "Walk"), callback.titles);
+
+        callback = load(new TabConfigLoader.FileSource(configFile));
+        assertEquals(Collections.singletonList("Walk only"), callback.titles);
+        assertTrue(callback.fromCache);
+    }
+
+    @Test
+    public void configWithoutEtagIsFetchedAgain() throws IOException {
+        final List<String> etags = new ArrayList<>();
+        TabConfigLoader.Source source = new TabConfigLoader.Source() {
+            @Override
+            public TabConfigLoader.Response open(String etag) throws IOException {
+                etags.add(etag);
+                return new TabConfigLoader.Response(new ByteArrayInputStream(CONFIG.getBytes("UTF-8")), null);
+            }
+        };
+        load(source);
+
+        // The cached config is served, but since it has no ETag, no conditional request can be made.
+        RecordingCallback callback = load(source);
+        assertTrue(callback.fromCache);
+        assertEquals(Arrays.asList("Chat", "News", "Walk"), callback.titles);
+        assertEquals(Arrays.asList(null, null), etags);
+    }
+
+    @Test
+    public void onlyEntriesAddedToTheConfigAreLoadedAgain() throws IOException {
+        write(configFile, CONFIG);
+        load(new TabConfigLoader.FileSource(configFile));
+
+        // "Chat" is dropped and "Extra" added. The cached config, whose entries were all delivered, is served while the new one is fetched.
+        write(configFile, "{ \"tabs\": ["
+                + "{ \"type\": \"generic\", \"title\": \"News\" },"
+                + "{ \"type\": \"generic\", \"title\": \"Extra\" },"
+                + "{ \"type\": \"walk\", \"title\": \"Walk\" }"
+                + "] }");
+        RecordingCallback callback = loadNewEntries(new TabConfigLoader.FileSource(configFile));
+        assertTrue(callback.titles.isEmpty());
+        assertEquals(0, callback.finishedCount);
+        assertTrue(callback.fromCache);
+
+        callback = loadNewEntries(new TabConfigLoader.FileSource(configFile));
+        assertEquals(Collections.singletonList("Extra"), callback.titles);
+
+        callback = loadNewEntries(new TabConfigLoader.FileSource(configFile));
+        assertTrue(callback.titles.isEmpty());
+    }
+
+    @Test
+    public void newEntriesWithoutAnyPreviousLoadOnlyTakeTheConfigAsBase() throws IOException {
+        write(configFile, CONFIG);
+
+        RecordingCallback callback = loadNewEntries(new TabConfigLoader.FileSource(configFile));
+        assertTrue(callback.titles.isEmpty());
+        assertEquals(0, callback.finishedCount);
+
+        write(configFile, "{ \"tabs\": [ { \"type\": \"generic\", \"title\": \"Extra\" } ] }");
+        loadNewEntries(new TabConfigLoader.FileSource(configFile));
+        callback = loadNewEntries(new TabConfigLoader.FileSource(configFile));
+        assertEquals(Collections.singletonList("Extra"), callback.titles);
+    }
+
+    @Test
+    public void entriesNotDeliveredBeforeCancelAreLoadedAgain() throws IOException {
+        write(configFile, CONFIG);
+
+        // The load is cancelled (e.g.: on an orientation change) as soon as the first entry is delivered.
+        final TabConfigLoader loader = new TabConfigLoader(new TabConfigLoader.FileSource(configFile), cacheDir, DirectExecutor.INSTANCE);
+        final RecordingCallback callback = new RecordingCallback() {
+            @Override
+            public void onEntries(List<TabConfigLoader.Entry> chunk) {
+                super.onEntries(chunk);
+                loader.cancel();
+            }
+        };
+        loader.load(callback);
+        assertEquals(Collections.singletonList("Chat"), callback.titles);
+
+        RecordingCallback rest = loadNewEntries(new TabConfigLoader.FileSource(configFile));
+        assertEquals(Arrays.asList("News", "Walk"), rest.titles);
+    }
+
+    @Test
+    public void failureWithoutCacheIsReported() {
+        RecordingCallback callback = load(new TabConfigLoader.Source() {
+            @Override
+            public TabConfigLoader.Response open(String etag) throws IOException {
+                throw new IOException("Offline");
+            }
+        });
+
+        assertNotNull(callback.failure);
+        assertEquals(0, callback.failedDeliveredCount);
+        assertTrue(callback.titles.isEmpty());
+    }
+
+    @Test
+    public void brokenConfigIsNotCached() throws IOException {
+        write(configFile, "{ \"tabs\": [ { \"type\": \"chat\", \"title\": \"Chat\" }, { \"type\": ");
+
+        RecordingCallback callback = load(new TabConfigLoader.FileSource(configFile));
+        assertNotNull(callback.failure);
+        assertEquals(1, callback.failedDeliveredCount);
+
+        write(configFile, CONFIG);
+        callback = load(new TabConfigLoader.FileSource(configFile));
+        assertEquals(3, callback.finishedCount);
+        assertFalse(callback.fromCache);
+    }
+
+    @Test
+    public void firstEntryIsDeliveredBeforeTheRestArrives() throws Exception {
+        final PipedOutputStream server = new PipedOutputStream();
+        final PipedInputStream body = new PipedInputStream(server);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final CountDownLatch firstEntry = new CountDownLatch(1);
+            final CountDownLatch finished = new CountDownLatch(1);
+            final List<String> titles = Collections.synchronizedList(new ArrayList<String>());
+
+            TabConfigLoader loader = new TabConfigLoader(new TabConfigLoader.Source() {
+                @Override
+                public TabConfigLoader.Response open(String etag) {
+                    return new TabConfigLoader.Response(body, "\"v1\"");
+                }
+            }, cacheDir, executor);
+            loader.load(new TabConfigLoader.Callback() {
+                @Override
+                public void onEntries(List<TabConfigLoader.Entry> entries) {
+                    for (TabConfigLoader.Entry entry : entries) {
+                        titles.add(entry.title);
+                    }
+                    firstEntry.countDown();
+                }
+
+                @Override
+                public void onFinished(int entryCount, boolean fromCache) {
+                    finished.countDown();
+                }
+
+                @Override
+                public void onFailed(IOException e, int deliveredCount) {
+                }
+            });
+
+            server.write("{ \"tabs\": [ { \"type\": \"chat\", \"title\": \"Chat\" },".getBytes("UTF-8"));
+            server.flush();
+            assertTrue(firstEntry.await(5, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList("Chat"), titles);
+
+            server.write(" { \"type\": \"walk\", \"title\": \"Walk\" } ] }".getBytes("UTF-8"));
+            server.close();
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("Chat", "Walk"), titles);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private RecordingCallback load(TabConfigLoader.Source source) {
+        RecordingCallback callback = new RecordingCallback();
+        new TabConfigLoader(source, cacheDir, DirectExecutor.INSTANCE).load(callback);
+        return callback;
+    }
+
+    private RecordingCallback loadNewEntries(TabConfigLoader.Source source) {
+        RecordingCallback callback = new RecordingCallback();
+        new TabConfigLoader(source, cacheDir, DirectExecutor.INSTANCE).loadNewEntries(callback);
+        return callback;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static class RecordingCallback implements TabConfigLoader.Callback {
+        final List<TabConfigLoader.Entry> entries = new ArrayList<>();
+        final List<String> titles = new ArrayList<>();
+        final List<Integer> chunkSizes = new ArrayList<>();
+        int finishedCount = -1;
+        boolean fromCache;
+        IOException failure;
+        int failedDeliveredCount = -1;
+
+        @Override
+        public void onEntries(List<TabConfigLoader.Entry> chunk) {
+            chunkSizes.add(chunk.size());
+            for (TabConfigLoader.Entry entry : chunk) {
+                entries.add(entry);
+                titles.add(entry.title);
+            }
+        }
+
+        @Override
+        public void onFinished(int entryCount, boolean fromCache) {
+            this.finishedCount = entryCount;
+            this.fromCache = fromCache;
+        }
+
+        @Override
+        public void onFailed(IOException e, int deliveredCount) {
+            this.failure = e;
+            this.failedDeliveredCount = deliveredCount;
+        }
+    }
+}
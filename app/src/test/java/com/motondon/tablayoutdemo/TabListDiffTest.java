@@ -0,0 +1,119 @@
+package com.motondon.tablayoutdemo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.motondon.tablayoutdemo.TestTabs.tab;
+import static com.motondon.tablayoutdemo.TestTabs.tabs;
+import static org.junit.Assert.*;
+
+public class TabListDiffTest {
+
+    @Test
+    public void identicalListsHaveNoOps() {
+        List<TabDescriptor> tabs = tabs(5);
+        assertTrue(TabListDiff.calculate(tabs, new ArrayList<>(tabs)).isEmpty());
+    }
+
+    @Test
+    public void appendIsASingleInsert() {
+        List<TabDescriptor> oldTabs = tabs(3);
+        List<TabDescriptor> newTabs = new ArrayList<>(oldTabs);
+        newTabs.add(tab(99));
+
+        List<TabListDiff.Op> ops = TabListDiff.calculate(oldTabs, newTabs).getOps();
+        assertEquals(1, ops.size());
+        assertEquals(TabListDiff.INSERT, ops.get(0).type);
+        assertEquals(3, ops.get(0).toPosition);
+    }
+
+    @Test
+    public void removeIsASingleRemove() {
+        List<TabDescriptor> oldTabs = tabs(4);
+        List<TabDescriptor> newTabs = new ArrayList<>(oldTabs);
+        newTabs.remove(1);
+
+        List<TabListDiff.Op> ops = TabListDiff.calculate(oldTabs, newTabs).getOps();
+        assertEquals(1, ops.size());
+        assertEquals(TabListDiff.REMOVE, ops.get(0).type);
+        assertEquals(1, ops.get(0).fromPosition);
+    }
+
+    @Test
+    public void moveToFrontIsASingleMove() {
+        List<TabDescriptor> oldTabs = tabs(4);
+        List<TabDescriptor> newTabs = new ArrayList<>(oldTabs);
+        newTabs.add(0, newTabs.remove(3));
+
+        List<TabListDiff.Op> ops = TabListDiff.calculate(oldTabs, newTabs).getOps();
+        assertEquals(1, ops.size());
+        assertEquals(TabListDiff.MOVE, ops.get(0).type);
+        assertEquals(3, ops.get(0).fromPosition);
+        assertEquals(0, ops.get(0).toPosition);
+    }
+
+    @Test
+    public void moveToEndIsASingleMove() {
+        List<TabDescriptor> oldTabs = tabs(6);
+        List<TabDescriptor> newTabs = new ArrayList<>(oldTabs);
+        newTabs.add(newTabs.remove(0));
+
+        List<TabListDiff.Op> ops = TabListDiff.calculate(oldTabs, newTabs).getOps();
+        assertEquals(1, ops.size());
+        assertEquals(TabListDiff.MOVE, ops.get(0).type);
+        assertEquals(0, ops.get(0).fromPosition);
+        assertEquals(5, ops.get(0).toPosition);
+    }
+
+    @Test
+    public void swapIsASingleMove() {
+        List<TabDescriptor> oldTabs = tabs(4);
+        List<TabDescriptor> newTabs = new ArrayList<>(oldTabs);
+        Collections.swap(newTabs, 1, 2);
+
+        List<TabListDiff.Op> ops = TabListDiff.calculate(oldTabs, newTabs).getOps();
+        assertEquals(1, ops.size());
+        assertEquals(TabListDiff.MOVE, ops.get(0).type);
+    }
+
+    @Test
+    public void renamedTabIsAChange() {
+        List<TabDescriptor> oldTabs = tabs(2);
+        List<TabDescriptor> newTabs = new ArrayList<>(oldTabs);
+        TabDescriptor renamed = new TabDescriptor(newTabs.get(1).getPageId(), GenericFragment.TYPE_KEY, "Renamed", 0);
+        newTabs.set(1, renamed);
+
+        List<TabListDiff.Op> ops = TabListDiff.calculate(oldTabs, newTabs).getOps();
+        assertEquals(1, ops.size());
+        assertEquals(TabListDiff.CHANGE, ops.get(0).type);
+        assertSame(renamed, ops.get(0).tab);
+    }
+
+    @Test
+    public void applyingTheDiffGivesTheNewList() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<TabDescriptor> oldTabs = tabs(random.nextInt(30));
+
+            // Drop, shuffle and add some tabs.
+            List<TabDescriptor> newTabs = new ArrayList<>();
+            for (TabDescriptor tab : oldTabs) {
+                if (random.nextInt(4) != 0) {
+                    newTabs.add(tab);
+                }
+            }
+            Collections.shuffle(newTabs, random);
+            for (int i = random.nextInt(10); i > 0; i--) {
+                newTabs.add(random.nextInt(newTabs.size() + 1), tab(1000 + round * 10 + i));
+            }
+
+            List<TabDescriptor> result = new ArrayList<>(oldTabs);
+            TabListDiff.calculate(oldTabs, newTabs).applyTo(result);
+            assertEquals(newTabs, result);
+        }
+    }
+}
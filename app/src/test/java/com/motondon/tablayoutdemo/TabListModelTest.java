@@ -0,0 +1,177 @@
+package com.motondon.tablayoutdemo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.motondon.tablayoutdemo.TestTabs.tab;
+import static com.motondon.tablayoutdemo.TestTabs.tabs;
+import static org.junit.Assert.*;
+
+public class TabListModelTest {
+
+    // Mirrors what the ViewPagerAdapter does with the diffs.
+    private final List<TabDescriptor> appliedTabs = new ArrayList<>();
+    private int changeCount;
+
+    private final TabListModel.Listener listener = new TabListModel.Listener() {
+        @Override
+        public void onTabsChanged(List<TabDescriptor> tabs, TabListDiff diff) {
+            diff.applyTo(appliedTabs);
+            assertEquals(tabs, appliedTabs);
+            changeCount++;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        appliedTabs.clear();
+        changeCount = 0;
+    }
+
+    @Test
+    public void addAndRemoveTabs() {
+        TabListModel model = new TabListModel(DirectExecutor.INSTANCE, DirectExecutor.INSTANCE);
+        model.setListener(listener);
+
+        TabDescriptor first = tab(1);
+        TabDescriptor second = tab(2);
+        model.submit(TabListModel.add(first));
+        model.submit(TabListModel.add(second));
+        model.submit(TabListModel.remove(first.getPageId()));
+
+        assertEquals(3, changeCount);
+        assertEquals(1, model.getTabs().size());
+        assertSame(second, appliedTabs.get(0));
+    }
+
+    @Test
+    public void removingAMissingTabDoesNotNotify() {
+        TabListModel model = new TabListModel(DirectExecutor.INSTANCE, DirectExecutor.INSTANCE);
+        model.reset(tabs(3));
+        appliedTabs.addAll(model.getTabs());
+        model.setListener(listener);
+
+        model.submit(TabListModel.remove(42));
+
+        assertEquals(0, changeCount);
+        assertEquals(3, model.getTabs().size());
+    }
+
+    @Test
+    public void replaceAllKeepsMatchingPages() {
+        TabListModel model = new TabListModel(DirectExecutor.INSTANCE, DirectExecutor.INSTANCE);
+        model.reset(tabs(3));
+        appliedTabs.addAll(model.getTabs());
+        model.setListener(listener);
+
+        List<TabDescriptor> newTabs = new ArrayList<>();
+        newTabs.add(model.getTabs().get(2));
+        newTabs.add(tab(10));
+        newTabs.add(model.getTabs().get(0));
+        model.submit(TabListModel.replaceAll(newTabs));
+
+        assertEquals(1, changeCount);
+        assertEquals(newTabs, appliedTabs);
+    }
+
+    @Test
+    public void moveIsASingleMoveOp() {
+        TabListModel model = new TabListModel(DirectExecutor.INSTANCE, DirectExecutor.INSTANCE);
+        model.reset(tabs(5));
+        appliedTabs.addAll(model.getTabs());
+
+        final List<TabListDiff> diffs = new ArrayList<>();
+        model.setListener(new TabListModel.Listener() {
+            @Override
+            public void onTabsChanged(List<TabDescriptor> tabs, TabListDiff diff) {
+                listener.onTabsChanged(tabs, diff);
+                diffs.add(diff);
+            }
+        });
+
+        TabDescriptor moved = model.getTabs().get(4);
+        model.submit(TabListModel.move(moved.getPageId(), 1));
+
+        assertEquals(1, changeCount);
+        assertSame(moved, appliedTabs.get(1));
+        assertEquals(1, diffs.get(0).getOps().size());
+        assertEquals(TabListDiff.MOVE, diffs.get(0).getOps().get(0).type);
+
+        // Positions out of the bounds are clamped.
+        model.submit(TabListModel.move(moved.getPageId(), 100));
+        assertSame(moved, appliedTabs.get(4));
+    }
+
+    @Test
+    public void forwardMoveIsASingleMoveOp() {
+        TabListModel model = new TabListModel(DirectExecutor.INSTANCE, DirectExecutor.INSTANCE);
+        model.reset(tabs(6));
+        appliedTabs.addAll(model.getTabs());
+
+        final List<TabListDiff> diffs = new ArrayList<>();
+        model.setListener(new TabListModel.Listener() {
+            @Override
+            public void onTabsChanged(List<TabDescriptor> tabs, TabListDiff diff) {
+                listener.onTabsChanged(tabs, diff);
+                diffs.add(diff);
+            }
+        });
+
+        // Past the tabs in between, and then to the end.
+        TabDescriptor moved = model.getTabs().get(1);
+        model.submit(TabListModel.move(moved.getPageId(), 3));
+        model.submit(TabListModel.move(model.getTabs().get(0).getPageId(), 5));
+
+        assertEquals(2, changeCount);
+        assertSame(moved, appliedTabs.get(2));
+        for (TabListDiff diff : diffs) {
+            assertEquals(1, diff.getOps().size());
+            assertEquals(TabListDiff.MOVE, diff.getOps().get(0).type);
+        }
+    }
+
+    @Test
+    public void mutationsOnABackgroundExecutorAreAppliedInOrder() throws Exception {
+        ExecutorService background = Executors.newSingleThreadExecutor();
+        final List<Runnable> mainQueue = new ArrayList<>();
+        Executor main = new Executor() {
+            @Override
+            public synchronized void execute(Runnable command) {
+                mainQueue.add(command);
+            }
+        };
+
+        TabListModel model = new TabListModel(background, main);
+        model.setListener(listener);
+
+        List<TabDescriptor> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            TabDescriptor tab = tab(i);
+            expected.add(tab);
+            model.submit(TabListModel.add(tab));
+        }
+        for (int i = 0; i < 500; i += 3) {
+            expected.remove(tab(i));
+            model.submit(TabListModel.remove(i));
+        }
+        background.shutdown();
+        assertTrue(background.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Now run the "main thread" queue.
+        synchronized (main) {
+            for (Runnable runnable : mainQueue) {
+                runnable.run();
+            }
+        }
+
+        assertEquals(expected, model.getTabs());
+        assertEquals(expected, appliedTabs);
+    }
+}
@@ -0,0 +1,117 @@
+package com.motondon.tablayoutdemo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.motondon.tablayoutdemo.TestTabs.tab;
+import static com.motondon.tablayoutdemo.TestTabs.tabs;
+import static org.junit.Assert.*;
+
+public class TabSessionStoreTest {
+
+    private static final int APP_VERSION = 1;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("tab_session", null);
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void noSessionWithoutFile() {
+        assertNull(newStore().read());
+    }
+
+    @Test
+    public void replaysAppendedChanges() {
+        List<TabDescriptor> tabs = tabs(3);
+        TabSessionStore store = newStore();
+        store.writeSnapshot(tabs, 0, 3);
+
+        // Remove the middle tab, add two more and move the last one to the front.
+        List<TabDescriptor> newTabs = new ArrayList<>(tabs);
+        newTabs.remove(1);
+        newTabs.add(tab(4));
+        newTabs.add(0, tab(5));
+        store.appendDiff(TabListDiff.calculate(tabs, newTabs));
+        store.appendSelection(2);
+        store.appendTabCounter(5);
+        store.close();
+
+        TabSessionStore.Session session = newStore().read();
+        assertNotNull(session);
+        assertEquals(newTabs, session.getTabs());
+        assertEquals("Tab 5", session.getTabs().get(0).getTitle());
+        assertEquals(2, session.getSelectedIndex());
+        assertEquals(5, session.getTabCounter());
+    }
+
+    @Test
+    public void ignoresIncompleteLastRecord() throws IOException {
+        List<TabDescriptor> tabs = tabs(2);
+        TabSessionStore store = newStore();
+        store.writeSnapshot(tabs, 1, 2);
+
+        List<TabDescriptor> newTabs = new ArrayList<>(tabs);
+        newTabs.add(tab(3));
+        store.appendDiff(TabListDiff.calculate(tabs, newTabs));
+        store.close();
+
+        // As if the process was killed in the middle of writing the last record.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        TabSessionStore.Session session = newStore().read();
+        assertNotNull(session);
+        assertEquals(tabs, session.getTabs());
+        assertEquals(1, session.getSelectedIndex());
+    }
+
+    @Test
+    public void discardsSessionOfAnotherAppVersion() {
+        TabSessionStore store = newStore();
+        store.writeSnapshot(tabs(2), 0, 0);
+        store.close();
+
+        assertNull(new TabSessionStore(file, APP_VERSION + 1, DirectExecutor.INSTANCE).read());
+    }
+
+    @Test
+    public void compactsAfterManyRecords() {
+        List<TabDescriptor> tabs = tabs(1);
+        TabSessionStore store = newStore();
+        store.writeSnapshot(tabs, 0, 0);
+
+        long sizeAfterSnapshot = file.length();
+        for (int i = 0; i < TabSessionStore.MAX_RECORDS * 2; i++) {
+            List<TabDescriptor> newTabs = new ArrayList<>(tabs);
+            newTabs.add(tab(i + 1));
+            store.appendDiff(TabListDiff.calculate(tabs, newTabs));
+            store.appendDiff(TabListDiff.calculate(newTabs, tabs));
+        }
+        store.close();
+
+        // Every tab that was added was removed again, so the file must be about the size of a snapshot with a single tab.
+        assertTrue(file.length() < sizeAfterSnapshot + TabSessionStore.MAX_RECORDS * 64);
+        assertEquals(tabs, newStore().read().getTabs());
+    }
+
+    private TabSessionStore newStore() {
+        return new TabSessionStore(file, APP_VERSION, DirectExecutor.INSTANCE);
+    }
+}
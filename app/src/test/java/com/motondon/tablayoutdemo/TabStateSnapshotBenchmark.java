@@ -0,0 +1,116 @@
+package com.motondon.tablayoutdemo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM benchmark of the TabStateSnapshot size and encode/decode time at 10, 100 and 1000 tabs. The size is compared with the two
+ * serialized ArrayList<String> previously put in the bundle when using RECREATE_FRAGMENT.
+ */
+public class TabStateSnapshotBenchmark {
+
+    private static final int[] TAB_COUNTS = new int[] {10, 100, 1000};
+    private static final int WARM_UP_ITERATIONS = 200;
+    private static final int ITERATIONS = 1000;
+
+    private static final Map<String, String> CLASS_NAMES = new HashMap<>();
+    static {
+        CLASS_NAMES.put(ChatFragment.TYPE_KEY, ChatFragment.class.getName());
+        CLASS_NAMES.put(WalkFragment.TYPE_KEY, WalkFragment.class.getName());
+        CLASS_NAMES.put(GenericFragment.TYPE_KEY, GenericFragment.class.getName());
+    }
+
+    @Test
+    public void snapshotSizeAndTime() throws Exception {
+        for (int tabCount : TAB_COUNTS) {
+            TabStateSnapshot snapshot = createSnapshot(tabCount);
+            byte[] bytes = snapshot.toByteArray();
+
+            for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+                TabStateSnapshot.fromByteArray(snapshot.toByteArray());
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                snapshot.toByteArray();
+            }
+            long encodeNanos = (System.nanoTime() - start) / ITERATIONS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                TabStateSnapshot.fromByteArray(bytes);
+            }
+            long decodeNanos = (System.nanoTime() - start) / ITERATIONS;
+
+            System.out.println(String.format("tabs: %d - snapshot: %d bytes, serialized lists: %d bytes, encode: %d us, decode: %d us",
+                    tabCount, bytes.length, serializedListsSize(snapshot), encodeNanos / 1000, decodeNanos / 1000));
+
+            assertRoundTrip(snapshot, TabStateSnapshot.fromByteArray(bytes));
+        }
+    }
+
+    private TabStateSnapshot createSnapshot(int tabCount) {
+        long[] pageIds = new long[tabCount];
+        String[] typeKeys = new String[tabCount];
+        String[] titles = new String[tabCount];
+        int[] iconIds = new int[tabCount];
+
+        for (int i = 0; i < tabCount; i++) {
+            pageIds[i] = i;
+            if (i == 0) {
+                typeKeys[i] = ChatFragment.TYPE_KEY;
+                titles[i] = ChatFragment.ITEM_TEXT;
+            } else if (i == 1) {
+                typeKeys[i] = WalkFragment.TYPE_KEY;
+                titles[i] = WalkFragment.ITEM_TEXT;
+            } else {
+                typeKeys[i] = GenericFragment.TYPE_KEY;
+                titles[i] = "Generic " + (i - 1);
+                iconIds[i] = 0x7f020000 + (i % 4);
+            }
+        }
+
+        return new TabStateSnapshot(pageIds, typeKeys, titles, iconIds, tabCount / 2);
+    }
+
+    /**
+     * Size of the fully qualified class names and titles lists, serialized the way they used to be put in the bundle.
+     *
+     * @param snapshot
+     * @return
+     */
+    private int serializedListsSize(TabStateSnapshot snapshot) throws IOException {
+        ArrayList<String> classNames = new ArrayList<>();
+        ArrayList<String> titles = new ArrayList<>();
+        for (int i = 0; i < snapshot.getPageCount(); i++) {
+            classNames.add(CLASS_NAMES.get(snapshot.getTypeKey(i)));
+            titles.add(snapshot.getTitle(i));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(classNames);
+        out.writeObject(titles);
+        out.close();
+        return bytes.size();
+    }
+
+    private void assertRoundTrip(TabStateSnapshot expected, TabStateSnapshot actual) {
+        assertEquals(expected.getPageCount(), actual.getPageCount());
+        assertEquals(expected.getSelectedIndex(), actual.getSelectedIndex());
+        for (int i = 0; i < expected.getPageCount(); i++) {
+            assertEquals(expected.getPageId(i), actual.getPageId(i));
+            assertEquals(expected.getTypeKey(i), actual.getTypeKey(i));
+            assertEquals(expected.getTitle(i), actual.getTitle(i));
+            assertEquals(expected.getIconId(i), actual.getIconId(i));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.motondon.tablayoutdemo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.motondon.tablayoutdemo.TestTabs.tab;
+import static com.motondon.tablayoutdemo.TestTabs.tabs;
+import static org.junit.Assert.*;
+
+public class TabTableTest {
+
+    @Test
+    public void addedTabsCanBeReadBack() {
+        TabTable table = new TabTable();
+        List<TabDescriptor> tabs = tabs(3);
+        table.addAll(tabs);
+
+        assertEquals(3, table.size());
+        for (int i = 0; i < tabs.size(); i++) {
+            assertEquals(tabs.get(i).getPageId(), table.getPageId(i));
+            assertEquals(tabs.get(i).getTypeKey(), table.getTypeKey(i));
+            assertEquals(tabs.get(i).getTitle(), table.getTitle(i));
+            assertEquals(tabs.get(i).getIconId(), table.getIconId(i));
+            assertEquals(tabs.get(i), table.getDescriptor(i));
+        }
+        assertEquals(tabs, table.asDescriptorList());
+    }
+
+    @Test
+    public void indexFollowsInsertsRemovesAndMoves() {
+        TabTable table = new TabTable();
+        List<TabDescriptor> expected = new ArrayList<>(tabs(5));
+        table.addAll(expected);
+
+        TabDescriptor inserted = TabDescriptor.create(GenericFragment.TYPE_KEY, "Inserted", 0);
+        table.insert(1, inserted);
+        expected.add(1, inserted);
+        assertIndexed(expected, table);
+
+        table.remove(3);
+        expected.remove(3);
+        assertIndexed(expected, table);
+
+        table.move(0, 4);
+        expected.add(4, expected.remove(0));
+        assertIndexed(expected, table);
+
+        table.move(4, 1);
+        expected.add(1, expected.remove(4));
+        assertIndexed(expected, table);
+
+        assertEquals(-1, table.indexOfPage(12345));
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        TabTable table = new TabTable();
+        List<TabDescriptor> expected = tabs(1000);
+        for (TabDescriptor tab : expected) {
+            table.add(tab);
+        }
+        assertIndexed(expected, table);
+    }
+
+    @Test
+    public void titlesAreInterned() {
+        TabTable table = new TabTable();
+        table.add(new TabDescriptor(1, GenericFragment.TYPE_KEY, new String("Same"), 0));
+        table.add(new TabDescriptor(2, GenericFragment.TYPE_KEY, new String("Same"), 0));
+
+        assertSame(table.getTitle(0), table.getTitle(1));
+        assertEquals(table.getTypeId(0), table.getTypeId(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicatePageIdsAreRejected() {
+        TabTable table = new TabTable();
+        TabDescriptor tab = tab(1);
+        table.add(tab);
+        table.add(tab);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setCannotChangeThePageId() {
+        TabTable table = new TabTable();
+        table.add(tab(1));
+        table.set(0, tab(2));
+    }
+
+    @Test
+    public void descriptorListIsASnapshot() {
+        TabTable table = new TabTable();
+        table.addAll(tabs(2));
+        List<TabDescriptor> before = table.asDescriptorList();
+        assertSame(before, table.asDescriptorList());
+
+        table.remove(0);
+        assertEquals(2, before.size());
+        assertEquals(1, table.asDescriptorList().size());
+    }
+
+    @Test
+    public void applyingRandomDiffsMatchesTheList() {
+        Random random = new Random(7);
+        List<TabDescriptor> current = tabs(20);
+        TabTable table = new TabTable();
+        table.addAll(current);
+
+        for (int round = 0; round < 100; round++) {
+            List<TabDescriptor> next = new ArrayList<>(current);
+            Collections.shuffle(next, random);
+            next = next.subList(0, random.nextInt(next.size() + 1));
+            next = new ArrayList<>(next);
+            for (int i = random.nextInt(5); i > 0; i--) {
+                next.add(random.nextInt(next.size() + 1), TabDescriptor.create(GenericFragment.TYPE_KEY, "New", 0));
+            }
+            if (!next.isEmpty()) {
+                TabDescriptor renamed = next.get(0);
+                next.set(0, new TabDescriptor(renamed.getPageId(), renamed.getTypeKey(), "Renamed " + round, renamed.getIconId()));
+            }
+
+            table.apply(TabListDiff.calculate(current, next));
+            current = next;
+            assertIndexed(current, table);
+            assertEquals(current, table.asDescriptorList());
+        }
+    }
+
+    @Test
+    public void diffWithManyMiddleInsertsIsApplied() {
+        List<TabDescriptor> current = new ArrayList<>();
+        for (long pageId = 0; pageId < 2000; pageId += 2) {
+            current.add(tab(pageId));
+        }
+        TabTable table = new TabTable();
+        table.addAll(current);
+
+        // A new tab between each pair of tabs: 1000 inserts which all shift positions.
+        List<TabDescriptor> next = new ArrayList<>();
+        for (long pageId = 0; pageId < 2000; pageId++) {
+            next.add(tab(pageId));
+        }
+        table.apply(TabListDiff.calculate(current, next));
+
+        assertIndexed(next, table);
+        assertEquals(next, table.asDescriptorList());
+    }
+
+    @Test
+    public void diffInsertingAPageAlreadyInTheTableIsRejectedBeforeAnyChange() {
+        TabTable table = new TabTable();
+        table.addAll(Arrays.asList(tab(1), tab(2)));
+        TabListDiff diff = TabListDiff.calculate(Collections.singletonList(tab(1)), Arrays.asList(tab(3), tab(1), tab(2)));
+
+        try {
+            table.apply(diff);
+            fail("The diff inserts page 2, which is already in the table");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertIndexed(Arrays.asList(tab(1), tab(2)), table);
+    }
+
+    @Test
+    public void snapshotHasAllTabs() {
+        TabTable table = new TabTable();
+        List<TabDescriptor> tabs = tabs(4);
+        table.addAll(tabs);
+
+        TabStateSnapshot snapshot = table.toSnapshot(2);
+        assertEquals(tabs, snapshot.toTabDescriptors());
+        assertEquals(2, snapshot.getSelectedIndex());
+    }
+
+    @Test
+    public void clearRemovesEverything() {
+        TabTable table = new TabTable();
+        List<TabDescriptor> tabs = tabs(3);
+        table.addAll(tabs);
+        table.clear();
+
+        assertTrue(table.isEmpty());
+        assertEquals(-1, table.indexOfPage(tabs.get(0).getPageId()));
+
+        // Page ids can be added again.
+        table.addAll(tabs);
+        assertIndexed(tabs, table);
+    }
+
+    private static void assertIndexed(List<TabDescriptor> expected, TabTable table) {
+        assertEquals(expected.size(), table.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getPageId(), table.getPageId(i));
+            assertEquals(i, table.indexOfPage(expected.get(i).getPageId()));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.motondon.tablayoutdemo;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.motondon.tablayoutdemo.TestTabs.tabsWithPageIds;
+import static org.junit.Assert.*;
+
+public class TabWorkSchedulerTest {
+
+    private static final Object OWNER = new Object();
+
+    private final List<String> ranTasks = Collections.synchronizedList(new ArrayList<String>());
+    private TabWorkScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void visiblePageRunsFirstThenAdjacentThenOffscreen() throws InterruptedException {
+        scheduler = new TabWorkScheduler(1, 0);
+        scheduler.updatePriorities(tabsWithPageIds(1, 2, 3, 4), 1, 1);
+
+        // Keep the only thread busy while the tasks are submitted, so that they are all pending when it gets free.
+        CountDownLatch gate = blockThread(2);
+        scheduler.submit(4, OWNER, record("offscreen"));
+        scheduler.submit(1, OWNER, record("adjacent"));
+        scheduler.submit(2, OWNER, record("visible"));
+        CountDownLatch done = submitMarker(4);
+        gate.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("visible", "adjacent", "offscreen"), ranTasks);
+    }
+
+    @Test
+    public void prioritiesAreCheckedWhenTasksRun() throws InterruptedException {
+        scheduler = new TabWorkScheduler(1, 0);
+        scheduler.updatePriorities(tabsWithPageIds(1, 2, 3), 0, 1);
+
+        CountDownLatch gate = blockThread(1);
+        scheduler.submit(2, OWNER, record("page 2"));
+        scheduler.submit(3, OWNER, record("page 3"));
+
+        // The user swipes to the last page before the tasks run.
+        scheduler.updatePriorities(tabsWithPageIds(1, 2, 3), 2, 1);
+        CountDownLatch done = submitMarker(1);
+        gate.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("page 3", "page 2"), ranTasks);
+    }
+
+    @Test
+    public void pausedOffscreenPagesRunOnceTheyGetCloser() throws InterruptedException {
+        scheduler = new TabWorkScheduler(1, -1);
+        scheduler.updatePriorities(tabsWithPageIds(1, 2, 3), 0, 1);
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        scheduler.submit(3, OWNER, new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertFalse(ran.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduler.getPendingTaskCount());
+
+        scheduler.setPriority(3, TabWorkScheduler.PRIORITY_ADJACENT);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void offscreenPagesAreThrottled() throws InterruptedException {
+        scheduler = new TabWorkScheduler(2, 100);
+        scheduler.updatePriorities(tabsWithPageIds(1, 2), 0, 0);
+
+        final CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit(2, OWNER, new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    @Test
+    public void cancelledTasksDoNotRun() throws InterruptedException {
+        scheduler = new TabWorkScheduler(1, 0);
+        scheduler.updatePriorities(tabsWithPageIds(1, 2, 3), 0, 1);
+        Object otherOwner = new Object();
+
+        CountDownLatch gate = blockThread(1);
+        scheduler.submit(2, OWNER, record("cancelled by owner"));
+        scheduler.submit(3, otherOwner, record("cancelled with its page"));
+        scheduler.submit(2, otherOwner, record("kept")).cancel();
+        scheduler.submit(2, otherOwner, record("kept"));
+
+        scheduler.cancelAll(OWNER);
+        scheduler.updatePriorities(tabsWithPageIds(1, 2), 0, 1);
+        assertEquals(2, scheduler.getPendingTaskCount());
+
+        CountDownLatch done = submitMarker(2);
+        gate.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("kept"), ranTasks);
+    }
+
+    @Test
+    public void onlyPagesAroundTheSelectedOneAreUpdated() throws InterruptedException {
+        scheduler = new TabWorkScheduler(1, 0);
+        scheduler.updatePriorities(2, Arrays.asList(1L, 3L));
+        assertEquals(TabWorkScheduler.PRIORITY_VISIBLE, scheduler.getPriority(2));
+        assertEquals(TabWorkScheduler.PRIORITY_ADJACENT, scheduler.getPriority(3));
+        assertEquals(TabWorkScheduler.PRIORITY_OFFSCREEN, scheduler.getPriority(4));
+
+        CountDownLatch gate = blockThread(2);
+        scheduler.submit(3, OWNER, record("removed"));
+        scheduler.submit(4, OWNER, record("page 4"));
+
+        // Page 3 is removed, so page 4 moves next to the selected one.
+        scheduler.removePages(Collections.singletonList(3L));
+        scheduler.updatePriorities(2, Arrays.asList(1L, 4L));
+        assertEquals(TabWorkScheduler.PRIORITY_OFFSCREEN, scheduler.getPriority(3));
+        assertEquals(1, scheduler.getPendingTaskCount());
+
+        CountDownLatch done = submitMarker(5);
+        gate.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("page 4"), ranTasks);
+    }
+
+    private CountDownLatch blockThread(long pageId) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        scheduler.submit(pageId, OWNER, new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return gate;
+    }
+
+    /**
+     * Submit a task which runs after all the others (since its page has the lowest priority of the pending ones) and tells when it ran.
+     */
+    private CountDownLatch submitMarker(long pageId) {
+        final CountDownLatch done = new CountDownLatch(1);
+        scheduler.submit(pageId, new Object(), new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        return done;
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ranTasks.add(name);
+            }
+        };
+    }
+}
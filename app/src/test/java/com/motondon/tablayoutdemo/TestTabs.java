@@ -0,0 +1,40 @@
+package com.motondon.tablayoutdemo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tabs used by the tests. A tab is fully defined by its page id, so tab(id) always returns an equal descriptor. Type keys and icons vary
+ * with the page id, so that lists of tabs do not all look the same.
+ */
+final class TestTabs {
+
+    private TestTabs() {
+    }
+
+    static TabDescriptor tab(long pageId) {
+        return new TabDescriptor(pageId, pageId % 2 == 0 ? GenericFragment.TYPE_KEY : ChatFragment.TYPE_KEY, "Tab " + pageId, (int) (pageId % 3));
+    }
+
+    /**
+     * Return a modifiable list with the tabs of page ids 0 to count - 1.
+     *
+     * @param count
+     * @return
+     */
+    static List<TabDescriptor> tabs(int count) {
+        List<TabDescriptor> tabs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tabs.add(tab(i));
+        }
+        return tabs;
+    }
+
+    static List<TabDescriptor> tabsWithPageIds(long... pageIds) {
+        List<TabDescriptor> tabs = new ArrayList<>(pageIds.length);
+        for (long pageId : pageIds) {
+            tabs.add(tab(pageId));
+        }
+        return tabs;
+    }
+}
@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * Stub of the Android type, only so that TabStateSnapshot compiles on a stock JVM. Never called by the benchmarks.
+ */
+public final class Parcel {
+
+    public void writeByteArray(byte[] b) {
+        throw new UnsupportedOperationException();
+    }
+
+    public byte[] createByteArray() {
+        throw new UnsupportedOperationException();
+    }
+}
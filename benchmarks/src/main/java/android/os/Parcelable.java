@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * Stub of the Android type, only so that TabStateSnapshot compiles on a stock JVM. Never called by the benchmarks.
+ */
+public interface Parcelable {
+
+    int describeContents();
+
+    void writeToParcel(Parcel dest, int flags);
+
+    interface Creator<T> {
+        T createFromParcel(Parcel source);
+
+        T[] newArray(int size);
+    }
+}
@@ -0,0 +1,87 @@
+package com.motondon.tablayoutdemo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reflective construction (Class.forName().newInstance(), as the tabs used to be restored) vs. the creator registry used by the
+ * FragmentFactory. Real fragments need Android, so plain page classes stand in for them: this measures the lookup and construction
+ * mechanism, not the fragment constructors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FragmentConstructionBenchmark {
+
+    public static class Page {
+    }
+
+    public static class ChatPage extends Page {
+    }
+
+    public static class WalkPage extends Page {
+    }
+
+    public static class GenericPage extends Page {
+    }
+
+    interface Creator {
+        Page newPage();
+    }
+
+    private static final String[] CLASS_NAMES = new String[] {
+            ChatPage.class.getName(), WalkPage.class.getName(), GenericPage.class.getName()};
+
+    private final Map<String, Creator> creators = new HashMap<>();
+    private int next = 0;
+
+    public FragmentConstructionBenchmark() {
+        creators.put(Tabs.TYPE_KEYS[0], new Creator() {
+            @Override
+            public Page newPage() {
+                return new ChatPage();
+            }
+        });
+        creators.put(Tabs.TYPE_KEYS[1], new Creator() {
+            @Override
+            public Page newPage() {
+                return new WalkPage();
+            }
+        });
+        creators.put(Tabs.TYPE_KEYS[2], new Creator() {
+            @Override
+            public Page newPage() {
+                return new GenericPage();
+            }
+        });
+    }
+
+    @Benchmark
+    public Page reflective() throws Exception {
+        return (Page) Class.forName(CLASS_NAMES[nextIndex()]).newInstance();
+    }
+
+    @Benchmark
+    public Page registry() {
+        return creators.get(Tabs.TYPE_KEYS[nextIndex()]).newPage();
+    }
+
+    private int nextIndex() {
+        next = (next + 1) % 3;
+        return next;
+    }
+}
@@ -0,0 +1,98 @@
+package com.motondon.tablayoutdemo.benchmark;
+
+import com.motondon.tablayoutdemo.TabDescriptor;
+import com.motondon.tablayoutdemo.TabStateSnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What MainActivity.onSaveInstanceState() and onCreate() do with the tab list for both orientation change methods: building the
+ * TabStateSnapshot from the adapter tabs and encoding it to the byte array put in the bundle, and then decoding it back to tab descriptors.
+ *
+ * The legacy* benchmarks measure what was put in the bundle before the snapshot existed: the page class names and titles as two
+ * ArrayList<String>, written with Java serialization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int tabCount;
+
+    private List<TabDescriptor> tabs;
+    private byte[] snapshotBytes;
+    private byte[] legacyBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        tabs = Tabs.create(tabCount);
+        snapshotBytes = TabStateSnapshot.of(tabs, 0).toByteArray();
+        legacyBytes = legacySerialize(tabs);
+    }
+
+    @Benchmark
+    public TabStateSnapshot buildSnapshot() {
+        return TabStateSnapshot.of(tabs, 0);
+    }
+
+    @Benchmark
+    public byte[] saveSnapshot() {
+        return TabStateSnapshot.of(tabs, 0).toByteArray();
+    }
+
+    @Benchmark
+    public List<TabDescriptor> restoreSnapshot() throws IOException {
+        return TabStateSnapshot.fromByteArray(snapshotBytes).toTabDescriptors();
+    }
+
+    @Benchmark
+    public byte[] legacySave() throws IOException {
+        return legacySerialize(tabs);
+    }
+
+    @Benchmark
+    public Object legacyRestore() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(legacyBytes));
+        in.readObject();
+        return in.readObject();
+    }
+
+    private static byte[] legacySerialize(List<TabDescriptor> tabs) throws IOException {
+        ArrayList<String> classNames = new ArrayList<>(tabs.size());
+        ArrayList<String> titles = new ArrayList<>(tabs.size());
+        for (TabDescriptor tab : tabs) {
+            classNames.add("com.motondon.tablayoutdemo." + tab.getTypeKey());
+            titles.add(tab.getTitle());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(classNames);
+        out.writeObject(titles);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
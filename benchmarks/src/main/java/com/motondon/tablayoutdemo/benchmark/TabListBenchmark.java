@@ -0,0 +1,94 @@
+package com.motondon.tablayoutdemo.benchmark;
+
+import com.motondon.tablayoutdemo.TabDescriptor;
+import com.motondon.tablayoutdemo.TabListDiff;
+import com.motondon.tablayoutdemo.TabListModel;
+import com.motondon.tablayoutdemo.TabTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Add, remove and replace-all of tabs at scale, as done for each mutation: the TabListModel mutation and diff (on a background thread) and
+ * then the diff applied to the TabTable held by the ViewPagerAdapter (on the main thread, see ViewPagerAdapter.applyDiff()).
+ *
+ * The ViewPagerAdapter itself needs a FragmentManager and a ViewPager, so it is not measured here. See TabMutationBenchmark in androidTest
+ * for that.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TabListBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int tabCount;
+
+    private List<TabDescriptor> tabs;
+    private List<TabDescriptor> otherTabs;
+    private TabDescriptor newTab;
+    private long middlePageId;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        tabs = Tabs.create(tabCount);
+        otherTabs = Tabs.create(tabCount);
+        newTab = TabDescriptor.create("generic", "New tab", 0);
+        middlePageId = tabs.get(tabCount / 2).getPageId();
+    }
+
+    @Benchmark
+    public TabTable addTab() {
+        return applyMutation(TabListModel.add(newTab));
+    }
+
+    @Benchmark
+    public TabTable removeMiddleTab() {
+        return applyMutation(TabListModel.remove(middlePageId));
+    }
+
+    /**
+     * Replace all tabs with different ones, as after loading a new tab configuration (i.e.: ViewPagerAdapter.setPages()).
+     */
+    @Benchmark
+    public TabTable replaceAllTabs() {
+        return applyMutation(TabListModel.replaceAll(otherTabs));
+    }
+
+    /**
+     * Reverse the tab order, which is the worst case for moves.
+     */
+    @Benchmark
+    public TabTable reverseTabs() {
+        List<TabDescriptor> reversed = new ArrayList<>(tabs);
+        Collections.reverse(reversed);
+        return applyMutation(TabListModel.replaceAll(reversed));
+    }
+
+    private TabTable applyMutation(TabListModel.Mutation mutation) {
+        List<TabDescriptor> newTabs = mutation.apply(tabs);
+        TabListDiff diff = TabListDiff.calculate(tabs, newTabs);
+
+        TabTable adapterTabs = new TabTable();
+        adapterTabs.addAll(tabs);
+        adapterTabs.apply(diff);
+        return adapterTabs;
+    }
+}
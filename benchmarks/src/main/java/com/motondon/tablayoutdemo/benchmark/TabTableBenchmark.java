@@ -0,0 +1,119 @@
+package com.motondon.tablayoutdemo.benchmark;
+
+import com.motondon.tablayoutdemo.TabDescriptor;
+import com.motondon.tablayoutdemo.TabTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The reads the viewPager and the TabLayout do on the ViewPagerAdapter after each change: getItemPosition() (i.e.: a page id lookup) for
+ * each live page, and getCount(), getPageTitle() and the type key of every page. Each one is measured on the TabTable the adapter uses and
+ * on the list of TabDescriptors it used before.
+ *
+ * Run it with the gc profiler in order to see the bytes allocated per operation, which should be zero for the TabTable:
+ *
+ *     ./gradlew :benchmarks:jmh -PjmhInclude=TabTableBenchmark -PjmhProfiler=gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TabTableBenchmark {
+
+    // The current page and the pages next to it, plus three hot pages (see MainActivity.PAGE_RETENTION_POLICY).
+    private static final int LIVE_PAGE_COUNT = 6;
+
+    @Param({"10", "100", "1000"})
+    public int tabCount;
+
+    private List<TabDescriptor> list;
+    private TabTable table;
+    private long[] livePageIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = Tabs.create(tabCount);
+        table = new TabTable();
+        table.addAll(list);
+
+        // Live pages are around the middle of the list.
+        livePageIds = new long[Math.min(LIVE_PAGE_COUNT, tabCount)];
+        for (int i = 0; i < livePageIds.length; i++) {
+            livePageIds[i] = list.get(tabCount / 2 + i - livePageIds.length / 2).getPageId();
+        }
+    }
+
+    @Benchmark
+    public int listIndexOfLivePages() {
+        int sum = 0;
+        for (long pageId : livePageIds) {
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i).getPageId() == pageId) {
+                    sum += i;
+                    break;
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int tableIndexOfLivePages() {
+        int sum = 0;
+        for (long pageId : livePageIds) {
+            sum += table.indexOfPage(pageId);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void listTitles(Blackhole blackhole) {
+        for (int i = 0; i < list.size(); i++) {
+            blackhole.consume(list.get(i).getTitle());
+        }
+    }
+
+    @Benchmark
+    public void tableTitles(Blackhole blackhole) {
+        for (int i = 0; i < table.size(); i++) {
+            blackhole.consume(table.getTitle(i));
+        }
+    }
+
+    /**
+     * What ViewPagerAdapter.getPageTypeKeys() did: a new list of type keys on every call.
+     */
+    @Benchmark
+    public List<String> listTypeKeys() {
+        List<String> typeKeys = new ArrayList<>();
+        for (TabDescriptor tab : list) {
+            typeKeys.add(tab.getTypeKey());
+        }
+        return typeKeys;
+    }
+
+    @Benchmark
+    public void tableTypeKeys(Blackhole blackhole) {
+        for (int i = 0; i < table.size(); i++) {
+            blackhole.consume(table.getTypeKey(i));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.motondon.tablayoutdemo.benchmark;
+
+import com.motondon.tablayoutdemo.TabDescriptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds tab lists like the ones shown by the app: "Chat" and "Walk" followed by generic tabs.
+ */
+final class Tabs {
+
+    static final String[] TYPE_KEYS = new String[] {"chat", "walk", "generic"};
+
+    private Tabs() {
+    }
+
+    static List<TabDescriptor> create(int count) {
+        List<TabDescriptor> tabs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                tabs.add(TabDescriptor.create("chat", "Chat", 0));
+            } else if (i == 1) {
+                tabs.add(TabDescriptor.create("walk", "Walk", 0));
+            } else {
+                tabs.add(TabDescriptor.create("generic", "Generic " + (i - 1), 0x7f020000 + i % 4));
+            }
+        }
+        return tabs;
+    }
+}